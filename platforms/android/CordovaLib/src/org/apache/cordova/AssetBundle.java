@@ -0,0 +1,204 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of the asset archive that "cordova prepare" writes to
+ * assets/www.pack when the "AssetBundle" preference is "true".
+ *
+ * The archive is stored uncompressed in the APK and memory-mapped once, so
+ * opening one of its assets is a binary search of its sorted path index
+ * and a slice of the mapping, without opening a file. See
+ * cordova/lib/assetBundle.js for the layout.
+ */
+public class AssetBundle {
+    private static final String TAG = "AssetBundle";
+    private static final int MAGIC = 0x4350414B; // "CPAK"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 16;
+
+    private final ByteBuffer map;
+    private final int count;
+    private long opens;
+    private long misses;
+
+    AssetBundle(ByteBuffer map) throws IOException {
+        this.map = map;
+        if (map.capacity() < HEADER_SIZE || map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new IOException("Not an asset bundle");
+        }
+        count = map.getInt(8);
+        if (count < 0 || map.getInt(12) != map.capacity() || HEADER_SIZE + (long) count * ENTRY_SIZE > map.capacity()) {
+            throw new IOException("Truncated asset bundle");
+        }
+        // Checked once here, so that open() cannot read outside the mapping.
+        for (int i = 0; i < count; i++) {
+            int entry = HEADER_SIZE + i * ENTRY_SIZE;
+            if (!inBounds(map.getInt(entry), map.getInt(entry + 4)) || !inBounds(map.getInt(entry + 8), map.getInt(entry + 12))) {
+                throw new IOException("Corrupt asset bundle entry " + i);
+            }
+        }
+    }
+
+    private boolean inBounds(int offset, int length) {
+        return offset >= 0 && length >= 0 && (long) offset + length <= map.capacity();
+    }
+
+    /**
+     * Maps the bundle with the given asset name.
+     */
+    public static AssetBundle open(AssetManager assetManager, String name) throws IOException {
+        AssetFileDescriptor assetFd;
+        try {
+            assetFd = assetManager.openFd(name);
+        } catch (FileNotFoundException e) {
+            // Also thrown if the bundle was compressed when packaged.
+            FileNotFoundException ex = new FileNotFoundException(name
+                    + " is missing or compressed; build-extras.gradle must keep \"pack\" in aaptOptions.noCompress");
+            ex.initCause(e);
+            throw ex;
+        }
+        FileInputStream in = assetFd.createInputStream();
+        try {
+            // The mapping stays valid after the file is closed.
+            ByteBuffer map = in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    assetFd.getStartOffset(), assetFd.getLength());
+            AssetBundle ret = new AssetBundle(map);
+            LOG.d(TAG, "Mapped " + ret.count + " assets from " + name);
+            return ret;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens an asset by its path within the assets ("www/index.html").
+     * The stream's available() is the asset's length.
+     *
+     * @return The asset, or null if it is not in the bundle.
+     */
+    public InputStream open(String assetPath) {
+        byte[] key;
+        try {
+            key = assetPath.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = HEADER_SIZE + mid * ENTRY_SIZE;
+            int cmp = compare(map.getInt(entry), map.getInt(entry + 4), key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                ByteBuffer slice = map.duplicate();
+                int offset = map.getInt(entry + 8);
+                slice.limit(offset + map.getInt(entry + 12));
+                slice.position(offset);
+                synchronized (this) {
+                    opens++;
+                }
+                return new ByteBufferInputStream(slice.slice());
+            }
+        }
+        synchronized (this) {
+            misses++;
+        }
+        return null;
+    }
+
+    // Compares the path at offset with key as unsigned bytes.
+    private int compare(int offset, int length, byte[] key) {
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int d = (map.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     * Writes the number of assets, the size of the bundle and the number of
+     * assets opened from and missing in it as a JSON object.
+     */
+    public synchronized void writeStatistics(JsonWriter w) {
+        w.beginObject()
+            .name("assets").value(count)
+            .name("bytes").value(map.capacity())
+            .name("opens").value(opens)
+            .name("misses").value(misses)
+            .endObject();
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buf.remaining());
+            buf.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buf.remaining()));
+            buf.position(buf.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import android.net.Uri;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Size-bounded LRU of the contents of file:///android_asset/ URLs, so that
+ * large scripts and stylesheets loaded on every launch or page load are
+ * read from the APK only once.
+ *
+ * Enabled by setting the "AssetCacheSize" preference to the size of the
+ * cache in kilobytes. Assets larger than half the cache are never cached.
+ *
+ * Assets can only change when the app is updated, so all assets share one
+ * ETag, made from the app's version and install time.
+ */
+public class AssetCache {
+    private final CordovaResourceApi resourceApi;
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final String etag;
+    // Keyed by asset path; in access order.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    // Paths of the misses being read.
+    private final HashSet<String> loading = new HashSet<String>();
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long uncached;
+    private long evictions;
+    private long missNanos;
+
+    private static final class Entry {
+        final byte[] data;
+        final String mimeType;
+
+        Entry(byte[] data, String mimeType) {
+            this.data = data;
+            this.mimeType = mimeType;
+        }
+    }
+
+    public AssetCache(CordovaResourceApi resourceApi, long maxBytes, String version) {
+        this.resourceApi = resourceApi;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = (int) Math.min(maxBytes / 2, Integer.MAX_VALUE);
+        this.etag = "\"" + version + "\"";
+    }
+
+    /**
+     * The ETag of every asset served by this cache.
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * Opens an asset URL, serving it from memory if it is cached and caching
+     * it otherwise.
+     */
+    public CordovaResourceApi.OpenForReadResult openForRead(Uri uri) throws IOException {
+        String path = uri.getPath();
+        Entry entry;
+        // A miss of an asset that another thread is already reading waits for
+        // that read rather than reading it again.
+        synchronized (this) {
+            while (true) {
+                entry = entries.get(path);
+                if (entry != null) {
+                    hits++;
+                    break;
+                }
+                if (loading.add(path)) {
+                    misses++;
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for " + path);
+                }
+            }
+        }
+        if (entry != null) {
+            return new CordovaResourceApi.OpenForReadResult(uri, new ByteArrayInputStream(entry.data),
+                    entry.mimeType, entry.data.length, null);
+        }
+        try {
+            return load(uri, path);
+        } finally {
+            synchronized (this) {
+                loading.remove(path);
+                notifyAll();
+            }
+        }
+    }
+
+    // Called for a miss, with path in loading.
+    private CordovaResourceApi.OpenForReadResult load(Uri uri, String path) throws IOException {
+        long start = System.nanoTime();
+        CordovaResourceApi.OpenForReadResult result = resourceApi.openForRead(uri, true);
+        if (result.length > maxEntryBytes) {
+            synchronized (this) {
+                uncached++;
+            }
+            return result;
+        }
+        byte[] data;
+        InputStream rest = null;
+        try {
+            if (result.length >= 0) {
+                data = new byte[(int) result.length];
+                int n = 0;
+                while (n < data.length) {
+                    int count = result.inputStream.read(data, n, data.length - n);
+                    if (count < 0) {
+                        throw new IOException("Asset is shorter than its length: " + path);
+                    }
+                    n += count;
+                }
+            } else {
+                // Compressed assets have no known length.
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int count;
+                while ((count = result.inputStream.read(buf)) >= 0) {
+                    out.write(buf, 0, count);
+                    if (out.size() > maxEntryBytes) {
+                        rest = result.inputStream;
+                        break;
+                    }
+                }
+                data = out.toByteArray();
+            }
+        } finally {
+            if (rest == null) {
+                result.inputStream.close();
+            }
+        }
+        if (rest != null) {
+            synchronized (this) {
+                uncached++;
+            }
+            return new CordovaResourceApi.OpenForReadResult(uri,
+                    new SequenceInputStream(new ByteArrayInputStream(data), rest), result.mimeType, -1, null);
+        }
+
+        synchronized (this) {
+            Entry old = entries.put(path, new Entry(data, result.mimeType));
+            if (old != null) {
+                bytes -= old.data.length;
+            }
+            bytes += data.length;
+            Iterator<Entry> it = entries.values().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                bytes -= it.next().data.length;
+                it.remove();
+                evictions++;
+            }
+            missNanos += System.nanoTime() - start;
+        }
+        return new CordovaResourceApi.OpenForReadResult(uri, new ByteArrayInputStream(data),
+                result.mimeType, data.length, null);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Writes the size and hit counts of the cache as a JSON object.
+     * "uncached" counts the misses of assets too large to cache.
+     */
+    public synchronized void writeStatistics(JsonWriter w) {
+        long cachedMisses = misses - uncached;
+        w.beginObject()
+            .name("entries").value(entries.size())
+            .name("bytes").value(bytes)
+            .name("maxBytes").value(maxBytes)
+            .name("hits").value(hits)
+            .name("misses").value(misses)
+            .name("uncached").value(uncached)
+            .name("evictions").value(evictions)
+            .name("avgMissMs").value(cachedMisses == 0 ? 0 : missNanos / 1e6 / cachedMisses)
+            .endObject();
+    }
+}
@@ -33,6 +33,16 @@ public class CallbackContext {
     private CordovaWebView webView;
     protected boolean finished;
     private int changingThreads;
+    // Pooled results ready for reuse by obtainResult(). Enough to cover the
+    // results of a fast stream that are queued within one bridge flush.
+    private static final int MAX_SPARE_RESULTS = 32;
+    private PluginResult[] spareResults;
+    private int spareResultCount;
+    // Set by PluginManager while exec profiling is enabled.
+    private ExecProfiler profiler;
+    private ExecProfiler.Stats profilerStats;
+    private long execStartNanos;
+    private boolean sentResult;
 
     public CallbackContext(String callbackId, CordovaWebView webView) {
         this.callbackId = callbackId;
@@ -51,16 +61,66 @@ public class CallbackContext {
         return callbackId;
     }
 
+    /**
+     * Returns a recyclable keep-callback result for this callback, for
+     * streams that send results at a high rate. Set its message with
+     * setMessage() or jsonWriter() and pass it to sendPluginResult(). The
+     * bridge returns it to this context once it has been encoded, so it
+     * must not be touched after it has been sent.
+     */
+    public PluginResult obtainResult(PluginResult.Status status) {
+        PluginResult result = null;
+        synchronized (this) {
+            if (spareResultCount > 0) {
+                result = spareResults[--spareResultCount];
+                spareResults[spareResultCount] = null;
+            }
+        }
+        if (result == null) {
+            result = new PluginResult(this);
+        }
+        result.prepareForReuse(status);
+        return result;
+    }
+
+    synchronized void releaseResult(PluginResult result) {
+        if (spareResults == null) {
+            spareResults = new PluginResult[MAX_SPARE_RESULTS];
+        }
+        if (spareResultCount < MAX_SPARE_RESULTS) {
+            spareResults[spareResultCount++] = result;
+        }
+    }
+
+    void setProfiler(ExecProfiler profiler, ExecProfiler.Stats stats, long execStartNanos) {
+        this.profiler = profiler;
+        this.profilerStats = stats;
+        this.execStartNanos = execStartNanos;
+    }
+
     public void sendPluginResult(PluginResult pluginResult) {
+        pluginResult.markSent();
+        boolean first;
         synchronized (this) {
             if (finished) {
                 Log.w(LOG_TAG, "Attempted to send a second callback for ID: " + callbackId + "\nResult was: " + pluginResult.getMessage());
+                pluginResult.recycle();
                 return;
             } else {
                 finished = !pluginResult.getKeepCallback();
             }
+            first = !sentResult;
+            sentResult = true;
+        }
+        if (profiler == null) {
+            webView.sendPluginResult(pluginResult, callbackId);
+            return;
         }
+        // Read before sending: a pooled result may be recycled once sent.
+        int status = pluginResult.getStatus();
+        long start = System.nanoTime();
         webView.sendPluginResult(pluginResult, callbackId);
+        profiler.recordResult(profilerStats, status, first, execStartNanos, start, System.nanoTime());
     }
 
     /**
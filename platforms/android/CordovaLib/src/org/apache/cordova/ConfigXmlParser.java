@@ -21,6 +21,7 @@ package org.apache.cordova;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -66,6 +67,10 @@ public class ConfigXmlParser {
     boolean insideFeature = false;
     String service = "", pluginClass = "", paramType = "";
     boolean onload = false;
+    String startMode = null;
+    String[] dependencies = null;
+    PluginEntry.ExecPolicy execPolicy = PluginEntry.ExecPolicy.BRIDGE;
+    HashMap<String, PluginEntry.ExecPolicy> actionExecPolicies;
 
     public void parse(XmlPullParser xml) {
         int eventType = -1;
@@ -104,6 +109,17 @@ public class ConfigXmlParser {
                 pluginClass = xml.getAttributeValue(null,"value");
             else if (paramType.equals("onload"))
                 onload = "true".equals(xml.getAttributeValue(null, "value"));
+            else if (paramType.equals("start-mode"))
+                startMode = xml.getAttributeValue(null, "value");
+            else if (paramType.equals("depends-on"))
+                dependencies = xml.getAttributeValue(null, "value").trim().split("\\s*,\\s*");
+            else if (paramType.equals("exec-policy"))
+                execPolicy = PluginEntry.ExecPolicy.fromString(xml.getAttributeValue(null, "value"));
+            else if (paramType.startsWith("exec-policy:")) {
+                if (actionExecPolicies == null)
+                    actionExecPolicies = new HashMap<String, PluginEntry.ExecPolicy>();
+                actionExecPolicies.put(paramType.substring(12), PluginEntry.ExecPolicy.fromString(xml.getAttributeValue(null, "value")));
+            }
         }
         else if (strNode.equals("preference")) {
             String name = xml.getAttributeValue(null, "name").toLowerCase(Locale.ENGLISH);
@@ -121,12 +137,18 @@ public class ConfigXmlParser {
     public void handleEndTag(XmlPullParser xml) {
         String strNode = xml.getName();
         if (strNode.equals("feature")) {
-            pluginEntries.add(new PluginEntry(service, pluginClass, onload));
+            PluginEntry.StartMode mode = PluginEntry.StartMode.fromString(startMode,
+                    onload ? PluginEntry.StartMode.BLOCKING : PluginEntry.StartMode.LAZY);
+            pluginEntries.add(new PluginEntry(service, pluginClass, mode, dependencies, execPolicy, actionExecPolicies));
 
             service = "";
             pluginClass = "";
             insideFeature = false;
             onload = false;
+            startMode = null;
+            dependencies = null;
+            execPolicy = PluginEntry.ExecPolicy.BRIDGE;
+            actionExecPolicies = null;
         }
     }
 
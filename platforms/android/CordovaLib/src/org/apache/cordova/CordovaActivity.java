@@ -197,7 +197,7 @@ public class CordovaActivity extends Activity {
     }
 
     protected CordovaInterfaceImpl makeCordovaInterface() {
-        return new CordovaInterfaceImpl(this) {
+        return new CordovaInterfaceImpl(this, preferences) {
             @Override
             public Object onMessage(String id, Object data) {
                 // Plumb this to CordovaActivity.onMessage for backwards compatibility
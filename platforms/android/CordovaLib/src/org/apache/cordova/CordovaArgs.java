@@ -18,96 +18,311 @@
 */
 package org.apache.cordova;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import android.util.Base64;
 
+/**
+ * The arguments of an exec() call.
+ *
+ * When created from the raw JSON text sent by JS, the text is scanned once
+ * up front to find where each argument starts and ends. Malformed arguments are reported then, as when the whole
+ * array was parsed up front. Strings, which carry the large payloads such as
+ * binary data, are only parsed when first read; other values are parsed
+ * right away. Like JSONArray, instances are not thread-safe.
+ */
 public class CordovaArgs {
     private JSONArray baseArgs;
 
+    // Set for lazily parsed arguments: the raw JSON array text, the offsets
+    // of its elements, and which elements have been parsed into baseArgs.
+    private String rawArgs;
+    private int count;
+    private int[] starts;
+    private int[] ends;
+    private boolean[] parsed;
+
     public CordovaArgs(JSONArray args) {
         this.baseArgs = args;
     }
 
+    /**
+     * Creates arguments from the JSON array text sent by exec(). Throws if
+     * the text is not an array or any argument is malformed.
+     */
+    public CordovaArgs(String rawArgs) throws JSONException {
+        this.rawArgs = rawArgs;
+        this.baseArgs = new JSONArray();
+        try {
+            indexElements();
+            for (int i = 0; i < count; i++) {
+                if (rawArgs.charAt(starts[i]) != '"') {
+                    parse(i);
+                }
+            }
+        } catch (JSONException e) {
+            // The scanner only follows strict JSON. Anything else, including
+            // the lenient syntax JSONTokener accepts, is parsed up front,
+            // which throws if the arguments are really malformed.
+            this.rawArgs = null;
+            this.baseArgs = new JSONArray(rawArgs);
+        }
+    }
+
+    private void parse(int index) throws JSONException {
+        Object value = new JSONTokener(rawArgs.substring(starts[index], ends[index])).nextValue();
+        baseArgs.put(index, value);
+        parsed[index] = true;
+    }
+
+    private JSONArray args(int index) {
+        if (rawArgs != null && index >= 0 && index < count && !parsed[index]) {
+            try {
+                parse(index);
+            } catch (JSONException e) {
+                // Strings are checked by indexElements().
+                throw new IllegalStateException(e);
+            }
+        }
+        return baseArgs;
+    }
+
 
     // Pass through the basics to the base args.
     public Object get(int index) throws JSONException {
-        return baseArgs.get(index);
+        return args(index).get(index);
     }
 
     public boolean getBoolean(int index) throws JSONException {
-        return baseArgs.getBoolean(index);
+        return args(index).getBoolean(index);
     }
 
     public double getDouble(int index) throws JSONException {
-        return baseArgs.getDouble(index);
+        return args(index).getDouble(index);
     }
 
     public int getInt(int index) throws JSONException {
-        return baseArgs.getInt(index);
+        return args(index).getInt(index);
     }
 
     public JSONArray getJSONArray(int index) throws JSONException {
-        return baseArgs.getJSONArray(index);
+        return args(index).getJSONArray(index);
     }
 
     public JSONObject getJSONObject(int index) throws JSONException {
-        return baseArgs.getJSONObject(index);
+        return args(index).getJSONObject(index);
     }
 
     public long getLong(int index) throws JSONException {
-        return baseArgs.getLong(index);
+        return args(index).getLong(index);
     }
 
     public String getString(int index) throws JSONException {
-        return baseArgs.getString(index);
+        return args(index).getString(index);
     }
 
 
     public Object opt(int index) {
-        return baseArgs.opt(index);
+        return args(index).opt(index);
     }
 
     public boolean optBoolean(int index) {
-        return baseArgs.optBoolean(index);
+        return args(index).optBoolean(index);
     }
 
     public double optDouble(int index) {
-        return baseArgs.optDouble(index);
+        return args(index).optDouble(index);
     }
 
     public int optInt(int index) {
-        return baseArgs.optInt(index);
+        return args(index).optInt(index);
     }
 
     public JSONArray optJSONArray(int index) {
-        return baseArgs.optJSONArray(index);
+        return args(index).optJSONArray(index);
     }
 
     public JSONObject optJSONObject(int index) {
-        return baseArgs.optJSONObject(index);
+        return args(index).optJSONObject(index);
     }
 
     public long optLong(int index) {
-        return baseArgs.optLong(index);
+        return args(index).optLong(index);
     }
 
     public String optString(int index) {
-        return baseArgs.optString(index);
+        return args(index).optString(index);
     }
 
     public boolean isNull(int index) {
-        return baseArgs.isNull(index);
+        return args(index).isNull(index);
     }
 
 
     // The interesting custom helpers.
     public byte[] getArrayBuffer(int index) throws JSONException {
-        String encoded = baseArgs.getString(index);
-        return Base64.decode(encoded, Base64.DEFAULT);
+        return Base64.decode(encodedArrayBuffer(index), Base64.DEFAULT);
+    }
+
+    /**
+     * Decodes a binary argument into out, starting at its position, and
+     * returns the number of bytes written. Throws BufferOverflowException,
+     * leaving out unchanged, if it does not have enough room.
+     */
+    public int getArrayBuffer(int index, ByteBuffer out) throws JSONException {
+        byte[] decoded = getArrayBuffer(index);
+        if (out.remaining() < decoded.length) {
+            throw new BufferOverflowException();
+        }
+        out.put(decoded);
+        return decoded.length;
     }
-}
 
+    // An unparsed string argument without escapes is taken straight from the
+    // raw text, skipping the JSON string parser.
+    private String encodedArrayBuffer(int index) throws JSONException {
+        if (rawArgs != null && index >= 0 && index < count && !parsed[index]
+                && rawArgs.charAt(starts[index]) == '"') {
+            int end = ends[index] - 1;
+            boolean escaped = false;
+            for (int i = starts[index] + 1; i < end; i++) {
+                if (rawArgs.charAt(i) == '\\') {
+                    escaped = true;
+                    break;
+                }
+            }
+            if (!escaped) {
+                return rawArgs.substring(starts[index] + 1, end);
+            }
+        }
+        return getString(index);
+    }
+
+    // Finds the start and end of each element of rawArgs.
+    private void indexElements() throws JSONException {
+        String s = rawArgs;
+        int n = s.length();
+        starts = new int[8];
+        ends = new int[8];
+        int i = skipWhitespace(s, 0);
+        if (i == n || s.charAt(i) != '[') {
+            throw new JSONException("Arguments are not a JSON array");
+        }
+        i = skipWhitespace(s, i + 1);
+        if (i < n && s.charAt(i) == ']') {
+            i++;
+        } else {
+            while (true) {
+                int start = i;
+                i = skipValue(s, i);
+                if (i == start) {
+                    throw new JSONException("Missing argument at character " + i);
+                }
+                addElement(start, i);
+                i = skipWhitespace(s, i);
+                if (i == n) {
+                    throw new JSONException("Unterminated arguments array");
+                }
+                char c = s.charAt(i);
+                i = skipWhitespace(s, i + 1);
+                if (c == ']') {
+                    break;
+                } else if (c != ',') {
+                    throw new JSONException("Expected ',' or ']' at character " + (i - 1));
+                }
+            }
+        }
+        if (skipWhitespace(s, i) != n) {
+            throw new JSONException("Unexpected text after arguments array");
+        }
+        parsed = new boolean[count];
+    }
 
+    private void addElement(int start, int end) {
+        if (count == starts.length) {
+            int[] newStarts = new int[count * 2];
+            int[] newEnds = new int[count * 2];
+            System.arraycopy(starts, 0, newStarts, 0, count);
+            System.arraycopy(ends, 0, newEnds, 0, count);
+            starts = newStarts;
+            ends = newEnds;
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    private static int skipWhitespace(String s, int i) {
+        while (i < s.length() && s.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    // Returns the index just past the value starting at i. Nested values are
+    // skipped by bracket depth; their contents are checked when parsed.
+    private static int skipValue(String s, int i) throws JSONException {
+        int n = s.length();
+        int depth = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                i = skipString(s, i);
+                if (depth == 0) {
+                    return i;
+                }
+                continue;
+            }
+            if (c == '[' || c == '{') {
+                depth++;
+            } else if (c == ']' || c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                if (--depth == 0) {
+                    return i + 1;
+                }
+            } else if (depth == 0 && (c == ',' || c <= ' ')) {
+                return i;
+            }
+            i++;
+        }
+        if (depth != 0) {
+            throw new JSONException("Unterminated argument");
+        }
+        return i;
+    }
+
+    // Checks escapes as JSONTokener does, so that a string argument that was
+    // skipped here cannot fail to parse when it is read.
+    private static int skipString(String s, int i) throws JSONException {
+        int n = s.length();
+        for (i++; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                i++;
+                if (i < n && s.charAt(i) == 'u') {
+                    if (i + 5 > n) {
+                        throw new JSONException("Unterminated escape sequence at character " + i);
+                    }
+                    String hex = s.substring(i + 1, i + 5);
+                    try {
+                        Integer.parseInt(hex, 16);
+                    } catch (NumberFormatException e) {
+                        throw new JSONException("Invalid escape sequence: " + hex);
+                    }
+                    i += 4;
+                }
+            } else if (c == '"') {
+                return i + 1;
+            }
+        }
+        throw new JSONException("Unterminated string argument");
+    }
+}
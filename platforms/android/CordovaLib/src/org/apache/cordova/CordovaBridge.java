@@ -70,6 +70,56 @@ public class CordovaBridge {
         }
     }
 
+    /**
+     * Runs several exec() calls sent by JS in a single bridge crossing.
+     *
+     * @param batch A flat JSON array of (service, action, callbackId,
+     *              argumentsJson) tuples, dispatched in order. An exception
+     *              thrown by one call is logged and does not affect the rest.
+     */
+    public String jsExecBatch(int bridgeSecret, String batch) throws JSONException, IllegalAccessException {
+        if (!verifySecret("execBatch()", bridgeSecret)) {
+            return null;
+        }
+        // Same recovery as for exec(): JS resends the calls one by one. A
+        // batch that does not parse, or ends in a partial tuple, is resent
+        // the same way rather than partly run.
+        if (batch == null) {
+            return "@Null arguments.";
+        }
+        JSONArray calls;
+        try {
+            calls = new JSONArray(batch);
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "execBatch() received an invalid batch", e);
+            return "@Invalid batch.";
+        }
+        if (calls.length() % 4 != 0) {
+            Log.e(LOG_TAG, "execBatch() received a partial call: " + calls.length() + " values");
+            return "@Invalid batch.";
+        }
+
+        jsMessageQueue.setPaused(true);
+        try {
+            CordovaResourceApi.jsThread = Thread.currentThread();
+
+            for (int i = 0; i < calls.length(); i += 4) {
+                try {
+                    pluginManager.exec(calls.getString(i), calls.getString(i + 1), calls.getString(i + 2), calls.getString(i + 3));
+                } catch (Throwable e) {
+                    Log.e(LOG_TAG, "execBatch() call to " + calls.optString(i) + "." + calls.optString(i + 1) + " failed", e);
+                }
+            }
+            String ret = null;
+            if (!NativeToJsMessageQueue.DISABLE_EXEC_CHAINING) {
+                ret = jsMessageQueue.popAndEncode(false);
+            }
+            return ret;
+        } finally {
+            jsMessageQueue.setPaused(false);
+        }
+    }
+
     public void jsSetNativeToJsBridgeMode(int bridgeSecret, int value) throws IllegalAccessException {
         if (!verifySecret("setNativeToJsBridgeMode()", bridgeSecret)) {
             return;
@@ -30,7 +30,6 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Default implementation of CordovaInterface.
@@ -50,7 +49,20 @@ public class CordovaInterfaceImpl implements CordovaInterface {
     protected Bundle savedPluginState;
 
     public CordovaInterfaceImpl(Activity activity) {
-        this(activity, Executors.newCachedThreadPool());
+        this(activity, (CordovaPreferences) null);
+    }
+
+    /**
+     * Creates the interface with an unbounded worker pool, which starts a
+     * thread for every task that finds none idle, so that long blocking
+     * tasks never hold up others. Setting the ThreadPoolMaxSize preference
+     * bounds it instead, with ThreadPoolCoreSize threads kept and
+     * ThreadPoolQueueSize tasks queued; tasks submitted to a saturated
+     * bounded pool are rejected with a RejectedExecutionException, which
+     * callers of getThreadPool().execute() then have to catch.
+     */
+    public CordovaInterfaceImpl(Activity activity, CordovaPreferences preferences) {
+        this(activity, createThreadPool(preferences));
     }
 
     public CordovaInterfaceImpl(Activity activity, ExecutorService threadPool) {
@@ -91,6 +103,16 @@ public class CordovaInterfaceImpl implements CordovaInterface {
         return null;
     }
 
+    private static ExecutorService createThreadPool(CordovaPreferences preferences) {
+        int maxSize = preferences == null ? 0 : preferences.getInteger("ThreadPoolMaxSize", 0);
+        if (maxSize <= 0) {
+            return new InstrumentedThreadPool("CordovaThreadPool");
+        }
+        int coreSize = Math.max(1, Math.min(maxSize, preferences.getInteger("ThreadPoolCoreSize", maxSize)));
+        int queueSize = Math.max(1, preferences.getInteger("ThreadPoolQueueSize", 64));
+        return new InstrumentedThreadPool("CordovaThreadPool", coreSize, maxSize, queueSize);
+    }
+
     @Override
     public ExecutorService getThreadPool() {
         return threadPool;
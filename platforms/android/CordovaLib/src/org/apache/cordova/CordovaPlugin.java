@@ -43,6 +43,7 @@ public class CordovaPlugin {
     public CordovaInterface cordova;
     protected CordovaPreferences preferences;
     private String serviceName;
+    private Boolean overridesJSONArrayExecute;
 
     /**
      * Call this after constructing to initialize the plugin.
@@ -94,10 +95,28 @@ public class CordovaPlugin {
      * @return                Whether the action was valid.
      */
     public boolean execute(String action, String rawArgs, CallbackContext callbackContext) throws JSONException {
+        if (!overridesJSONArrayExecute()) {
+            // Nothing needs a JSONArray; arguments are parsed as they are read.
+            return execute(action, new CordovaArgs(rawArgs), callbackContext);
+        }
         JSONArray args = new JSONArray(rawArgs);
         return execute(action, args, callbackContext);
     }
 
+    private boolean overridesJSONArrayExecute() {
+        if (overridesJSONArrayExecute == null) {
+            boolean overrides = true;
+            try {
+                overrides = getClass().getMethod("execute", String.class, JSONArray.class, CallbackContext.class)
+                        .getDeclaringClass() != CordovaPlugin.class;
+            } catch (NoSuchMethodException e) {
+                // Not possible, the method is public.
+            }
+            overridesJSONArrayExecute = overrides;
+        }
+        return overridesJSONArrayExecute;
+    }
+
     /**
      * Executes the request.
      *
@@ -237,6 +256,11 @@ public class CordovaPlugin {
      * img tag loads. WebSockets and media requests (such as <video> and <audio>
      * tags) are not affected by this method. Use CSP headers to control access
      * to such resources.
+     *
+     * PluginManager caches the combined answer per URL until a page loads or
+     * a plugin is added. A plugin whose answer depends on state that changes
+     * at runtime must call PluginManager.invalidateUrlPolicyCache() when that
+     * state changes, or it keeps being asked only for URLs not seen before.
      */
     public Boolean shouldAllowRequest(String url) {
         return null;
@@ -251,6 +275,10 @@ public class CordovaPlugin {
      * returns false, Cordova will block the navigation. If all plugins return
      * null, the default policy will be enforced. It at least one plugin returns
      * true, and no plugins return false, then the navigation will proceed.
+     *
+     * The combined answer is cached in the same way as for
+     * shouldAllowRequest(); call PluginManager.invalidateUrlPolicyCache() when
+     * it changes at runtime.
      */
     public Boolean shouldAllowNavigation(String url) {
         return null;
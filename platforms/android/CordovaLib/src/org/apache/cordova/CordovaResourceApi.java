@@ -84,6 +84,8 @@ public class CordovaResourceApi {
     private final ContentResolver contentResolver;
     private final PluginManager pluginManager;
     private boolean threadCheckingEnabled = true;
+    private AssetCache assetCache;
+    private AssetBundle assetBundle;
 
 
     public CordovaResourceApi(Context context, PluginManager pluginManager) {
@@ -96,6 +98,30 @@ public class CordovaResourceApi {
         threadCheckingEnabled = value;
     }
 
+    /**
+     * The cache used for file:///android_asset/ requests from the WebView, or
+     * null if the "AssetCacheSize" preference is not set.
+     */
+    public AssetCache getAssetCache() {
+        return assetCache;
+    }
+
+    public void setAssetCache(AssetCache assetCache) {
+        this.assetCache = assetCache;
+    }
+
+    /**
+     * The bundle that assets are read from before the APK's own assets, or
+     * null if the "AssetBundle" preference is not set.
+     */
+    public AssetBundle getAssetBundle() {
+        return assetBundle;
+    }
+
+    public void setAssetBundle(AssetBundle assetBundle) {
+        this.assetBundle = assetBundle;
+    }
+
     public boolean isThreadCheckingEnabled() {
         return threadCheckingEnabled;
     }
@@ -253,6 +279,12 @@ public class CordovaResourceApi {
             }
             case URI_TYPE_ASSET: {
                 String assetPath = uri.getPath().substring(15);
+                if (assetBundle != null) {
+                    InputStream bundled = assetBundle.open(assetPath);
+                    if (bundled != null) {
+                        return new OpenForReadResult(uri, bundled, getMimeTypeFromPath(assetPath), bundled.available(), null);
+                    }
+                }
                 AssetFileDescriptor assetFd = null;
                 InputStream inputStream;
                 long length = -1;
@@ -20,6 +20,8 @@ package org.apache.cordova;
 
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.util.Log;
 import android.view.Gravity;
@@ -33,12 +35,14 @@ import org.apache.cordova.engine.SystemWebViewEngine;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Main class for interacting with a Cordova webview. Manages plugins, events, and a CordovaWebViewEngine.
@@ -101,7 +105,25 @@ public class CordovaWebViewImpl implements CordovaWebView {
         this.preferences = preferences;
         pluginManager = new PluginManager(this, this.cordova, pluginEntries);
         resourceApi = new CordovaResourceApi(engine.getView().getContext(), pluginManager);
-        nativeToJsMessageQueue = new NativeToJsMessageQueue();
+        if (preferences.getBoolean("AssetBundle", false)) {
+            try {
+                resourceApi.setAssetBundle(AssetBundle.open(engine.getView().getContext().getAssets(), "www.pack"));
+            } catch (IOException e) {
+                // "cordova prepare" removed the packed assets, so without the
+                // bundle no page would load.
+                throw new IllegalStateException("Could not map the asset bundle www.pack", e);
+            }
+        }
+        int assetCacheSize = preferences.getInteger("AssetCacheSize", 0);
+        if (assetCacheSize > 0) {
+            resourceApi.setAssetCache(new AssetCache(resourceApi, assetCacheSize * 1024L,
+                    getAppVersion(engine.getView().getContext())));
+        }
+        nativeToJsMessageQueue = new NativeToJsMessageQueue(
+                preferences.getInteger("NativeToJsQueueCapacity", 0),
+                NativeToJsMessageQueue.OverflowPolicy.fromString(
+                        preferences.getString("NativeToJsQueueOverflow", null),
+                        NativeToJsMessageQueue.OverflowPolicy.DROP_OLDEST));
         nativeToJsMessageQueue.addBridgeMode(new NativeToJsMessageQueue.NoOpBridgeMode());
         nativeToJsMessageQueue.addBridgeMode(new NativeToJsMessageQueue.LoadUrlBridgeMode(engine, cordova));
 
@@ -117,6 +139,16 @@ public class CordovaWebViewImpl implements CordovaWebView {
 
     }
 
+    // Changes whenever the APK does, so that it can version cached assets.
+    private static String getAppVersion(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return info.versionCode + "-" + Long.toHexString(info.lastUpdateTime);
+        } catch (PackageManager.NameNotFoundException e) {
+            return "0";
+        }
+    }
+
     @Override
     public boolean isInitialized() {
         return cordova != null;
@@ -185,7 +217,14 @@ public class CordovaWebViewImpl implements CordovaWebView {
         cordova.getActivity().runOnUiThread(new Runnable() {
             public void run() {
                 if (loadUrlTimeoutValue > 0) {
-                    cordova.getThreadPool().execute(timeoutCheck);
+                    try {
+                        cordova.getThreadPool().execute(timeoutCheck);
+                    } catch (RejectedExecutionException e) {
+                        // A bounded thread pool is saturated; the timeout
+                        // still has to fire, so give it its own thread.
+                        LOG.w(TAG, "Thread pool is full, starting a thread for the load timeout");
+                        new Thread(timeoutCheck, "CordovaLoadUrlTimeout").start();
+                    }
                 }
                 engine.loadUrl(url, _recreatePlugins);
             }
@@ -397,12 +436,15 @@ public class CordovaWebViewImpl implements CordovaWebView {
     @Override
     public void clearCache() {
         engine.clearCache();
+        if (resourceApi.getAssetCache() != null) {
+            resourceApi.getAssetCache().clear();
+        }
     }
 
     @Override
     @Deprecated
     public void clearCache(boolean b) {
-        engine.clearCache();
+        clearCache();
     }
 
     @Override
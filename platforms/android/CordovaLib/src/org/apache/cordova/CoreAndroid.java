@@ -108,6 +108,65 @@ class CoreAndroid extends CordovaPlugin {
             }
             else if (action.equals("exitApp")) {
                 this.exitApp();
+            }
+            else if (action.equals("setExecProfiling")) {
+                webView.getPluginManager().getExecProfiler().setEnabled(args.getBoolean(0));
+            }
+            else if (action.equals("getExecProfile")) {
+                JsonWriter w = new JsonWriter();
+                webView.getPluginManager().getExecProfiler().writeStatistics(w);
+                callbackContext.sendPluginResult(new PluginResult(status, w));
+                return true;
+            }
+            else if (action.equals("getExecTrace")) {
+                // Chrome trace-event JSON; save it and load it in chrome://tracing.
+                JsonWriter w = new JsonWriter(16 * 1024);
+                webView.getPluginManager().getExecProfiler().writeTrace(w);
+                callbackContext.sendPluginResult(new PluginResult(status, w));
+                return true;
+            }
+            else if (action.equals("getExecutorStats")) {
+                JsonWriter w = new JsonWriter();
+                webView.getPluginManager().writeExecutorStatistics(w);
+                callbackContext.sendPluginResult(new PluginResult(status, w));
+                return true;
+            }
+            else if (action.equals("getAssetBundleStats")) {
+                AssetBundle assetBundle = webView.getResourceApi().getAssetBundle();
+                if (assetBundle == null) {
+                    callbackContext.sendPluginResult(new PluginResult(status, (String) null));
+                } else {
+                    JsonWriter w = new JsonWriter();
+                    assetBundle.writeStatistics(w);
+                    callbackContext.sendPluginResult(new PluginResult(status, w));
+                }
+                return true;
+            }
+            else if (action.equals("getAssetCacheStats")) {
+                AssetCache assetCache = webView.getResourceApi().getAssetCache();
+                if (assetCache == null) {
+                    callbackContext.sendPluginResult(new PluginResult(status, (String) null));
+                } else {
+                    JsonWriter w = new JsonWriter();
+                    assetCache.writeStatistics(w);
+                    callbackContext.sendPluginResult(new PluginResult(status, w));
+                }
+                return true;
+            }
+            else if (action.equals("getUrlPolicyStats")) {
+                JsonWriter w = new JsonWriter();
+                webView.getPluginManager().writeUrlPolicyStatistics(w);
+                callbackContext.sendPluginResult(new PluginResult(status, w));
+                return true;
+            }
+            else if (action.equals("getStartupTimeline")) {
+                JsonWriter w = new JsonWriter();
+                webView.getPluginManager().writeStartupTimeline(w);
+                callbackContext.sendPluginResult(new PluginResult(status, w));
+                return true;
+            }
+            else if (action.equals("resetExecProfile")) {
+                webView.getPluginManager().getExecProfiler().reset();
             }
 			else if (action.equals("messageChannel")) {
                 synchronized(messageChannelLock) {
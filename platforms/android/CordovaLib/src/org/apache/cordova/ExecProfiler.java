@@ -0,0 +1,300 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects per-(service, action) statistics about exec() calls: call and
+ * error counts, a latency histogram, the time until the first callback and
+ * the time spent in sendPluginResult(). While enabled, it also keeps the
+ * most recent calls as trace events that can be exported in Chrome's
+ * trace-event format (load them in chrome://tracing).
+ *
+ * Disabled by default; enable it with the ExecProfiling preference or the
+ * CoreAndroid setExecProfiling action.
+ */
+public class ExecProfiler {
+    private static final int MAX_TRACE_EVENTS = 4096;
+    // Latency buckets: bucket 0 is < 1us, bucket i is [2^(i-1), 2^i) us, the
+    // last bucket holds everything above about 1s.
+    private static final int BUCKET_COUNT = 22;
+
+    private volatile boolean enabled;
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Stats>> services = new ConcurrentHashMap<String, ConcurrentHashMap<String, Stats>>();
+    private final long originNanos = System.nanoTime();
+
+    // Ring of recent trace events, guarded by itself.
+    private final TraceEvent[] trace = new TraceEvent[MAX_TRACE_EVENTS];
+    private int traceHead;
+    private int traceSize;
+
+    /** Statistics of one (service, action) pair. */
+    public static class Stats {
+        final String service;
+        final String action;
+        long calls;
+        long errors;
+        long errorResults;
+        long totalNanos;
+        long maxNanos;
+        final long[] histogram = new long[BUCKET_COUNT];
+        long firstCallbacks;
+        long firstCallbackTotalNanos;
+        long firstCallbackMaxNanos;
+        long results;
+        long sendResultNanos;
+
+        Stats(String service, String action) {
+            this.service = service;
+            this.action = action;
+        }
+    }
+
+    private static class TraceEvent {
+        final String name;
+        final String category;
+        final long startNanos;
+        final long durationNanos;
+        final long threadId;
+
+        TraceEvent(String name, String category, long startNanos, long durationNanos, long threadId) {
+            this.name = name;
+            this.category = category;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.threadId = threadId;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the statistics of a (service, action) pair, creating them if
+     * needed.
+     */
+    Stats statsFor(String service, String action) {
+        ConcurrentHashMap<String, Stats> actions = services.get(service);
+        if (actions == null) {
+            services.putIfAbsent(service, new ConcurrentHashMap<String, Stats>());
+            actions = services.get(service);
+        }
+        Stats stats = actions.get(action);
+        if (stats == null) {
+            actions.putIfAbsent(action, new Stats(service, action));
+            stats = actions.get(action);
+        }
+        return stats;
+    }
+
+    /**
+     * Records a call to execute(). failed is true if it threw, or the
+     * action or plugin was not found.
+     */
+    void recordExec(Stats stats, long startNanos, long endNanos, boolean failed) {
+        long duration = endNanos - startNanos;
+        synchronized (stats) {
+            stats.calls++;
+            if (failed) {
+                stats.errors++;
+            }
+            stats.totalNanos += duration;
+            stats.maxNanos = Math.max(stats.maxNanos, duration);
+            stats.histogram[bucket(duration)]++;
+        }
+        addTraceEvent(stats.service + "." + stats.action, "exec", startNanos, duration);
+    }
+
+    /**
+     * Records a result sent for a call. first is true for the first result
+     * sent for the call, execStartNanos is when the call started.
+     */
+    void recordResult(Stats stats, int status, boolean first, long execStartNanos, long sendStartNanos, long sendEndNanos) {
+        boolean error = status != PluginResult.Status.OK.ordinal() && status != PluginResult.Status.NO_RESULT.ordinal();
+        long untilCallback = sendStartNanos - execStartNanos;
+        synchronized (stats) {
+            stats.results++;
+            stats.sendResultNanos += sendEndNanos - sendStartNanos;
+            if (error) {
+                stats.errorResults++;
+            }
+            if (first) {
+                stats.firstCallbacks++;
+                stats.firstCallbackTotalNanos += untilCallback;
+                stats.firstCallbackMaxNanos = Math.max(stats.firstCallbackMaxNanos, untilCallback);
+            }
+        }
+        if (first) {
+            addTraceEvent(stats.service + "." + stats.action, "firstCallback", execStartNanos, untilCallback);
+        }
+    }
+
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 0;
+        while (micros > 0 && bucket < BUCKET_COUNT - 1) {
+            micros >>= 1;
+            bucket++;
+        }
+        return bucket;
+    }
+
+    // Upper bound of a bucket in microseconds.
+    private static long bucketLimitMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    private void addTraceEvent(String name, String category, long startNanos, long durationNanos) {
+        TraceEvent event = new TraceEvent(name, category, startNanos, durationNanos, Thread.currentThread().getId());
+        synchronized (trace) {
+            trace[(traceHead + traceSize) % MAX_TRACE_EVENTS] = event;
+            if (traceSize < MAX_TRACE_EVENTS) {
+                traceSize++;
+            } else {
+                traceHead = (traceHead + 1) % MAX_TRACE_EVENTS;
+            }
+        }
+    }
+
+    public void reset() {
+        services.clear();
+        synchronized (trace) {
+            for (int i = 0; i < MAX_TRACE_EVENTS; i++) {
+                trace[i] = null;
+            }
+            traceHead = 0;
+            traceSize = 0;
+        }
+    }
+
+    /**
+     * Writes the statistics as a JSON array with one object per
+     * (service, action) pair. Times are in milliseconds; the histogram is a
+     * list of [upper bound in microseconds, count] pairs for the non-empty
+     * buckets.
+     */
+    public void writeStatistics(JsonWriter w) {
+        w.beginArray();
+        for (Map.Entry<String, ConcurrentHashMap<String, Stats>> service : services.entrySet()) {
+            for (Stats s : service.getValue().values()) {
+                synchronized (s) {
+                    w.beginObject()
+                        .name("service").value(s.service)
+                        .name("action").value(s.action)
+                        .name("calls").value(s.calls)
+                        .name("errors").value(s.errors)
+                        .name("errorResults").value(s.errorResults)
+                        .name("totalMs").value(s.totalNanos / 1e6)
+                        .name("avgMs").value(s.calls == 0 ? 0 : s.totalNanos / 1e6 / s.calls)
+                        .name("maxMs").value(s.maxNanos / 1e6)
+                        .name("p50Ms").value(percentileMicros(s, 0.5) / 1e3)
+                        .name("p99Ms").value(percentileMicros(s, 0.99) / 1e3)
+                        .name("firstCallbacks").value(s.firstCallbacks)
+                        .name("avgFirstCallbackMs").value(s.firstCallbacks == 0 ? 0 : s.firstCallbackTotalNanos / 1e6 / s.firstCallbacks)
+                        .name("maxFirstCallbackMs").value(s.firstCallbackMaxNanos / 1e6)
+                        .name("results").value(s.results)
+                        .name("sendResultMs").value(s.sendResultNanos / 1e6)
+                        .name("histogram").beginArray();
+                    for (int i = 0; i < BUCKET_COUNT; i++) {
+                        if (s.histogram[i] != 0) {
+                            w.beginArray().value(bucketLimitMicros(i)).value(s.histogram[i]).endArray();
+                        }
+                    }
+                    w.endArray().endObject();
+                }
+            }
+        }
+        w.endArray();
+    }
+
+    // Upper bound of the bucket holding the given percentile. Called with
+    // the stats locked.
+    private static long percentileMicros(Stats s, double percentile) {
+        long target = (long) Math.ceil(s.calls * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += s.histogram[i];
+            if (seen >= target && seen > 0) {
+                return bucketLimitMicros(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the recent trace events as a Chrome trace-event JSON object.
+     * Each exec() call is a complete ("X") event on the thread that ran it;
+     * the time from a call to its first callback is an async event.
+     */
+    public void writeTrace(JsonWriter w) {
+        ArrayList<TraceEvent> events;
+        synchronized (trace) {
+            events = new ArrayList<TraceEvent>(traceSize);
+            for (int i = 0; i < traceSize; i++) {
+                events.add(trace[(traceHead + i) % MAX_TRACE_EVENTS]);
+            }
+        }
+        int pid = android.os.Process.myPid();
+        w.beginObject().name("displayTimeUnit").value("ms").name("traceEvents").beginArray();
+        long asyncId = 0;
+        for (TraceEvent e : events) {
+            double ts = (e.startNanos - originNanos) / 1e3;
+            if ("exec".equals(e.category)) {
+                w.beginObject()
+                    .name("name").value(e.name)
+                    .name("cat").value(e.category)
+                    .name("ph").value("X")
+                    .name("ts").value(ts)
+                    .name("dur").value(e.durationNanos / 1e3)
+                    .name("pid").value(pid)
+                    .name("tid").value(e.threadId)
+                    .endObject();
+            } else {
+                asyncId++;
+                w.beginObject()
+                    .name("name").value(e.name)
+                    .name("cat").value(e.category)
+                    .name("ph").value("b")
+                    .name("id").value(asyncId)
+                    .name("ts").value(ts)
+                    .name("pid").value(pid)
+                    .name("tid").value(e.threadId)
+                    .endObject();
+                w.beginObject()
+                    .name("name").value(e.name)
+                    .name("cat").value(e.category)
+                    .name("ph").value("e")
+                    .name("id").value(asyncId)
+                    .name("ts").value(ts + e.durationNanos / 1e3)
+                    .name("pid").value(pid)
+                    .name("tid").value(e.threadId)
+                    .endObject();
+            }
+        }
+        w.endArray().endObject();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * Runs a flush on the UI thread at most once per display frame, merging
+ * all the requests made in between.
+ *
+ * A request made when no flush ran during the last frame is served right
+ * away. Otherwise the flush waits for the next frame: on API 16+ it is
+ * aligned to vsync using Choreographer, on older devices it is delayed to
+ * the next 16ms boundary.
+ */
+public class FrameFlushScheduler {
+    private static final long FRAME_NANOS = 16666667L;
+    private static final long SECOND_NANOS = 1000000000L;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flush;
+
+    private final Runnable runFlush = new Runnable() {
+        @Override
+        public void run() {
+            onFrame();
+        }
+    };
+
+    private final Runnable postToNextFrame = new Runnable() {
+        @Override
+        public void run() {
+            Vsync.post(runFlush);
+        }
+    };
+
+    // Guarded by this.
+    private boolean scheduled;
+    private long lastFlushNanos;
+    private long requests;
+    private long flushes;
+    private long messages;
+    private long rateWindowStart;
+    private int rateWindowFlushes;
+    private float flushesPerSecond;
+
+    /**
+     * @param flush Run on the UI thread for each scheduled flush.
+     */
+    public FrameFlushScheduler(Runnable flush) {
+        this.flush = flush;
+    }
+
+    /**
+     * Requests a flush. Cheap to call for every message: requests made
+     * while a flush is pending are merged into it.
+     */
+    public synchronized void requestFlush() {
+        requests++;
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+        long sinceLastFlush = System.nanoTime() - lastFlushNanos;
+        if (sinceLastFlush >= FRAME_NANOS) {
+            handler.post(runFlush);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            // Choreographer must be used from the UI thread.
+            handler.post(postToNextFrame);
+        } else {
+            handler.postDelayed(runFlush, (FRAME_NANOS - sinceLastFlush) / 1000000 + 1);
+        }
+    }
+
+    /**
+     * Records how many messages the last flush delivered.
+     */
+    public synchronized void recordMessages(int count) {
+        messages += count;
+    }
+
+    private void onFrame() {
+        synchronized (this) {
+            long now = System.nanoTime();
+            scheduled = false;
+            lastFlushNanos = now;
+            flushes++;
+            if (now - rateWindowStart >= SECOND_NANOS) {
+                flushesPerSecond = rateWindowFlushes * (float) SECOND_NANOS / (now - rateWindowStart);
+                rateWindowStart = now;
+                rateWindowFlushes = 0;
+            }
+            rateWindowFlushes++;
+        }
+        flush.run();
+    }
+
+    /**
+     * Returns the flush counters: requests, flushes, messages,
+     * flushesPerSecond (over the last full second) and messagesPerFlush.
+     */
+    public synchronized JSONObject getStatistics() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("requests", requests);
+            stats.put("flushes", flushes);
+            stats.put("messages", messages);
+            stats.put("flushesPerSecond", (double) flushesPerSecond);
+            stats.put("messagesPerFlush", flushes == 0 ? 0 : (double) messages / flushes);
+        } catch (JSONException e) {
+            // Values are always finite.
+        }
+        return stats;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class Vsync {
+        static void post(final Runnable r) {
+            Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    r.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool that counts submitted, completed and rejected tasks, tracks
+ * its queue depth, and measures how long tasks wait in the queue and how
+ * long they run. Idle threads exit after a while, so an unused pool costs
+ * nothing.
+ *
+ * A pool is either unbounded, starting a thread for every task that finds
+ * none idle like Executors.newCachedThreadPool(), or bounded with a queue.
+ * As with any ThreadPoolExecutor, a bounded pool only starts threads beyond
+ * its core size once the queue is full. When it is at its maximum size and
+ * the queue is full, a task is rejected with a RejectedExecutionException.
+ * Rejected tasks are never run on the submitting thread, which may be the
+ * UI or bridge thread.
+ */
+public class InstrumentedThreadPool extends ThreadPoolExecutor {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Receives the timings of every task run by a pool, on the thread that
+     * ran it. Must be cheap and thread-safe.
+     */
+    public interface TaskListener {
+        void onTaskFinished(InstrumentedThreadPool pool, long waitNanos, long runNanos);
+    }
+
+    private final String name;
+    private final int queueCapacity;
+    private volatile TaskListener taskListener;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong timedTasks = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+
+    /**
+     * Creates an unbounded pool, which never queues or rejects tasks.
+     */
+    public InstrumentedThreadPool(String name) {
+        this(name, 0, Integer.MAX_VALUE, new SynchronousQueue<Runnable>(), 0);
+    }
+
+    /**
+     * Creates a pool with a fixed number of threads that rejects tasks once
+     * its queue is full.
+     */
+    public InstrumentedThreadPool(String name, int threads, int queueCapacity) {
+        this(name, threads, threads, queueCapacity);
+    }
+
+    /**
+     * Creates a bounded pool that rejects tasks once it has maxThreads
+     * threads and its queue is full.
+     */
+    public InstrumentedThreadPool(String name, int coreThreads, int maxThreads, int queueCapacity) {
+        this(name, coreThreads, Math.max(coreThreads, maxThreads), new LinkedBlockingQueue<Runnable>(queueCapacity), queueCapacity);
+    }
+
+    private InstrumentedThreadPool(final String name, int coreThreads, int maxThreads, BlockingQueue<Runnable> queue, int queueCapacity) {
+        super(coreThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue);
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        if (coreThreads > 0) {
+            allowCoreThreadTimeOut(true);
+        }
+        setThreadFactory(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, name + "-" + count.incrementAndGet());
+            }
+        });
+        setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException(InstrumentedThreadPool.this.name + " is full (" + InstrumentedThreadPool.this.queueCapacity + " queued tasks)");
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setTaskListener(TaskListener listener) {
+        taskListener = listener;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        submitted.incrementAndGet();
+        super.execute(new TimedTask(command));
+        int depth = getQueue().size();
+        int max;
+        while (depth > (max = maxQueueDepth.get()) && !maxQueueDepth.compareAndSet(max, depth)) {
+            // Retry.
+        }
+    }
+
+    /**
+     * Like ThreadPoolExecutor.shutdownNow(), but returns the queued tasks as
+     * they were passed to execute().
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> queued = super.shutdownNow();
+        List<Runnable> tasks = new ArrayList<Runnable>(queued.size());
+        for (Runnable task : queued) {
+            tasks.add(task instanceof TimedTask ? ((TimedTask) task).task : task);
+        }
+        return tasks;
+    }
+
+    private void recordTask(long waitNanos, long runNanos) {
+        timedTasks.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        totalRunNanos.addAndGet(runNanos);
+        updateMax(maxWaitNanos, waitNanos);
+        updateMax(maxRunNanos, runNanos);
+        TaskListener listener = taskListener;
+        if (listener != null) {
+            listener.onTaskFinished(this, waitNanos, runNanos);
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry.
+        }
+    }
+
+    // Measures the time from submission to start, and the run time.
+    private class TimedTask implements Runnable {
+        private final Runnable task;
+        private final long submitNanos = System.nanoTime();
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                recordTask(start - submitNanos, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Writes the pool's counters as a JSON object. Times are in milliseconds.
+     */
+    public void writeStatistics(JsonWriter w) {
+        long tasks = timedTasks.get();
+        w.beginObject()
+            .name("name").value(name)
+            .name("coreThreads").value(getCorePoolSize())
+            .name("maxThreads").value(getMaximumPoolSize())
+            .name("liveThreads").value(getPoolSize())
+            .name("largestThreads").value(getLargestPoolSize())
+            .name("activeThreads").value(getActiveCount())
+            .name("queueDepth").value(getQueue().size())
+            .name("maxQueueDepth").value(maxQueueDepth.get())
+            .name("queueCapacity").value(queueCapacity)
+            .name("submitted").value(submitted.get())
+            .name("completed").value(tasks)
+            .name("rejected").value(rejected.get())
+            .name("avgWaitMs").value(tasks == 0 ? 0 : totalWaitNanos.get() / 1e6 / tasks)
+            .name("maxWaitMs").value(maxWaitNanos.get() / 1e6)
+            .name("avgRunMs").value(tasks == 0 ? 0 : totalRunNanos.get() / 1e6 / tasks)
+            .name("maxRunMs").value(maxRunNanos.get() / 1e6)
+            .endObject();
+    }
+}
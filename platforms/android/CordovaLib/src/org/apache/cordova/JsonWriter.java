@@ -0,0 +1,240 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+/**
+ * Streaming JSON writer that encodes straight into a StringBuilder, for
+ * building plugin results without an intermediate JSONObject or JSONArray.
+ *
+ * <pre>
+ * JsonWriter w = new JsonWriter();
+ * w.beginObject().name("address").value(address).name("rssi").value(rssi).endObject();
+ * callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, w));
+ * </pre>
+ *
+ * Apart from growing its buffer, the writer allocates only when formatting
+ * floating point numbers. Commas and colons are inserted automatically;
+ * the caller is responsible for balancing begin and end calls. Once a
+ * writer has been passed to a PluginResult it must not be written to or
+ * reset, since the result refers to its buffer rather than a copy.
+ */
+public class JsonWriter implements CharSequence {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder sb;
+    // True when the next value or name must be preceded by a comma.
+    private boolean needsComma;
+
+    public JsonWriter() {
+        this(128);
+    }
+
+    public JsonWriter(int capacity) {
+        sb = new StringBuilder(capacity);
+    }
+
+    public JsonWriter beginObject() {
+        separate();
+        sb.append('{');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        sb.append('}');
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        separate();
+        sb.append('[');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        sb.append(']');
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes an object key. Must be followed by exactly one value.
+     */
+    public JsonWriter name(String name) {
+        separate();
+        quote(name);
+        sb.append(':');
+        needsComma = false;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            sb.append("null");
+        } else {
+            quote(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        separate();
+        sb.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        separate();
+        sb.append(value);
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes a number. NaN and infinities are not valid JSON and are
+     * written as null, as JSON.stringify does.
+     */
+    public JsonWriter value(double value) {
+        separate();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append("null");
+        } else if (value == (long) value) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Like {@link #value(double)}, but keeps the shortest representation of
+     * the float (0.1f is written as 0.1, not 0.10000000149011612).
+     */
+    public JsonWriter value(float value) {
+        separate();
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            sb.append("null");
+        } else if (value == (long) value) {
+            sb.append((long) value);
+        } else {
+            sb.append(value);
+        }
+        needsComma = true;
+        return this;
+    }
+
+    public JsonWriter nullValue() {
+        separate();
+        sb.append("null");
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Writes a value that is already encoded as JSON, without validating it.
+     */
+    public JsonWriter rawValue(CharSequence json) {
+        separate();
+        sb.append(json);
+        needsComma = true;
+        return this;
+    }
+
+    /**
+     * Empties the writer so that it can be reused.
+     */
+    public JsonWriter reset() {
+        sb.setLength(0);
+        needsComma = false;
+        return this;
+    }
+
+    private void separate() {
+        if (needsComma) {
+            sb.append(',');
+        }
+    }
+
+    // Same escaping as JSONStringer, plus U+2028 and U+2029, which are not
+    // allowed in JavaScript string literals when results are sent as eval'ed
+    // JS.
+    private void quote(String s) {
+        sb.append('"');
+        int start = 0;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            String escape;
+            switch (c) {
+                case '"': escape = "\\\""; break;
+                case '\\': escape = "\\\\"; break;
+                case '/': escape = "\\/"; break;
+                case '\t': escape = "\\t"; break;
+                case '\b': escape = "\\b"; break;
+                case '\n': escape = "\\n"; break;
+                case '\r': escape = "\\r"; break;
+                case '\f': escape = "\\f"; break;
+                default:
+                    if (c > 0x1f && c != '\u2028' && c != '\u2029') {
+                        continue;
+                    }
+                    escape = null;
+            }
+            sb.append(s, start, i);
+            if (escape != null) {
+                sb.append(escape);
+            } else {
+                sb.append("\\u")
+                  .append(HEX[(c >> 12) & 0xf])
+                  .append(HEX[(c >> 8) & 0xf])
+                  .append(HEX[(c >> 4) & 0xf])
+                  .append(HEX[c & 0xf]);
+            }
+            start = i + 1;
+        }
+        sb.append(s, start, length);
+        sb.append('"');
+    }
+
+    @Override
+    public int length() {
+        return sb.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return sb.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return sb.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+}
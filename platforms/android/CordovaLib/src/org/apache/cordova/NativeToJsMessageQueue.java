@@ -19,8 +19,13 @@
 package org.apache.cordova;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.Locale;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Looper;
 import android.util.Log;
 
 /**
@@ -42,7 +47,54 @@ public class NativeToJsMessageQueue {
     // This currently only chops up on message boundaries. It may be useful
     // to allow it to break up messages.
     private static int MAX_PAYLOAD_SIZE = 50 * 1024 * 10240;
-    
+
+    // The encode buffer is reused between flushes unless it grew beyond this,
+    // so that one large burst does not pin memory.
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    // Initial size of the ring; it doubles as needed, up to the capacity.
+    private static final int INITIAL_RING_SIZE = 16;
+
+    // Longest time OverflowPolicy.BLOCK waits for room before dropping the
+    // oldest message. Producers may be running on the thread that drains
+    // the queue, so they cannot wait indefinitely.
+    private static final long BLOCK_TIMEOUT_MS = 1000;
+
+    // Number of times a producer on the main thread got DROP_OLDEST instead
+    // of BLOCK. Guarded by this.
+    private int mainThreadFallbacks;
+
+    /**
+     * What enqueueing does when the queue is at capacity.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait up to BLOCK_TIMEOUT_MS for room, then drop the oldest message.
+         * Producers on the main thread never wait; they get DROP_OLDEST.
+         */
+        BLOCK,
+        /** Drop the oldest message. */
+        DROP_OLDEST,
+        /**
+         * Replace the newest pending keep-callback result for the same
+         * callbackId; drop the oldest message if there is none.
+         */
+        COALESCE;
+
+        /** Parses a preference value such as "drop-oldest". */
+        public static OverflowPolicy fromString(String value, OverflowPolicy defaultValue) {
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                Log.e(LOG_TAG, "Invalid overflow policy: " + value);
+                return defaultValue;
+            }
+        }
+    }
+
     /**
      * When true, the active listener is not fired upon enqueue. When set to false,
      * the active listener will be fired if the queue is non-empty. 
@@ -50,9 +102,41 @@ public class NativeToJsMessageQueue {
     private boolean paused;
     
     /**
-     * The list of JavaScript statements to be sent to JavaScript.
+     * The messages to be sent to JavaScript, oldest at ringHead. The ring
+     * size is always a power of two. Guarded by this.
+     */
+    private JsMessage[] ring = new JsMessage[INITIAL_RING_SIZE];
+    private int ringHead;
+    // Only changed with the lock held. Volatile so that isEmpty() and size()
+    // can be read without it; callers get a snapshot that may be stale by
+    // the time they act on it.
+    private volatile int queueSize;
+
+    /**
+     * Maximum number of queued messages, or 0 for no limit.
+     */
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+
+    // Messages dropped or coalesced since the last pop, for logging.
+    private int overflowCount;
+
+    // Number of messages ever removed from the ring, so that a message's
+    // position (removedCount + index at the time it was added) stays valid
+    // as messages are popped.
+    private long removedCount;
+
+    /**
+     * Position of the pending latest-value result of each callback, by
+     * latest-value key ("" when there is none), see
+     * PluginResult.setLatestValueOnly() and setLatestValueKey(). A callback's
+     * entries are removed when any other result for it is queued after them,
+     * and all entries when the queue drains. Guarded by this.
      */
-    private final LinkedList<JsMessage> queue = new LinkedList<JsMessage>();
+    private final HashMap<String, HashMap<String, Long>> latestValuePositions = new HashMap<String, HashMap<String, Long>>();
+
+    // Reused by popAndEncode() and popAndEncodeAsJs(). Guarded by this.
+    private StringBuilder encodeBuffer;
 
     /**
      * The array of listeners that can be used to send messages to JS.
@@ -66,6 +150,19 @@ public class NativeToJsMessageQueue {
      */
     private BridgeMode activeBridgeMode;
 
+    public NativeToJsMessageQueue() {
+        this(0, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * @param capacity       Maximum number of queued messages, or 0 for no limit.
+     * @param overflowPolicy What to do with a new message when the queue is full.
+     */
+    public NativeToJsMessageQueue(int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = Math.max(0, capacity);
+        this.overflowPolicy = overflowPolicy;
+    }
+
     public void addBridgeMode(BridgeMode bridgeMode) {
         bridgeModes.add(bridgeMode);
     }
@@ -75,7 +172,11 @@ public class NativeToJsMessageQueue {
     }
 
     public boolean isEmpty() {
-        return queue.isEmpty();
+        return queueSize == 0;
+    }
+
+    public int size() {
+        return queueSize;
     }
 
     /**
@@ -92,7 +193,7 @@ public class NativeToJsMessageQueue {
                     activeBridgeMode = newMode;
                     if (newMode != null) {
                         newMode.reset();
-                        if (!paused && !queue.isEmpty()) {
+                        if (!paused && queueSize != 0) {
                             newMode.onNativeToJsMessageAvailable(this);
                         }
                     }
@@ -106,22 +207,182 @@ public class NativeToJsMessageQueue {
      */
     public void reset() {
         synchronized (this) {
-            queue.clear();
+            clearRing();
             setBridgeMode(-1);
         }
     }
 
-    private int calculatePackedMessageLength(JsMessage message) {
-        int messageLen = message.calculateEncodedLength();
-        String messageLenStr = String.valueOf(messageLen);
-        return messageLenStr.length() + messageLen + 1;        
+    private StringBuilder obtainEncodeBuffer(int capacity) {
+        StringBuilder sb = encodeBuffer;
+        if (sb == null) {
+            sb = new StringBuilder(capacity);
+            encodeBuffer = sb;
+        } else {
+            sb.setLength(0);
+            sb.ensureCapacity(capacity);
+        }
+        return sb;
     }
-    
-    private void packMessage(JsMessage message, StringBuilder sb) {
-        int len = message.calculateEncodedLength();
-        sb.append(len)
-          .append(' ');
-        message.encodeAsMessage(sb);
+
+    // Returns the encoded payload, the only allocation that reaches the WebView.
+    private String takeEncodedString(StringBuilder sb) {
+        String ret = sb.toString();
+        if (sb.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            encodeBuffer = null;
+        } else {
+            sb.setLength(0);
+        }
+        return ret;
+    }
+
+    private JsMessage peekMessage(int i) {
+        return ring[(ringHead + i) & (ring.length - 1)];
+    }
+
+    private JsMessage removeFirstMessage() {
+        JsMessage message = ring[ringHead];
+        ring[ringHead] = null;
+        ringHead = (ringHead + 1) & (ring.length - 1);
+        queueSize--;
+        removedCount++;
+        return message;
+    }
+
+    // Hands a pooled result back to its CallbackContext once its message has
+    // been encoded or dropped.
+    private static void recycle(JsMessage message) {
+        if (message.pluginResult != null) {
+            message.pluginResult.recycle();
+        }
+    }
+
+    private void addLastMessage(JsMessage message) {
+        if (queueSize == ring.length) {
+            JsMessage[] newRing = new JsMessage[ring.length * 2];
+            for (int i = 0; i < queueSize; i++) {
+                newRing[i] = peekMessage(i);
+            }
+            ring = newRing;
+            ringHead = 0;
+        }
+        ring[(ringHead + queueSize) & (ring.length - 1)] = message;
+        queueSize++;
+    }
+
+    private void clearRing() {
+        for (int i = 0; i < queueSize; i++) {
+            recycle(peekMessage(i));
+        }
+        ring = new JsMessage[INITIAL_RING_SIZE];
+        ringHead = 0;
+        queueSize = 0;
+        latestValuePositions.clear();
+        notifyAll();
+    }
+
+    // Called after messages are removed, to wake producers blocked on a
+    // full queue.
+    private void onMessagesRemoved() {
+        if (queueSize == 0 && !latestValuePositions.isEmpty()) {
+            // Every tracked position has been delivered.
+            latestValuePositions.clear();
+        }
+        if (overflowCount > 0) {
+            Log.w(LOG_TAG, "Native->JS queue overflowed; dropped or coalesced " + overflowCount + " messages"
+                    + (mainThreadFallbacks > 0 ? ", " + mainThreadFallbacks + " on the main thread without blocking" : ""));
+            overflowCount = 0;
+            mainThreadFallbacks = 0;
+        }
+        if (capacity > 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Replaces the pending latest-value result for the same callback, if
+     * there is one. Returns true if message was coalesced into it.
+     */
+    private boolean coalesceLatestValue(JsMessage message) {
+        String callbackId = message.jsPayloadOrCallbackId;
+        if (!message.pluginResult.isLatestValueOnly() || !message.pluginResult.getKeepCallback()) {
+            latestValuePositions.remove(callbackId);
+            return false;
+        }
+        HashMap<String, Long> positions = latestValuePositions.get(callbackId);
+        String key = latestValueKey(message.pluginResult);
+        Long position = positions != null ? positions.get(key) : null;
+        if (position != null) {
+            long i = position - removedCount;
+            if (i >= 0 && i < queueSize) {
+                JsMessage pending = peekMessage((int) i);
+                if (pending.pluginResult != null && pending.pluginResult.isLatestValueOnly()
+                        && callbackId.equals(pending.jsPayloadOrCallbackId)
+                        && key.equals(latestValueKey(pending.pluginResult))) {
+                    ring[(ringHead + (int) i) & (ring.length - 1)] = message;
+                    recycle(pending);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String latestValueKey(PluginResult result) {
+        String key = result.getLatestValueKey();
+        return key != null ? key : "";
+    }
+
+    private static boolean isMainThread() {
+        Looper looper = Looper.myLooper();
+        return looper != null && looper == Looper.getMainLooper();
+    }
+
+    /**
+     * Makes room for message in a full queue, according to the overflow
+     * policy. Returns false if the message was coalesced into a pending one
+     * and must not be added. Called with the lock held.
+     */
+    private boolean makeRoom(JsMessage message) {
+        if (overflowPolicy == OverflowPolicy.BLOCK && isMainThread()) {
+            // Waiting here would stall the UI, and on some bridge modes the
+            // main thread is the one that drains the queue.
+            mainThreadFallbacks++;
+        } else if (overflowPolicy == OverflowPolicy.BLOCK) {
+            long deadline = System.currentTimeMillis() + BLOCK_TIMEOUT_MS;
+            while (queueSize >= capacity && activeBridgeMode != null) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (queueSize < capacity) {
+                return true;
+            }
+        } else if (overflowPolicy == OverflowPolicy.COALESCE && message.pluginResult != null) {
+            // Only the newest pending message for the callback can be
+            // replaced without reordering the callback's results.
+            for (int i = queueSize - 1; i >= 0; i--) {
+                JsMessage pending = peekMessage(i);
+                if (pending.pluginResult != null && pending.jsPayloadOrCallbackId.equals(message.jsPayloadOrCallbackId)) {
+                    if (pending.pluginResult.getKeepCallback()) {
+                        ring[(ringHead + i) & (ring.length - 1)] = message;
+                        recycle(pending);
+                        overflowCount++;
+                        return false;
+                    }
+                    break;
+                }
+            }
+        }
+        recycle(removeFirstMessage());
+        overflowCount++;
+        return true;
     }
     
     /**
@@ -135,13 +396,13 @@ public class NativeToJsMessageQueue {
                 return null;
             }
             activeBridgeMode.notifyOfFlush(this, fromOnlineEvent);
-            if (queue.isEmpty()) {
+            if (queueSize == 0) {
                 return null;
             }
             int totalPayloadLen = 0;
             int numMessagesToSend = 0;
-            for (JsMessage message : queue) {
-                int messageSize = calculatePackedMessageLength(message);
+            for (int i = 0; i < queueSize; i++) {
+                int messageSize = peekMessage(i).packedLength;
                 if (numMessagesToSend > 0 && totalPayloadLen + messageSize > MAX_PAYLOAD_SIZE && MAX_PAYLOAD_SIZE > 0) {
                     break;
                 }
@@ -149,18 +410,22 @@ public class NativeToJsMessageQueue {
                 numMessagesToSend += 1;
             }
 
-            StringBuilder sb = new StringBuilder(totalPayloadLen);
+            StringBuilder sb = obtainEncodeBuffer(totalPayloadLen + 1);
             for (int i = 0; i < numMessagesToSend; ++i) {
-                JsMessage message = queue.removeFirst();
-                packMessage(message, sb);
+                JsMessage message = removeFirstMessage();
+                sb.append(message.encodedLength)
+                  .append(' ');
+                message.encodeAsMessage(sb);
+                recycle(message);
             }
-            
-            if (!queue.isEmpty()) {
+            onMessagesRemoved();
+            activeBridgeMode.notifyOfMessagesSent(this, numMessagesToSend, queueSize != 0);
+
+            if (queueSize != 0) {
                 // Attach a char to indicate that there are more messages pending.
                 sb.append('*');
             }
-            String ret = sb.toString();
-            return ret;
+            return takeEncodedString(sb);
         }
     }
     
@@ -169,26 +434,26 @@ public class NativeToJsMessageQueue {
      */
     public String popAndEncodeAsJs() {
         synchronized (this) {
-            int length = queue.size();
+            int length = queueSize;
             if (length == 0) {
                 return null;
             }
             int totalPayloadLen = 0;
             int numMessagesToSend = 0;
-            for (JsMessage message : queue) {
-                int messageSize = message.calculateEncodedLength() + 50; // overestimate.
+            for (int i = 0; i < length; i++) {
+                int messageSize = peekMessage(i).encodedLength + 50; // overestimate.
                 if (numMessagesToSend > 0 && totalPayloadLen + messageSize > MAX_PAYLOAD_SIZE && MAX_PAYLOAD_SIZE > 0) {
                     break;
                 }
                 totalPayloadLen += messageSize;
                 numMessagesToSend += 1;
             }
-            boolean willSendAllMessages = numMessagesToSend == queue.size();
-            StringBuilder sb = new StringBuilder(totalPayloadLen + (willSendAllMessages ? 0 : 100));
+            boolean willSendAllMessages = numMessagesToSend == length;
+            StringBuilder sb = obtainEncodeBuffer(totalPayloadLen + (willSendAllMessages ? 0 : 100));
             // Wrap each statement in a try/finally so that if one throws it does 
             // not affect the next.
             for (int i = 0; i < numMessagesToSend; ++i) {
-                JsMessage message = queue.removeFirst();
+                JsMessage message = removeFirstMessage();
                 if (willSendAllMessages && (i + 1 == numMessagesToSend)) {
                     message.encodeAsJsMessage(sb);
                 } else {
@@ -196,6 +461,11 @@ public class NativeToJsMessageQueue {
                     message.encodeAsJsMessage(sb);
                     sb.append("}finally{");
                 }
+                recycle(message);
+            }
+            onMessagesRemoved();
+            if (activeBridgeMode != null) {
+                activeBridgeMode.notifyOfMessagesSent(this, numMessagesToSend, !willSendAllMessages);
             }
             if (!willSendAllMessages) {
                 sb.append("window.setTimeout(function(){cordova.require('cordova/plugin/android/polling').pollOnce();},0);");
@@ -203,8 +473,7 @@ public class NativeToJsMessageQueue {
             for (int i = willSendAllMessages ? 1 : 0; i < numMessagesToSend; ++i) {
                 sb.append('}');
             }
-            String ret = sb.toString();
-            return ret;
+            return takeEncodedString(sb);
         }
     }   
 
@@ -228,12 +497,14 @@ public class NativeToJsMessageQueue {
         boolean noResult = result.getStatus() == PluginResult.Status.NO_RESULT.ordinal();
         boolean keepCallback = result.getKeepCallback();
         if (noResult && keepCallback) {
+            result.recycle();
             return;
         }
-        JsMessage message = new JsMessage(result, callbackId);
+        JsMessage message = JsMessage.obtain(result, callbackId);
         if (FORCE_ENCODE_USING_EVAL) {
-            StringBuilder sb = new StringBuilder(message.calculateEncodedLength() + 50);
+            StringBuilder sb = new StringBuilder(message.encodedLength + 50);
             message.encodeAsJsMessage(sb);
+            result.recycle();
             message = new JsMessage(sb.toString());
         }
 
@@ -244,9 +515,33 @@ public class NativeToJsMessageQueue {
         synchronized (this) {
             if (activeBridgeMode == null) {
                 Log.d(LOG_TAG, "Dropping Native->JS message due to disabled bridge");
+                recycle(message);
                 return;
             }
-            queue.add(message);
+            if (message.pluginResult != null && (!latestValuePositions.isEmpty() || message.pluginResult.isLatestValueOnly())) {
+                if (coalesceLatestValue(message)) {
+                    // The replaced message has already been announced.
+                    return;
+                }
+            }
+            if (capacity > 0 && queueSize >= capacity) {
+                if (!makeRoom(message)) {
+                    return;
+                }
+                if (activeBridgeMode == null) {
+                    recycle(message);
+                    return;
+                }
+            }
+            addLastMessage(message);
+            if (message.pluginResult != null && message.pluginResult.isLatestValueOnly() && message.pluginResult.getKeepCallback()) {
+                HashMap<String, Long> positions = latestValuePositions.get(message.jsPayloadOrCallbackId);
+                if (positions == null) {
+                    positions = new HashMap<String, Long>();
+                    latestValuePositions.put(message.jsPayloadOrCallbackId, positions);
+                }
+                positions.put(latestValueKey(message.pluginResult), removedCount + queueSize - 1);
+            }
             if (!paused) {
                 activeBridgeMode.onNativeToJsMessageAvailable(this);
             }
@@ -262,7 +557,7 @@ public class NativeToJsMessageQueue {
         paused = value;
         if (!value) {
             synchronized (this) {
-                if (!queue.isEmpty() && activeBridgeMode != null) {
+                if (queueSize != 0 && activeBridgeMode != null) {
                     activeBridgeMode.onNativeToJsMessageAvailable(this);
                 }
             }   
@@ -272,6 +567,8 @@ public class NativeToJsMessageQueue {
     public static abstract class BridgeMode {
         public abstract void onNativeToJsMessageAvailable(NativeToJsMessageQueue queue);
         public void notifyOfFlush(NativeToJsMessageQueue queue, boolean fromOnlineEvent) {}
+        /** Called with the queue locked after messageCount messages were popped. */
+        public void notifyOfMessagesSent(NativeToJsMessageQueue queue, int messageCount, boolean morePending) {}
         public void reset() {}
     }
 
@@ -309,6 +606,8 @@ public class NativeToJsMessageQueue {
         private final OnlineEventsBridgeModeDelegate delegate;
         private boolean online;
         private boolean ignoreNextFlush;
+        private final FrameFlushScheduler frameScheduler;
+        private volatile NativeToJsMessageQueue flushQueue;
 
         public interface OnlineEventsBridgeModeDelegate {
             void setNetworkAvailable(boolean value);
@@ -317,6 +616,11 @@ public class NativeToJsMessageQueue {
 
         public OnlineEventsBridgeMode(OnlineEventsBridgeModeDelegate delegate) {
             this.delegate = delegate;
+            frameScheduler = new FrameFlushScheduler(new Runnable() {
+                public void run() {
+                    flushOnUiThread(flushQueue);
+                }
+            });
         }
 
         @Override
@@ -331,17 +635,34 @@ public class NativeToJsMessageQueue {
             });
         }
 
+        /**
+         * Schedules a flush for the next display frame. Messages enqueued
+         * before it runs are merged into the same flush.
+         */
         @Override
         public void onNativeToJsMessageAvailable(final NativeToJsMessageQueue queue) {
+            flushQueue = queue;
+            frameScheduler.requestFlush();
+        }
+
+        /**
+         * Fires an online event right away, bypassing the frame scheduler.
+         */
+        protected void triggerFlush(final NativeToJsMessageQueue queue) {
             delegate.runOnUiThread(new Runnable() {
                 public void run() {
-                    if (!queue.isEmpty()) {
-                        ignoreNextFlush = false;
-                        delegate.setNetworkAvailable(online);
-                    }
+                    flushOnUiThread(queue);
                 }
             });
         }
+
+        private void flushOnUiThread(NativeToJsMessageQueue queue) {
+            if (queue != null && !queue.isEmpty()) {
+                ignoreNextFlush = false;
+                delegate.setNetworkAvailable(online);
+            }
+        }
+
         // Track when online/offline events are fired so that we don't fire excess events.
         @Override
         public void notifyOfFlush(final NativeToJsMessageQueue queue, boolean fromOnlineEvent) {
@@ -349,50 +670,236 @@ public class NativeToJsMessageQueue {
                 online = !online;
             }
         }
+
+        @Override
+        public void notifyOfMessagesSent(NativeToJsMessageQueue queue, int messageCount, boolean morePending) {
+            frameScheduler.recordMessages(messageCount);
+        }
+
+        /**
+         * Returns the frame scheduler counters, including flushesPerSecond
+         * and messagesPerFlush.
+         */
+        public JSONObject getFlushStatistics() {
+            return frameScheduler.getStatistics();
+        }
     }
 
-    private static class JsMessage {
-        final String jsPayloadOrCallbackId;
+    /**
+     * Online events bridge that adapts to load. While messages arrive slowly
+     * it flushes immediately, but never has more than one flush outstanding.
+     * Once flushes carry several messages on average, it switches to
+     * batching: flushes go through the frame scheduler of
+     * OnlineEventsBridgeMode, so that messages arriving within a display
+     * frame share one flush aligned to vsync.
+     */
+    public static class AdaptiveBridgeMode extends OnlineEventsBridgeMode {
+        // Average messages per flush above which batching starts, and below
+        // which it stops again.
+        private static final float BATCH_ENTER = 4f;
+        private static final float BATCH_EXIT = 1.5f;
+        private static final float EWMA_WEIGHT = 0.2f;
+        // A flush outstanding for longer than this is assumed lost (e.g. the
+        // online event was swallowed) and is triggered again.
+        private static final long STALE_FLUSH_NANOS = 1000 * 1000000L;
+
+        private boolean batching;
+        private boolean flushScheduled;
+        // When the oldest unflushed message was announced, or 0.
+        private long pendingSinceNanos;
+
+        private long flushes;
+        private long messages;
+        private long batchedFlushes;
+        private float avgMessagesPerFlush;
+        private float avgLatencyMs;
+        private float maxLatencyMs;
+        private int maxQueueDepth;
+
+        public AdaptiveBridgeMode(OnlineEventsBridgeModeDelegate delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            if (flushes > 0) {
+                Log.d(LOG_TAG, "Adaptive bridge statistics: " + getStatistics());
+            }
+            flushScheduled = false;
+            pendingSinceNanos = 0;
+        }
+
+        @Override
+        public synchronized void onNativeToJsMessageAvailable(final NativeToJsMessageQueue queue) {
+            long now = System.nanoTime();
+            maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+            if (pendingSinceNanos == 0) {
+                pendingSinceNanos = now;
+            }
+            if (flushScheduled && now - pendingSinceNanos < STALE_FLUSH_NANOS) {
+                return;
+            }
+            flushScheduled = true;
+            if (!batching) {
+                triggerFlush(queue);
+                return;
+            }
+            batchedFlushes++;
+            super.onNativeToJsMessageAvailable(queue);
+        }
+
+        @Override
+        public synchronized void notifyOfFlush(NativeToJsMessageQueue queue, boolean fromOnlineEvent) {
+            super.notifyOfFlush(queue, fromOnlineEvent);
+            if (pendingSinceNanos != 0) {
+                float latencyMs = (System.nanoTime() - pendingSinceNanos) / 1e6f;
+                avgLatencyMs = flushes == 0 ? latencyMs : avgLatencyMs + EWMA_WEIGHT * (latencyMs - avgLatencyMs);
+                maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+                pendingSinceNanos = 0;
+            }
+            flushScheduled = false;
+        }
+
+        @Override
+        public synchronized void notifyOfMessagesSent(NativeToJsMessageQueue queue, int messageCount, boolean morePending) {
+            super.notifyOfMessagesSent(queue, messageCount, morePending);
+            avgMessagesPerFlush = flushes == 0 ? messageCount
+                    : avgMessagesPerFlush + EWMA_WEIGHT * (messageCount - avgMessagesPerFlush);
+            flushes++;
+            messages += messageCount;
+            if (!batching && avgMessagesPerFlush >= BATCH_ENTER) {
+                batching = true;
+            } else if (batching && avgMessagesPerFlush < BATCH_EXIT) {
+                batching = false;
+            }
+            if (morePending) {
+                // JS polls again by itself for the remainder.
+                pendingSinceNanos = System.nanoTime();
+                flushScheduled = true;
+            }
+        }
+
+        /**
+         * Returns flush statistics since the bridge was created.
+         */
+        public synchronized JSONObject getStatistics() {
+            JSONObject stats = new JSONObject();
+            try {
+                stats.put("mode", batching ? "batched" : "immediate");
+                stats.put("flushes", flushes);
+                stats.put("batchedFlushes", batchedFlushes);
+                stats.put("messages", messages);
+                stats.put("maxQueueDepth", maxQueueDepth);
+                stats.put("avgMessagesPerFlush", (double) avgMessagesPerFlush);
+                stats.put("avgLatencyMs", (double) avgLatencyMs);
+                stats.put("maxLatencyMs", (double) maxLatencyMs);
+            } catch (JSONException e) {
+                // Values are always finite.
+            }
+            return stats;
+        }
+    }
+
+    static class JsMessage {
+        // Only change when a pooled result's message is reused.
+        String jsPayloadOrCallbackId;
         final PluginResult pluginResult;
+        // Computed once, outside the queue lock.
+        int encodedLength;
+        // encodedLength plus its "<length> " prefix.
+        int packedLength;
         JsMessage(String js) {
             if (js == null) {
                 throw new NullPointerException();
             }
             jsPayloadOrCallbackId = js;
             pluginResult = null;
+            encodedLength = calculateEncodedLength();
+            packedLength = decimalLength(encodedLength) + encodedLength + 1;
         }
         JsMessage(PluginResult pluginResult, String callbackId) {
             if (callbackId == null || pluginResult == null) {
                 throw new NullPointerException();
             }
-            jsPayloadOrCallbackId = callbackId;
             this.pluginResult = pluginResult;
+            reset(callbackId);
+        }
+
+        /**
+         * Returns the message for a result. A pooled result carries its own
+         * message, which is reused: the result is recycled only once its
+         * message has left the queue, and cannot be sent again before then.
+         */
+        static JsMessage obtain(PluginResult pluginResult, String callbackId) {
+            if (!pluginResult.isPooled()) {
+                return new JsMessage(pluginResult, callbackId);
+            }
+            JsMessage message = pluginResult.queuedMessage;
+            if (message == null) {
+                message = new JsMessage(pluginResult, callbackId);
+                pluginResult.queuedMessage = message;
+            } else {
+                message.reset(callbackId);
+            }
+            return message;
+        }
+
+        private void reset(String callbackId) {
+            jsPayloadOrCallbackId = callbackId;
+            encodedLength = calculateEncodedLength();
+            packedLength = decimalLength(encodedLength) + encodedLength + 1;
         }
         
+        static int decimalLength(int n) {
+            int len = n < 0 ? 2 : 1;
+            n = Math.abs(n);
+            while (n >= 10) {
+                n /= 10;
+                len++;
+            }
+            return len;
+        }
+
+        /**
+         * Returns the encoded length of a result, computing it only once.
+         * Ordinary results cannot be modified, and a pooled result cannot be
+         * modified between being sent and being recycled, which resets the
+         * cached value, so it stays valid while the result is queued.
+         */
+        static int encodedLength(PluginResult pluginResult) {
+            int len = pluginResult.encodedLength;
+            if (len < 0) {
+                len = calculateEncodedLengthHelper(pluginResult);
+                pluginResult.encodedLength = len;
+            }
+            return len;
+        }
+
         static int calculateEncodedLengthHelper(PluginResult pluginResult) {
             switch (pluginResult.getMessageType()) {
                 case PluginResult.MESSAGE_TYPE_BOOLEAN: // f or t
                 case PluginResult.MESSAGE_TYPE_NULL: // N
                     return 1;
                 case PluginResult.MESSAGE_TYPE_NUMBER: // n
-                    return 1 + pluginResult.getMessage().length();
+                    return 1 + pluginResult.getMessageLength();
                 case PluginResult.MESSAGE_TYPE_STRING: // s
                     return 1 + pluginResult.getStrMessage().length();
                 case PluginResult.MESSAGE_TYPE_BINARYSTRING:
-                    return 1 + pluginResult.getMessage().length();
+                    return 1 + pluginResult.getMessageLength();
                 case PluginResult.MESSAGE_TYPE_ARRAYBUFFER:
-                    return 1 + pluginResult.getMessage().length();
+                    return 1 + pluginResult.getMessageLength();
                 case PluginResult.MESSAGE_TYPE_MULTIPART:
                     int ret = 1;
                     for (int i = 0; i < pluginResult.getMultipartMessagesSize(); i++) {
-                        int length = calculateEncodedLengthHelper(pluginResult.getMultipartMessage(i));
-                        int argLength = String.valueOf(length).length();
+                        int length = encodedLength(pluginResult.getMultipartMessage(i));
+                        int argLength = decimalLength(length);
                         ret += argLength + 1 + length;
                     }
                     return ret;
                 case PluginResult.MESSAGE_TYPE_JSON:
                 default:
-                    return pluginResult.getMessage().length();
+                    return pluginResult.getMessageLength();
             }
         }
         
@@ -400,9 +907,9 @@ public class NativeToJsMessageQueue {
             if (pluginResult == null) {
                 return jsPayloadOrCallbackId.length() + 1;
             }
-            int statusLen = String.valueOf(pluginResult.getStatus()).length();
+            int statusLen = decimalLength(pluginResult.getStatus());
             int ret = 2 + statusLen + 1 + jsPayloadOrCallbackId.length() + 1;
-            return ret + calculateEncodedLengthHelper(pluginResult);
+            return ret + encodedLength(pluginResult);
             }
 
         static void encodeAsMessageHelper(StringBuilder sb, PluginResult pluginResult) {
@@ -414,8 +921,8 @@ public class NativeToJsMessageQueue {
                     sb.append('N');
                     break;
                 case PluginResult.MESSAGE_TYPE_NUMBER: // n
-                    sb.append('n')
-                      .append(pluginResult.getMessage());
+                    sb.append('n');
+                    pluginResult.appendMessage(sb);
                     break;
                 case PluginResult.MESSAGE_TYPE_STRING: // s
                     sb.append('s');
@@ -423,24 +930,24 @@ public class NativeToJsMessageQueue {
                     break;
                 case PluginResult.MESSAGE_TYPE_BINARYSTRING: // S
                     sb.append('S');
-                    sb.append(pluginResult.getMessage());
+                    pluginResult.appendMessage(sb);
                     break;                    
                 case PluginResult.MESSAGE_TYPE_ARRAYBUFFER: // A
                     sb.append('A');
-                    sb.append(pluginResult.getMessage());
+                    pluginResult.appendMessage(sb);
                     break;
                 case PluginResult.MESSAGE_TYPE_MULTIPART:
                     sb.append('M');
                     for (int i = 0; i < pluginResult.getMultipartMessagesSize(); i++) {
                         PluginResult multipartMessage = pluginResult.getMultipartMessage(i);
-                        sb.append(String.valueOf(calculateEncodedLengthHelper(multipartMessage)));
+                        sb.append(encodedLength(multipartMessage));
                         sb.append(' ');
                         encodeAsMessageHelper(sb, multipartMessage);
                     }
                     break;
                 case PluginResult.MESSAGE_TYPE_JSON:
                 default:
-                    sb.append(pluginResult.getMessage()); // [ or {
+                    pluginResult.appendMessage(sb); // [ or {
             }
         }
         
@@ -480,17 +987,17 @@ public class NativeToJsMessageQueue {
                   .append(",[");
                 switch (pluginResult.getMessageType()) {
                     case PluginResult.MESSAGE_TYPE_BINARYSTRING:
-                        sb.append("atob('")
-                          .append(pluginResult.getMessage())
-                          .append("')");
+                        sb.append("atob('");
+                        pluginResult.appendMessage(sb);
+                        sb.append("')");
                         break;
                     case PluginResult.MESSAGE_TYPE_ARRAYBUFFER:
-                        sb.append("cordova.require('cordova/base64').toArrayBuffer('")
-                          .append(pluginResult.getMessage())
-                          .append("')");
+                        sb.append("cordova.require('cordova/base64').toArrayBuffer('");
+                        pluginResult.appendMessage(sb);
+                        sb.append("')");
                         break;
                     default:
-                    sb.append(pluginResult.getMessage());
+                    pluginResult.appendMessage(sb);
                 }
                 sb.append("],")
                   .append(pluginResult.getKeepCallback())
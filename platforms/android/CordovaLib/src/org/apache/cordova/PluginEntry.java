@@ -18,6 +18,12 @@
  */
 package org.apache.cordova;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
 import org.apache.cordova.CordovaPlugin;
 
 /**
@@ -45,6 +51,74 @@ public final class PluginEntry {
      */
     public final boolean onload;
 
+    /**
+     * When the plugin object is created, set with the "start-mode" param.
+     * Plugins with onload set default to BLOCKING, others to LAZY.
+     */
+    public final StartMode startMode;
+
+    /**
+     * Services that must be started before this plugin, set with the
+     * comma-separated "depends-on" param.
+     */
+    public final List<String> dependencies;
+
+    /**
+     * Where exec() calls to the plugin run, set with the "exec-policy" param.
+     */
+    public final ExecPolicy execPolicy;
+
+    /**
+     * Per-action overrides of execPolicy, set with "exec-policy:<action>" params.
+     */
+    public final Map<String, ExecPolicy> actionExecPolicies;
+
+    public enum StartMode {
+        /** Created on first use. */
+        LAZY,
+        /**
+         * Created during startup on a background thread with its own Looper,
+         * in parallel with the UI thread. Such plugins are started one after
+         * another, so initialize() must not block, e.g. on the UI thread.
+         */
+        BACKGROUND,
+        /** Created during startup on the UI thread, before the first page loads. */
+        BLOCKING;
+
+        public static StartMode fromString(String value, StartMode defaultMode) {
+            if (value != null) {
+                try {
+                    return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+                } catch (IllegalArgumentException e) {
+                    LOG.w("PluginEntry", "Unknown start-mode: " + value);
+                }
+            }
+            return defaultMode;
+        }
+    }
+
+    public enum ExecPolicy {
+        /** On the JS bridge thread, as before; the plugin switches threads itself. */
+        BRIDGE,
+        /** On the UI thread. */
+        UI,
+        /** On a thread dedicated to the plugin, one call at a time, in order. */
+        SERIAL,
+        /** On the bounded thread pool shared by all plugins. */
+        POOL;
+
+        public static ExecPolicy fromString(String value) {
+            if (value != null) {
+                try {
+                    return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+                } catch (IllegalArgumentException e) {
+                    LOG.w("PluginEntry", "Unknown exec-policy: " + value);
+                }
+            }
+            return BRIDGE;
+        }
+    }
+
     /**
      * Constructs with a CordovaPlugin already instantiated.
      */
@@ -61,10 +135,51 @@ public final class PluginEntry {
         this(service, pluginClass, onload, null);
     }
 
+    /**
+     * @param service               The name of the service
+     * @param pluginClass           The plugin class name
+     * @param startMode             When to create the plugin object
+     * @param dependencies          Services to start before this one, or null
+     * @param execPolicy            Where exec() calls run
+     * @param actionExecPolicies    Per-action overrides of execPolicy, or null
+     */
+    public PluginEntry(String service, String pluginClass, StartMode startMode, String[] dependencies, ExecPolicy execPolicy, Map<String, ExecPolicy> actionExecPolicies) {
+        this(service, pluginClass, startMode, dependencies, null, execPolicy, actionExecPolicies);
+    }
+
     private PluginEntry(String service, String pluginClass, boolean onload, CordovaPlugin plugin) {
+        this(service, pluginClass, onload ? StartMode.BLOCKING : StartMode.LAZY, null, plugin, ExecPolicy.BRIDGE, null);
+    }
+
+    private PluginEntry(String service, String pluginClass, StartMode startMode, String[] dependencies, CordovaPlugin plugin, ExecPolicy execPolicy, Map<String, ExecPolicy> actionExecPolicies) {
         this.service = service;
         this.pluginClass = pluginClass;
-        this.onload = onload;
+        this.startMode = startMode;
+        this.onload = startMode != StartMode.LAZY;
+        this.dependencies = dependencies == null ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(nonEmpty(dependencies));
         this.plugin = plugin;
+        this.execPolicy = execPolicy;
+        this.actionExecPolicies = actionExecPolicies == null ? Collections.<String, ExecPolicy>emptyMap()
+                : Collections.unmodifiableMap(actionExecPolicies);
+    }
+
+    // An empty depends-on value splits into [""], which names no service.
+    private static List<String> nonEmpty(String[] names) {
+        List<String> ret = new ArrayList<String>(names.length);
+        for (String name : names) {
+            if (name != null && name.length() > 0) {
+                ret.add(name);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns where exec() calls for the given action run.
+     */
+    public ExecPolicy getExecPolicy(String action) {
+        ExecPolicy policy = actionExecPolicies.get(action);
+        return policy != null ? policy : execPolicy;
     }
 }
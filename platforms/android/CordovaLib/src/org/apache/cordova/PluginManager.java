@@ -18,8 +18,16 @@
  */
 package org.apache.cordova;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.json.JSONException;
 
@@ -28,6 +36,8 @@ import android.content.res.Configuration;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.Log;
 
 /**
@@ -40,8 +50,10 @@ public class PluginManager {
     private static String TAG = "PluginManager";
     private static final int SLOW_EXEC_WARNING_THRESHOLD = Debug.isDebuggerConnected() ? 60 : 16;
 
-    // List of service entries
-    private final LinkedHashMap<String, CordovaPlugin> pluginMap = new LinkedHashMap<String, CordovaPlugin>();
+    // List of service entries. Plugins are added by background startup as
+    // well as by the UI and bridge threads, so the map is concurrent. It has
+    // no order; plugins are notified in the order of entryMap.
+    private final ConcurrentHashMap<String, CordovaPlugin> pluginMap = new ConcurrentHashMap<String, CordovaPlugin>();
     private final LinkedHashMap<String, PluginEntry> entryMap = new LinkedHashMap<String, PluginEntry>();
 
     private final CordovaInterface ctx;
@@ -50,9 +62,46 @@ public class PluginManager {
 
     private CordovaPlugin permissionRequester;
 
+    private final ExecProfiler profiler = new ExecProfiler();
+
+    // Decisions depend on which plugins exist, so both are invalidated
+    // whenever a plugin is added, started or cleared.
+    private static final int URL_POLICY_CACHE_SIZE = 1024;
+    private final UrlPolicyCache allowRequestCache = new UrlPolicyCache(URL_POLICY_CACHE_SIZE);
+    private final UrlPolicyCache allowNavigationCache = new UrlPolicyCache(URL_POLICY_CACHE_SIZE);
+
+    // Written by "cordova prepare"; its static initializer registers a
+    // factory for each plugin class it was generated for.
+    private static final String GENERATED_FACTORIES_CLASS = "org.apache.cordova.GeneratedPluginFactories";
+    private static final HashMap<String, PluginFactory> pluginFactories = new HashMap<String, PluginFactory>();
+    private static boolean pluginFactoriesLoaded;
+
+    // Incremented whenever the plugins are cleared.
+    private volatile int startupGeneration;
+    private volatile long startupBeginNanos;
+    private volatile long blockingStartupNanos;
+    private final ArrayList<StartupRecord> startupTimeline = new ArrayList<StartupRecord>();
+    private Set<String> cyclicServices;
+    // The thread starting each plugin that is being started. Guarded by
+    // itself, and notified when a start finishes.
+    private final HashMap<String, Thread> startingPlugins = new HashMap<String, Thread>();
+    // Runs the starts of background plugins. It has a Looper, so that their
+    // initialize() can create a Handler, and keeps it running until
+    // onDestroy(). Only used on the UI thread.
+    private HandlerThread startupThread;
+
+    // Executors for plugins with an exec-policy of pool or serial, created on
+    // first use and shut down with the plugins in onDestroy().
+    private static final int DEFAULT_EXECUTOR_QUEUE_SIZE = 128;
+    private InstrumentedThreadPool sharedExecutor;
+    private final HashMap<String, InstrumentedThreadPool> serialExecutors = new HashMap<String, InstrumentedThreadPool>();
+
     public PluginManager(CordovaWebView cordovaWebView, CordovaInterface cordova, Collection<PluginEntry> pluginEntries) {
         this.ctx = cordova;
         this.app = cordovaWebView;
+        if (cordovaWebView.getPreferences() != null) {
+            profiler.setEnabled(cordovaWebView.getPreferences().getBoolean("ExecProfiling", false));
+        }
         setPluginEntries(pluginEntries);
     }
 
@@ -64,7 +113,7 @@ public class PluginManager {
         if (isInitialized) {
             this.onPause(false);
             this.onDestroy();
-            pluginMap.clear();
+            clearPlugins();
             entryMap.clear();
         }
         for (PluginEntry entry : pluginEntries) {
@@ -83,23 +132,64 @@ public class PluginManager {
         isInitialized = true;
         this.onPause(false);
         this.onDestroy();
-        pluginMap.clear();
+        clearPlugins();
         this.startupPlugins();
     }
 
+    private void clearPlugins() {
+        synchronized (pluginMap) {
+            // Plugins still being started in the background for the old
+            // generation are not added to the map.
+            startupGeneration++;
+            pluginMap.clear();
+        }
+        invalidateUrlPolicyCache();
+    }
+
+    /**
+     * Forgets the cached results of shouldAllowRequest() and
+     * shouldAllowNavigation(). Plugins whose URL policy changes at runtime
+     * must call this.
+     */
+    public void invalidateUrlPolicyCache() {
+        allowRequestCache.invalidate();
+        allowNavigationCache.invalidate();
+    }
+
     /**
-     * Create plugins objects that have onload set.
+     * Creates the plugin objects of the background and blocking plugins.
+     * Background plugins are started on startupThread, in parallel with the
+     * blocking ones, which are started on this thread. Either way a
+     * plugin's dependencies are started before it.
      */
     private void startupPlugins() {
+        startupBeginNanos = System.nanoTime();
+        synchronized (startupTimeline) {
+            startupTimeline.clear();
+        }
+        cyclicServices = null;
+        final int generation = startupGeneration;
+        for (final PluginEntry entry : entryMap.values()) {
+            if (entry.startMode == PluginEntry.StartMode.BACKGROUND) {
+                if (startupThread == null) {
+                    startupThread = new HandlerThread("CordovaPluginStartup");
+                    startupThread.start();
+                }
+                new Handler(startupThread.getLooper()).post(new Runnable() {
+                    public void run() {
+                        if (generation == startupGeneration) {
+                            getPlugin(entry.service);
+                        }
+                    }
+                });
+            }
+        }
         for (PluginEntry entry : entryMap.values()) {
-            // Add a null entry to for each non-startup plugin to avoid ConcurrentModificationException
-            // When iterating plugins.
-            if (entry.onload) {
+            if (entry.startMode == PluginEntry.StartMode.BLOCKING) {
                 getPlugin(entry.service);
-            } else {
-                pluginMap.put(entry.service, null);
             }
         }
+        blockingStartupNanos = System.nanoTime() - startupBeginNanos;
     }
 
     /**
@@ -120,25 +210,91 @@ public class PluginManager {
      *                      plugin execute method.
      */
     public void exec(final String service, final String action, final String callbackId, final String rawArgs) {
-        CordovaPlugin plugin = getPlugin(service);
+        final long submitTime = System.nanoTime();
+        final ExecProfiler.Stats stats = profiler.isEnabled() ? profiler.statsFor(service, action) : null;
+        final CordovaPlugin plugin = getPlugin(service);
         if (plugin == null) {
             Log.d(TAG, "exec() call to unknown plugin: " + service);
             PluginResult cr = new PluginResult(PluginResult.Status.CLASS_NOT_FOUND_EXCEPTION);
             app.sendPluginResult(cr, callbackId);
+            if (stats != null) {
+                profiler.recordExec(stats, submitTime, System.nanoTime(), true);
+            }
+            return;
+        }
+        final CallbackContext callbackContext = new CallbackContext(callbackId, app);
+        if (stats != null) {
+            callbackContext.setProfiler(profiler, stats, submitTime);
+        }
+        PluginEntry entry = entryMap.get(service);
+        final PluginEntry.ExecPolicy policy = entry == null ? PluginEntry.ExecPolicy.BRIDGE : entry.getExecPolicy(action);
+        if (policy == PluginEntry.ExecPolicy.BRIDGE) {
+            execPlugin(plugin, service, action, rawArgs, callbackContext, stats, true);
+            return;
+        }
+        Runnable task = new ExecTask(plugin, service, action, rawArgs, callbackContext, stats, policy == PluginEntry.ExecPolicy.UI);
+        if (policy == PluginEntry.ExecPolicy.UI) {
+            ctx.getActivity().runOnUiThread(task);
             return;
         }
-        CallbackContext callbackContext = new CallbackContext(callbackId, app);
         try {
-            long pluginStartTime = System.currentTimeMillis();
+            (policy == PluginEntry.ExecPolicy.SERIAL ? getSerialExecutor(service) : getSharedExecutor()).execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "exec() call to " + service + "." + action + " rejected: " + e.getMessage());
+            callbackContext.error(e.getMessage());
+            if (stats != null) {
+                profiler.recordExec(stats, submitTime, System.nanoTime(), true);
+            }
+        }
+    }
+
+    // An exec() call routed off the bridge thread. Calls still queued when
+    // the plugins are destroyed are failed instead of run.
+    private class ExecTask implements Runnable {
+        final CordovaPlugin plugin;
+        final String service;
+        final String action;
+        final String rawArgs;
+        final CallbackContext callbackContext;
+        final ExecProfiler.Stats stats;
+        final boolean warnIfSlow;
+
+        ExecTask(CordovaPlugin plugin, String service, String action, String rawArgs,
+                CallbackContext callbackContext, ExecProfiler.Stats stats, boolean warnIfSlow) {
+            this.plugin = plugin;
+            this.service = service;
+            this.action = action;
+            this.rawArgs = rawArgs;
+            this.callbackContext = callbackContext;
+            this.stats = stats;
+            this.warnIfSlow = warnIfSlow;
+        }
+
+        public void run() {
+            execPlugin(plugin, service, action, rawArgs, callbackContext, stats, warnIfSlow);
+        }
+    }
+
+    /**
+     * Runs execute() on the current thread. warnIfSlow is set when the current
+     * thread is one that must not be blocked.
+     */
+    private void execPlugin(CordovaPlugin plugin, String service, String action, String rawArgs,
+            CallbackContext callbackContext, ExecProfiler.Stats stats, boolean warnIfSlow) {
+        long pluginStartTime = System.nanoTime();
+        boolean failed = true;
+        try {
             boolean wasValidAction = plugin.execute(action, rawArgs, callbackContext);
-            long duration = System.currentTimeMillis() - pluginStartTime;
+            long duration = (System.nanoTime() - pluginStartTime) / 1000000;
 
-            if (duration > SLOW_EXEC_WARNING_THRESHOLD) {
+            if (warnIfSlow && duration > SLOW_EXEC_WARNING_THRESHOLD) {
                 Log.w(TAG, "THREAD WARNING: exec() call to " + service + "." + action + " blocked the main thread for " + duration + "ms. Plugin should use CordovaInterface.getThreadPool().");
             }
             if (!wasValidAction) {
                 PluginResult cr = new PluginResult(PluginResult.Status.INVALID_ACTION);
                 callbackContext.sendPluginResult(cr);
+            } else {
+                failed = false;
             }
         } catch (JSONException e) {
             PluginResult cr = new PluginResult(PluginResult.Status.JSON_EXCEPTION);
@@ -146,9 +302,61 @@ public class PluginManager {
         } catch (Exception e) {
             Log.e(TAG, "Uncaught exception from plugin", e);
             callbackContext.error(e.getMessage());
+        } finally {
+            if (stats != null) {
+                profiler.recordExec(stats, pluginStartTime, System.nanoTime(), failed);
+            }
         }
     }
 
+    private synchronized InstrumentedThreadPool getSharedExecutor() {
+        if (sharedExecutor == null) {
+            CordovaPreferences prefs = app.getPreferences();
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            int queueSize = DEFAULT_EXECUTOR_QUEUE_SIZE;
+            if (prefs != null) {
+                threads = Math.max(1, prefs.getInteger("PluginPoolSize", threads));
+                queueSize = Math.max(1, prefs.getInteger("PluginPoolQueueSize", queueSize));
+            }
+            sharedExecutor = new InstrumentedThreadPool("CordovaPluginPool", threads, queueSize);
+        }
+        return sharedExecutor;
+    }
+
+    private synchronized InstrumentedThreadPool getSerialExecutor(String service) {
+        InstrumentedThreadPool executor = serialExecutors.get(service);
+        if (executor == null) {
+            executor = new InstrumentedThreadPool("Cordova-" + service, 1, DEFAULT_EXECUTOR_QUEUE_SIZE);
+            serialExecutors.put(service, executor);
+        }
+        return executor;
+    }
+
+    /**
+     * Writes the counters of cordova.getThreadPool() and of the executors
+     * used by exec-policy routing as a JSON array.
+     */
+    public synchronized void writeExecutorStatistics(JsonWriter w) {
+        w.beginArray();
+        if (ctx != null && ctx.getThreadPool() instanceof InstrumentedThreadPool) {
+            ((InstrumentedThreadPool) ctx.getThreadPool()).writeStatistics(w);
+        }
+        if (sharedExecutor != null) {
+            sharedExecutor.writeStatistics(w);
+        }
+        for (InstrumentedThreadPool executor : serialExecutors.values()) {
+            executor.writeStatistics(w);
+        }
+        w.endArray();
+    }
+
+    /**
+     * Returns the profiler that measures exec() calls.
+     */
+    public ExecProfiler getExecProfiler() {
+        return profiler;
+    }
+
     /**
      * Get the plugin object that implements the service.
      * If the plugin object does not already exist, then create it.
@@ -158,23 +366,182 @@ public class PluginManager {
      * @return              CordovaPlugin or null
      */
     public CordovaPlugin getPlugin(String service) {
+        if (service == null) {
+            return null;
+        }
         CordovaPlugin ret = pluginMap.get(service);
-        if (ret == null) {
-            PluginEntry pe = entryMap.get(service);
-            if (pe == null) {
-                return null;
+        if (ret != null) {
+            return ret;
+        }
+        PluginEntry pe = entryMap.get(service);
+        if (pe == null) {
+            return null;
+        }
+        // The plugin may be being started on another thread; wait for it
+        // rather than start a second instance. No lock is held while the
+        // plugin's own code runs.
+        synchronized (startingPlugins) {
+            while (true) {
+                ret = pluginMap.get(service);
+                if (ret != null) {
+                    return ret;
+                }
+                Thread starter = startingPlugins.get(service);
+                if (starter == null) {
+                    break;
+                }
+                if (starter == Thread.currentThread()) {
+                    LOG.w(TAG, service + " was requested by its own initialization");
+                    return null;
+                }
+                try {
+                    startingPlugins.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
             }
-            if (pe.plugin != null) {
-                ret = pe.plugin;
-            } else {
-                ret = instantiatePlugin(pe.pluginClass);
+            startingPlugins.put(service, Thread.currentThread());
+        }
+        try {
+            return startPlugin(pe);
+        } finally {
+            synchronized (startingPlugins) {
+                startingPlugins.remove(service);
+                startingPlugins.notifyAll();
             }
-            ret.privateInitialize(service, ctx, app, app.getPreferences());
-            pluginMap.put(service, ret);
         }
+    }
+
+    // Called with pe marked as being started by this thread.
+    private CordovaPlugin startPlugin(PluginEntry pe) {
+        int generation = startupGeneration;
+        long begin = System.nanoTime();
+        if (!pe.dependencies.isEmpty() && !getCyclicServices().contains(pe.service)) {
+            for (String dependency : pe.dependencies) {
+                if (getPlugin(dependency) == null) {
+                    LOG.w(TAG, pe.service + " depends on unknown plugin " + dependency);
+                }
+            }
+        }
+        long instantiateBegin = System.nanoTime();
+        CordovaPlugin ret;
+        if (pe.plugin != null) {
+            ret = pe.plugin;
+        } else {
+            ret = instantiatePlugin(pe.pluginClass);
+        }
+        long initializeBegin = System.nanoTime();
+        ret.privateInitialize(pe.service, ctx, app, app.getPreferences());
+        long end = System.nanoTime();
+        synchronized (pluginMap) {
+            if (generation == startupGeneration) {
+                pluginMap.put(pe.service, ret);
+            }
+        }
+        invalidateUrlPolicyCache();
+        StartupRecord record = new StartupRecord(pe.service, pe.startMode, Thread.currentThread().getName(),
+                begin - startupBeginNanos, instantiateBegin - begin, initializeBegin - instantiateBegin, end - initializeBegin);
+        synchronized (startupTimeline) {
+            startupTimeline.add(record);
+        }
+        LOG.d(TAG, "Started " + pe.service + " (" + pe.startMode + ") in " + (end - begin) / 1000000 + "ms on " + record.thread);
         return ret;
     }
 
+    // Services whose dependencies are ignored because they form a cycle.
+    private synchronized Set<String> getCyclicServices() {
+        if (cyclicServices == null) {
+            HashSet<String> cyclic = new HashSet<String>();
+            HashSet<String> done = new HashSet<String>();
+            for (String service : entryMap.keySet()) {
+                findCycles(service, new HashSet<String>(), done, cyclic);
+            }
+            for (String service : cyclic) {
+                LOG.e(TAG, "Plugin dependency cycle through " + service + "; ignoring its dependencies");
+            }
+            cyclicServices = cyclic;
+        }
+        return cyclicServices;
+    }
+
+    private void findCycles(String service, HashSet<String> path, HashSet<String> done, HashSet<String> cyclic) {
+        PluginEntry entry = entryMap.get(service);
+        if (entry == null || done.contains(service)) {
+            return;
+        }
+        path.add(service);
+        for (String dependency : entry.dependencies) {
+            if (path.contains(dependency)) {
+                cyclic.add(service);
+            } else {
+                findCycles(dependency, path, done, cyclic);
+            }
+        }
+        path.remove(service);
+        done.add(service);
+    }
+
+    /**
+     * Writes the size and hit counts of the URL policy caches as a JSON object.
+     */
+    public void writeUrlPolicyStatistics(JsonWriter w) {
+        w.beginObject().name("allowRequest");
+        allowRequestCache.writeStatistics(w);
+        w.name("allowNavigation");
+        allowNavigationCache.writeStatistics(w);
+        w.endObject();
+    }
+
+    /**
+     * Writes when and how long each plugin took to start since the last
+     * page load, as a JSON object. Times are in milliseconds; "blockingMs" is
+     * the time the blocking plugins held up the UI thread.
+     */
+    public void writeStartupTimeline(JsonWriter w) {
+        ArrayList<StartupRecord> records;
+        synchronized (startupTimeline) {
+            records = new ArrayList<StartupRecord>(startupTimeline);
+        }
+        w.beginObject()
+            .name("blockingMs").value(blockingStartupNanos / 1e6)
+            .name("plugins").beginArray();
+        for (StartupRecord r : records) {
+            w.beginObject()
+                .name("service").value(r.service)
+                .name("startMode").value(r.startMode.name().toLowerCase(Locale.ENGLISH))
+                .name("thread").value(r.thread)
+                .name("startMs").value(r.startNanos / 1e6)
+                .name("dependenciesMs").value(r.dependenciesNanos / 1e6)
+                .name("instantiateMs").value(r.instantiateNanos / 1e6)
+                .name("initializeMs").value(r.initializeNanos / 1e6)
+                .endObject();
+        }
+        w.endArray().endObject();
+    }
+
+    private static class StartupRecord {
+        final String service;
+        final PluginEntry.StartMode startMode;
+        final String thread;
+        // Relative to the start of startupPlugins().
+        final long startNanos;
+        final long dependenciesNanos;
+        final long instantiateNanos;
+        final long initializeNanos;
+
+        StartupRecord(String service, PluginEntry.StartMode startMode, String thread, long startNanos,
+                long dependenciesNanos, long instantiateNanos, long initializeNanos) {
+            this.service = service;
+            this.startMode = startMode;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.dependenciesNanos = dependenciesNanos;
+            this.instantiateNanos = instantiateNanos;
+            this.initializeNanos = initializeNanos;
+        }
+    }
+
     /**
      * Add a plugin class that implements a service to the service entry table.
      * This does not create the plugin object instance.
@@ -195,10 +562,12 @@ public class PluginManager {
      */
     public void addService(PluginEntry entry) {
         this.entryMap.put(entry.service, entry);
+        cyclicServices = null;
         if (entry.plugin != null) {
             entry.plugin.privateInitialize(entry.service, ctx, app, app.getPreferences());
             pluginMap.put(entry.service, entry.plugin);
         }
+        invalidateUrlPolicyCache();
     }
 
     /**
@@ -207,7 +576,8 @@ public class PluginManager {
      * @param multitasking      Flag indicating if multitasking is turned on for app
      */
     public void onPause(boolean multitasking) {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
                 plugin.onPause(multitasking);
             }
@@ -227,7 +597,8 @@ public class PluginManager {
      * 
      */
     public boolean onReceivedHttpAuthRequest(CordovaWebView view, ICordovaHttpAuthHandler handler, String host, String realm) {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null && plugin.onReceivedHttpAuthRequest(app, handler, host, realm)) {
                 return true;
             }
@@ -246,7 +617,8 @@ public class PluginManager {
      *
      */
     public boolean onReceivedClientCertRequest(CordovaWebView view, ICordovaClientCertRequest request) {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null && plugin.onReceivedClientCertRequest(app, request)) {
                 return true;
             }
@@ -260,7 +632,8 @@ public class PluginManager {
      * @param multitasking      Flag indicating if multitasking is turned on for app
      */
     public void onResume(boolean multitasking) {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
                 plugin.onResume(multitasking);
             }
@@ -271,7 +644,8 @@ public class PluginManager {
      * Called when the activity is becoming visible to the user.
      */
     public void onStart() {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
                 plugin.onStart();
             }
@@ -282,7 +656,8 @@ public class PluginManager {
      * Called when the activity is no longer visible to the user.
      */
     public void onStop() {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
                 plugin.onStop();
             }
@@ -293,11 +668,42 @@ public class PluginManager {
      * The final call you receive before your activity is destroyed.
      */
     public void onDestroy() {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        // Stops calls that have not started before the plugins go away.
+        shutdownExecutors();
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
                 plugin.onDestroy();
             }
         }
+        if (startupThread != null) {
+            startupThread.quit();
+            startupThread = null;
+        }
+    }
+
+    // Stops the exec-policy executors and interrupts the calls they are
+    // running. Calls that had not started get an error. The executors are
+    // created again on demand if the plugins are restarted.
+    private void shutdownExecutors() {
+        List<Runnable> drained = new ArrayList<Runnable>();
+        synchronized (this) {
+            if (sharedExecutor != null) {
+                drained.addAll(sharedExecutor.shutdownNow());
+                sharedExecutor = null;
+            }
+            for (InstrumentedThreadPool executor : serialExecutors.values()) {
+                drained.addAll(executor.shutdownNow());
+            }
+            serialExecutors.clear();
+        }
+        for (Runnable task : drained) {
+            if (task instanceof ExecTask) {
+                ExecTask call = (ExecTask) task;
+                Log.w(TAG, "exec() call to " + call.service + "." + call.action + " dropped: plugins were destroyed");
+                call.callbackContext.error("Plugins were destroyed before the call ran");
+            }
+        }
     }
 
     /**
@@ -308,7 +714,8 @@ public class PluginManager {
      * @return                  Object to stop propagation or null
      */
     public Object postMessage(String id, Object data) {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
                 Object obj = plugin.onMessage(id, data);
                 if (obj != null) {
@@ -323,7 +730,8 @@ public class PluginManager {
      * Called when the activity receives a new intent.
      */
     public void onNewIntent(Intent intent) {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
                 plugin.onNewIntent(intent);
             }
@@ -342,6 +750,20 @@ public class PluginManager {
      *                  false to block the resource.
      */
     public boolean shouldAllowRequest(String url) {
+        if (!UrlPolicyCache.isCacheable(url)) {
+            return computeAllowRequest(url);
+        }
+        Boolean cached = allowRequestCache.get(url);
+        if (cached != null) {
+            return cached;
+        }
+        int generation = allowRequestCache.generation();
+        boolean ret = computeAllowRequest(url);
+        allowRequestCache.put(url, ret, generation);
+        return ret;
+    }
+
+    private boolean computeAllowRequest(String url) {
         for (PluginEntry entry : this.entryMap.values()) {
             CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
@@ -380,6 +802,20 @@ public class PluginManager {
      *                  false to block the navigation.
      */
     public boolean shouldAllowNavigation(String url) {
+        if (!UrlPolicyCache.isCacheable(url)) {
+            return computeAllowNavigation(url);
+        }
+        Boolean cached = allowNavigationCache.get(url);
+        if (cached != null) {
+            return cached;
+        }
+        int generation = allowNavigationCache.generation();
+        boolean ret = computeAllowNavigation(url);
+        allowNavigationCache.put(url, ret, generation);
+        return ret;
+    }
+
+    private boolean computeAllowNavigation(String url) {
         for (PluginEntry entry : this.entryMap.values()) {
             CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
@@ -460,7 +896,8 @@ public class PluginManager {
      * Called when the app navigates or refreshes.
      */
     public void onReset() {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
                 plugin.onReset();
             }
@@ -468,7 +905,8 @@ public class PluginManager {
     }
 
     Uri remapUri(Uri uri) {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
                 Uri ret = plugin.remapUri(uri);
                 if (ret != null) {
@@ -483,6 +921,10 @@ public class PluginManager {
      * Create a plugin based on class name.
      */
     private CordovaPlugin instantiatePlugin(String className) {
+        PluginFactory factory = getPluginFactory(className);
+        if (factory != null) {
+            return factory.newInstance();
+        }
         CordovaPlugin ret = null;
         try {
             Class<?> c = null;
@@ -499,13 +941,34 @@ public class PluginManager {
         return ret;
     }
 
+    /**
+     * Registers a factory that creates the plugins of the given class, which
+     * is then used instead of reflection.
+     */
+    public static synchronized void registerPluginFactory(String className, PluginFactory factory) {
+        pluginFactories.put(className, factory);
+    }
+
+    private static synchronized PluginFactory getPluginFactory(String className) {
+        if (!pluginFactoriesLoaded) {
+            pluginFactoriesLoaded = true;
+            try {
+                Class.forName(GENERATED_FACTORIES_CLASS);
+            } catch (ClassNotFoundException e) {
+                LOG.d(TAG, "No generated plugin factories; plugins are created through reflection");
+            }
+        }
+        return pluginFactories.get(className);
+    }
+
     /**
      * Called by the system when the device configuration changes while your activity is running.
      *
      * @param newConfig		The new device configuration
      */
     public void onConfigurationChanged(Configuration newConfig) {
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
                 plugin.onConfigurationChanged(newConfig);
             }
@@ -514,7 +977,8 @@ public class PluginManager {
 
     public Bundle onSaveInstanceState() {
         Bundle state = new Bundle();
-        for (CordovaPlugin plugin : this.pluginMap.values()) {
+        for (PluginEntry entry : this.entryMap.values()) {
+            CordovaPlugin plugin = pluginMap.get(entry.service);
             if (plugin != null) {
                 Bundle pluginState = plugin.onSaveInstanceState();
                 if(pluginState != null) {
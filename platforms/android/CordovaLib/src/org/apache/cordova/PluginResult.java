@@ -26,12 +26,33 @@ import org.json.JSONObject;
 import android.util.Base64;
 
 public class PluginResult {
-    private final int status;
-    private final int messageType;
+    private int status;
+    private int messageType;
     private boolean keepCallback = false;
+    private boolean latestValueOnly = false;
+    private String latestValueKey;
     private String strMessage;
     private String encodedMessage;
+    // Pre-encoded JSON, appended to bridge messages without conversion to
+    // a String.
+    private CharSequence jsonMessage;
+    // Binary payload, Base64-encoded only when the message is sent.
+    private byte[] binaryMessage;
     private List<PluginResult> multipartMessages;
+    // Length of this result in the bridge's message format, cached by
+    // NativeToJsMessageQueue. -1 until computed.
+    int encodedLength = -1;
+    // Set for results obtained from CallbackContext.obtainResult(), which are
+    // handed back to that context once the bridge is done with them. Only
+    // these results can be modified.
+    private CallbackContext pool;
+    private boolean recycled;
+    private boolean sent;
+    private JsonWriter pooledWriter;
+    // The bridge message of a pooled result, reused each time the result is
+    // queued so that sending it allocates nothing. Owned by
+    // NativeToJsMessageQueue.
+    NativeToJsMessageQueue.JsMessage queuedMessage;
 
     public PluginResult(Status status) {
         this(status, PluginResult.StatusMessages[status.ordinal()]);
@@ -55,6 +76,39 @@ public class PluginResult {
         encodedMessage = message.toString();
     }
 
+    /**
+     * Creates a JSON result from the output of a {@link JsonWriter}. The
+     * writer's characters are copied straight into the bridge message, with
+     * no intermediate JSONObject or String. The writer must not be modified
+     * afterwards.
+     */
+    public PluginResult(Status status, JsonWriter message) {
+        this(status, (CharSequence) message, MESSAGE_TYPE_JSON);
+    }
+
+    /**
+     * Creates a JSON result from text that is already encoded as JSON, e.g.
+     * a cached or streamed document. The text is not validated and must
+     * not be modified afterwards.
+     */
+    public static PluginResult fromEncodedJson(Status status, CharSequence json) {
+        return new PluginResult(status, json, MESSAGE_TYPE_JSON);
+    }
+
+    private PluginResult(Status status, CharSequence json, int messageType) {
+        this.status = status.ordinal();
+        this.messageType = messageType;
+        this.jsonMessage = json;
+    }
+
+    // Creates an empty pooled result. See CallbackContext.obtainResult().
+    PluginResult(CallbackContext pool) {
+        this.status = Status.NO_RESULT.ordinal();
+        this.messageType = MESSAGE_TYPE_NULL;
+        this.pool = pool;
+        this.recycled = true;
+    }
+
     public PluginResult(Status status, int i) {
         this.status = status.ordinal();
         this.messageType = MESSAGE_TYPE_NUMBER;
@@ -80,7 +134,10 @@ public class PluginResult {
     public PluginResult(Status status, byte[] data, boolean binaryString) {
         this.status = status.ordinal();
         this.messageType = binaryString ? MESSAGE_TYPE_BINARYSTRING : MESSAGE_TYPE_ARRAYBUFFER;
-        this.encodedMessage = Base64.encodeToString(data, Base64.NO_WRAP);
+        // Encoded lazily, straight into the bridge message, so that results
+        // that are dropped cost nothing. The array must not be modified
+        // after it is passed in.
+        this.binaryMessage = data;
     }
     
     // The keepCallback and status of multipartMessages are ignored.
@@ -90,10 +147,131 @@ public class PluginResult {
         this.multipartMessages = multipartMessages;
     }
 
+    /**
+     * Sets the message of a pooled result to a string.
+     */
+    public PluginResult setMessage(String message) {
+        checkPooled();
+        clearMessage();
+        messageType = message == null ? MESSAGE_TYPE_NULL : MESSAGE_TYPE_STRING;
+        strMessage = message;
+        return this;
+    }
+
+    /**
+     * Sets the message of a pooled result to binary data, sent as an
+     * ArrayBuffer. The array must not be modified afterwards.
+     */
+    public PluginResult setMessage(byte[] data) {
+        return setMessage(data, false);
+    }
+
+    public PluginResult setMessage(byte[] data, boolean binaryString) {
+        checkPooled();
+        clearMessage();
+        messageType = binaryString ? MESSAGE_TYPE_BINARYSTRING : MESSAGE_TYPE_ARRAYBUFFER;
+        binaryMessage = data;
+        return this;
+    }
+
+    /**
+     * Makes a pooled result a JSON result and returns an empty writer for its
+     * message. The writer belongs to the result and is reused with it.
+     */
+    public JsonWriter jsonWriter() {
+        checkPooled();
+        clearMessage();
+        if (pooledWriter == null) {
+            pooledWriter = new JsonWriter();
+        }
+        messageType = MESSAGE_TYPE_JSON;
+        jsonMessage = pooledWriter.reset();
+        return pooledWriter;
+    }
+
+    private void checkPooled() {
+        if (pool == null) {
+            throw new IllegalStateException("Only results from CallbackContext.obtainResult() can be modified");
+        }
+        if (recycled || sent) {
+            throw new IllegalStateException("Result was used after it was sent");
+        }
+    }
+
+    private void clearMessage() {
+        strMessage = null;
+        encodedMessage = null;
+        jsonMessage = null;
+        binaryMessage = null;
+        multipartMessages = null;
+        encodedLength = -1;
+    }
+
+    // Called by CallbackContext when handing out a pooled result.
+    void prepareForReuse(Status status) {
+        this.status = status.ordinal();
+        this.messageType = MESSAGE_TYPE_NULL;
+        this.keepCallback = true;
+        this.latestValueOnly = false;
+        this.latestValueKey = null;
+        this.recycled = false;
+        this.sent = false;
+        clearMessage();
+    }
+
+    // Called by CallbackContext when a result is sent. A pooled result can
+    // no longer be modified from then on.
+    boolean isPooled() {
+        return pool != null;
+    }
+
+    void markSent() {
+        if (pool != null) {
+            sent = true;
+        }
+    }
+
+    /**
+     * Returns a pooled result to its CallbackContext. Called by the bridge
+     * once the result has been encoded or dropped; does nothing for
+     * ordinary results.
+     */
+    void recycle() {
+        if (pool == null || recycled) {
+            return;
+        }
+        recycled = true;
+        clearMessage();
+        pool.releaseResult(this);
+    }
+
     public void setKeepCallback(boolean b) {
         this.keepCallback = b;
     }
 
+    /**
+     * Marks a keep-callback result as superseding any earlier latest-value
+     * result for the same callback that has not yet been delivered to JS.
+     * Use for streams where only the most recent value matters (e.g. RSSI
+     * or sensor readings), so that a paused or slow WebView does not build
+     * up a backlog of stale results.
+     */
+    public void setLatestValueOnly(boolean b) {
+        this.latestValueOnly = b;
+        this.latestValueKey = null;
+    }
+
+    /**
+     * Like setLatestValueOnly(true), but only supersedes earlier results for
+     * the same callback that were sent with an equal key. Use for streams
+     * that carry several sources over one callback, such as BLE scan results
+     * keyed by device address.
+     */
+    public void setLatestValueKey(String key) {
+        this.latestValueOnly = key != null;
+        this.latestValueKey = key;
+    }
+
     public int getStatus() {
         return status;
     }
@@ -104,11 +282,77 @@ public class PluginResult {
 
     public String getMessage() {
         if (encodedMessage == null) {
-            encodedMessage = JSONObject.quote(strMessage);
+            if (binaryMessage != null) {
+                encodedMessage = Base64.encodeToString(binaryMessage, Base64.NO_WRAP);
+            } else if (jsonMessage != null) {
+                encodedMessage = jsonMessage.toString();
+            } else {
+                encodedMessage = JSONObject.quote(strMessage);
+            }
         }
         return encodedMessage;
     }
 
+    /**
+     * Returns the length of getMessage() without creating the String for
+     * results built from pre-encoded JSON.
+     */
+    int getMessageLength() {
+        if (encodedMessage == null) {
+            if (binaryMessage != null) {
+                return (binaryMessage.length + 2) / 3 * 4;
+            }
+            if (jsonMessage != null) {
+                return jsonMessage.length();
+            }
+        }
+        return getMessage().length();
+    }
+
+    /**
+     * Appends getMessage() to sb, copying pre-encoded JSON directly and
+     * Base64-encoding binary data without an intermediate String.
+     */
+    void appendMessage(StringBuilder sb) {
+        if (encodedMessage == null && binaryMessage != null) {
+            appendBase64(sb, binaryMessage);
+        } else if (encodedMessage == null && jsonMessage != null) {
+            sb.append(jsonMessage);
+        } else {
+            sb.append(getMessage());
+        }
+    }
+
+    private static final char[] BASE64_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    // Same output as Base64.encodeToString(data, Base64.NO_WRAP).
+    private static void appendBase64(StringBuilder sb, byte[] data) {
+        sb.ensureCapacity(sb.length() + (data.length + 2) / 3 * 4);
+        int i = 0;
+        int end = data.length - data.length % 3;
+        for (; i < end; i += 3) {
+            int v = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            sb.append(BASE64_ALPHABET[v >> 18])
+              .append(BASE64_ALPHABET[(v >> 12) & 0x3f])
+              .append(BASE64_ALPHABET[(v >> 6) & 0x3f])
+              .append(BASE64_ALPHABET[v & 0x3f]);
+        }
+        int remaining = data.length - end;
+        if (remaining == 1) {
+            int v = (data[i] & 0xff) << 16;
+            sb.append(BASE64_ALPHABET[v >> 18])
+              .append(BASE64_ALPHABET[(v >> 12) & 0x3f])
+              .append("==");
+        } else if (remaining == 2) {
+            int v = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8;
+            sb.append(BASE64_ALPHABET[v >> 18])
+              .append(BASE64_ALPHABET[(v >> 12) & 0x3f])
+              .append(BASE64_ALPHABET[(v >> 6) & 0x3f])
+              .append('=');
+        }
+    }
+
     public int getMultipartMessagesSize() {
         return multipartMessages.size();
     }
@@ -129,13 +373,22 @@ public class PluginResult {
         return this.keepCallback;
     }
 
+    public boolean isLatestValueOnly() {
+        return this.latestValueOnly;
+    }
+
+    public String getLatestValueKey() {
+        return this.latestValueKey;
+    }
+
     @Deprecated // Use sendPluginResult instead of sendJavascript.
     public String getJSONString() {
-        return "{\"status\":" + this.status + ",\"message\":" + this.getMessage() + ",\"keepCallback\":" + this.keepCallback + "}";
+        return "{\"status\":" + getStatus() + ",\"message\":" + this.getMessage() + ",\"keepCallback\":" + this.keepCallback + "}";
     }
 
     @Deprecated // Use sendPluginResult instead of sendJavascript.
     public String toCallbackString(String callbackId) {
+        int status = getStatus();
         // If no result to be sent and keeping callback, then no need to sent back to JavaScript
         if ((status == PluginResult.Status.NO_RESULT.ordinal()) && keepCallback) {
         	return null;
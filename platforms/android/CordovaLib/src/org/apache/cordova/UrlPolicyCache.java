@@ -0,0 +1,87 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU of URL policy decisions (shouldAllowRequest and friends), so
+ * that repeated loads of the same URL do not ask every plugin again.
+ *
+ * Callers read {@link #generation()} before computing a decision and pass it
+ * to {@link #put}, so that a decision computed while the cache was being
+ * invalidated is dropped instead of stored.
+ */
+class UrlPolicyCache {
+    // data: URLs and the like are rarely repeated and would only evict
+    // useful entries.
+    private static final int MAX_URL_LENGTH = 1024;
+
+    private final LinkedHashMap<String, Boolean> decisions;
+    private int generation;
+    private long hits;
+    private long misses;
+
+    UrlPolicyCache(final int capacity) {
+        decisions = new LinkedHashMap<String, Boolean>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    static boolean isCacheable(String url) {
+        return url.length() <= MAX_URL_LENGTH && !url.startsWith("data:") && !url.startsWith("blob:");
+    }
+
+    synchronized Boolean get(String url) {
+        Boolean ret = decisions.get(url);
+        if (ret != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return ret;
+    }
+
+    synchronized int generation() {
+        return generation;
+    }
+
+    synchronized void put(String url, boolean decision, int generation) {
+        if (generation == this.generation) {
+            decisions.put(url, decision);
+        }
+    }
+
+    synchronized void invalidate() {
+        generation++;
+        decisions.clear();
+    }
+
+    synchronized void writeStatistics(JsonWriter w) {
+        w.beginObject()
+            .name("size").value(decisions.size())
+            .name("hits").value(hits)
+            .name("misses").value(misses)
+            .endObject();
+    }
+}
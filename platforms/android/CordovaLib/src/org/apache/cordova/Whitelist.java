@@ -34,6 +34,10 @@ public class Whitelist {
         public Pattern host;
         public Integer port;
         public Pattern path;
+        // The patterns before compilation, or null to match anything.
+        String schemeSource;
+        String hostSource;
+        String pathSource;
 
         private String regexFromPattern(String pattern, boolean allowWildcards) {
             final String toReplace = "\\.[]{}()^$?+|";
@@ -55,13 +59,16 @@ public class Whitelist {
                 if (scheme == null || "*".equals(scheme)) {
                     this.scheme = null;
                 } else {
+                    this.schemeSource = scheme;
                     this.scheme = Pattern.compile(regexFromPattern(scheme, false), Pattern.CASE_INSENSITIVE);
                 }
                 if ("*".equals(host)) {
                     this.host = null;
                 } else if (host.startsWith("*.")) {
+                    this.hostSource = host;
                     this.host = Pattern.compile("([a-z0-9.-]*\\.)?" + regexFromPattern(host.substring(2), false), Pattern.CASE_INSENSITIVE);
                 } else {
+                    this.hostSource = host;
                     this.host = Pattern.compile(regexFromPattern(host, false), Pattern.CASE_INSENSITIVE);
                 }
                 if (port == null || "*".equals(port)) {
@@ -72,6 +79,7 @@ public class Whitelist {
                 if (path == null || "/*".equals(path)) {
                     this.path = null;
                 } else {
+                    this.pathSource = path;
                     this.path = Pattern.compile(regexFromPattern(path, true));
                 }
             } catch (NumberFormatException e) {
@@ -93,6 +101,8 @@ public class Whitelist {
     }
 
     private ArrayList<URLPattern> whiteList;
+    // Built from whiteList on first use after it changes.
+    private volatile WhitelistMatcher matcher;
 
     public static final String TAG = "Whitelist";
 
@@ -111,7 +121,7 @@ public class Whitelist {
      * the scheme to be omitted for backwards compatibility. (Also host is not required
      * to begin with a "*" or "*.".)
      */
-    public void addWhiteListEntry(String origin, boolean subdomains) {
+    public synchronized void addWhiteListEntry(String origin, boolean subdomains) {
         if (whiteList != null) {
             try {
                 // Unlimited access to network resources
@@ -136,6 +146,7 @@ public class Whitelist {
                         } else {
                             whiteList.add(new URLPattern(scheme, host, port, path));
                         }
+                        matcher = null;
                     }
                 }
             } catch (Exception e) {
@@ -155,7 +166,24 @@ public class Whitelist {
         // If there is no whitelist, then it's wide open
         if (whiteList == null) return true;
 
-        Uri parsedUri = Uri.parse(uri);
+        WhitelistMatcher m = matcher;
+        if (m == null) {
+            m = buildMatcher();
+            if (m == null) return true;
+        }
+        int result = m.match(uri);
+        if (result != WhitelistMatcher.UNKNOWN) {
+            return result == WhitelistMatcher.MATCH;
+        }
+
+        return matchesPattern(Uri.parse(uri));
+    }
+
+    // The methods below are locked against addWhiteListEntry(), so that the
+    // list does not change while they read it.
+
+    private synchronized boolean matchesPattern(Uri parsedUri) {
+        if (whiteList == null) return true;
         // Look for match in white list
         Iterator<URLPattern> pit = whiteList.iterator();
         while (pit.hasNext()) {
@@ -167,4 +195,18 @@ public class Whitelist {
         return false;
     }
 
+    // Returns null if the whitelist was opened up meanwhile.
+    private synchronized WhitelistMatcher buildMatcher() {
+        if (whiteList == null) return null;
+        WhitelistMatcher m = matcher;
+        if (m == null) {
+            m = new WhitelistMatcher();
+            for (URLPattern p : whiteList) {
+                m.add(p.schemeSource, p.hostSource, p.port, p.pathSource);
+            }
+            matcher = m;
+        }
+        return m;
+    }
+
 }
@@ -0,0 +1,335 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compiled form of the patterns of a {@link Whitelist}.
+ *
+ * Hosts are kept in a trie of their characters in reverse order, so that a
+ * single right-to-left walk over the URL's host finds both the exact and the
+ * "*." wildcard patterns that apply. Each pattern then only has to check a
+ * scheme bit, a port and a path glob. Matching does not allocate.
+ *
+ * URLs whose parts android.net.Uri would decode or split differently from
+ * the simple parse done here (percent-escapes, user info, IPv6 literals,
+ * backslashes, line breaks and non-ASCII characters) are reported as
+ * {@link #UNKNOWN}, and the caller falls back to Uri and the regex patterns.
+ */
+class WhitelistMatcher {
+    static final int NO_MATCH = 0;
+    static final int MATCH = 1;
+    static final int UNKNOWN = 2;
+
+    private static final int ANY_PORT = -2;
+    // Bit of URLs with no scheme or a scheme no pattern names. Only patterns
+    // for any scheme have it.
+    private static final long OTHER_SCHEME = 1L << 63;
+    private static final long ANY_SCHEME = -1L;
+    private static final int MAX_SCHEMES = 63;
+
+    private final ArrayList<String> schemes = new ArrayList<String>();
+    private final HostNode hostRoot = new HostNode();
+    private Rule[] anyHostRules = new Rule[0];
+    private boolean disabled;
+
+    /**
+     * Adds a pattern. A null scheme, host, port or path matches anything.
+     */
+    void add(String scheme, String host, Integer port, String path) {
+        long schemeMask;
+        if (scheme == null) {
+            schemeMask = ANY_SCHEME;
+        } else {
+            String s = scheme.toLowerCase(Locale.ENGLISH);
+            int index = schemes.indexOf(s);
+            if (index < 0) {
+                if (schemes.size() == MAX_SCHEMES) {
+                    disabled = true;
+                    return;
+                }
+                index = schemes.size();
+                schemes.add(s);
+            }
+            schemeMask = 1L << index;
+        }
+        int p = port == null ? ANY_PORT : port;
+        String[] glob = path == null ? null : path.split("\\*", -1);
+        if (host == null) {
+            anyHostRules = addRule(anyHostRules, schemeMask, p, glob);
+        } else if (host.startsWith("*.")) {
+            HostNode node = hostRoot.insert(host.substring(2));
+            node.wildcardRules = addRule(node.wildcardRules, schemeMask, p, glob);
+        } else {
+            HostNode node = hostRoot.insert(host);
+            node.exactRules = addRule(node.exactRules, schemeMask, p, glob);
+        }
+    }
+
+    // Patterns that differ only in scheme (such as the http and https
+    // patterns added for an origin without a scheme) share one rule.
+    private static Rule[] addRule(Rule[] rules, long schemeMask, int port, String[] glob) {
+        for (Rule r : rules) {
+            if (r.port == port && Arrays.equals(r.glob, glob)) {
+                r.schemes |= schemeMask;
+                return rules;
+            }
+        }
+        Rule[] ret = new Rule[rules.length + 1];
+        System.arraycopy(rules, 0, ret, 0, rules.length);
+        ret[rules.length] = new Rule(schemeMask, port, glob);
+        return ret;
+    }
+
+    /**
+     * Returns MATCH if a pattern matches url, NO_MATCH if none does, or
+     * UNKNOWN if url has to be checked with android.net.Uri.
+     */
+    int match(String url) {
+        if (disabled) {
+            return UNKNOWN;
+        }
+        // This mirrors the parse of Uri.parse(url).getScheme(), getHost(),
+        // getPort() and getPath().
+        int len = url.length();
+        int ssi = url.indexOf(':');
+        long schemeBit = ssi < 0 ? OTHER_SCHEME : schemeBit(url, ssi);
+        int hostStart = -1;
+        int hostEnd = -1;
+        int port = -1;
+        int pathStart = -1;
+        int pathEnd = -1;
+        // Opaque URIs (such as mailto:) have no host, port or path.
+        if (ssi < 0 || (len > ssi + 1 && url.charAt(ssi + 1) == '/')) {
+            if (len > ssi + 2 && url.charAt(ssi + 1) == '/' && url.charAt(ssi + 2) == '/') {
+                hostStart = ssi + 3;
+                int authorityEnd = hostStart;
+                while (authorityEnd < len) {
+                    char c = url.charAt(authorityEnd);
+                    if (c == '/' || c == '?' || c == '#') {
+                        break;
+                    }
+                    if (c == '@' || c == '%' || c == '[') {
+                        return UNKNOWN;
+                    }
+                    if (c == ':' && hostEnd < 0) {
+                        hostEnd = authorityEnd;
+                    }
+                    authorityEnd++;
+                }
+                if (hostEnd < 0) {
+                    hostEnd = authorityEnd;
+                } else {
+                    port = parsePort(url, hostEnd + 1, authorityEnd);
+                    if (port == ANY_PORT) {
+                        return UNKNOWN;
+                    }
+                }
+                pathStart = authorityEnd;
+            } else {
+                pathStart = ssi + 1;
+            }
+            pathEnd = pathStart;
+            while (pathEnd < len) {
+                char c = url.charAt(pathEnd);
+                if (c == '?' || c == '#') {
+                    break;
+                }
+                if (c == '%') {
+                    return UNKNOWN;
+                }
+                pathEnd++;
+            }
+            for (int i = 0; i < pathEnd; i++) {
+                char c = url.charAt(i);
+                if (c >= 0x80 || c == '\\' || c == '\n' || c == '\r') {
+                    return UNKNOWN;
+                }
+            }
+        }
+
+        for (Rule r : anyHostRules) {
+            if (r.matches(schemeBit, port, url, pathStart, pathEnd)) {
+                return MATCH;
+            }
+        }
+        if (hostStart < 0) {
+            return NO_MATCH;
+        }
+        // Characters allowed before the suffix of a "*." pattern.
+        int wildcardPrefixEnd = hostStart;
+        while (wildcardPrefixEnd < hostEnd && isHostChar(url.charAt(wildcardPrefixEnd))) {
+            wildcardPrefixEnd++;
+        }
+        // node holds the patterns for url[i + 1, hostEnd).
+        HostNode node = hostRoot;
+        for (int i = hostEnd - 1; ; i--) {
+            if (node.wildcardRules.length > 0
+                    && (i < hostStart || (url.charAt(i) == '.' && wildcardPrefixEnd >= i))) {
+                for (Rule r : node.wildcardRules) {
+                    if (r.matches(schemeBit, port, url, pathStart, pathEnd)) {
+                        return MATCH;
+                    }
+                }
+            }
+            if (i < hostStart) {
+                for (Rule r : node.exactRules) {
+                    if (r.matches(schemeBit, port, url, pathStart, pathEnd)) {
+                        return MATCH;
+                    }
+                }
+                return NO_MATCH;
+            }
+            node = node.child(toLower(url.charAt(i)));
+            if (node == null) {
+                return NO_MATCH;
+            }
+        }
+    }
+
+    private long schemeBit(String url, int end) {
+        for (int i = 0; i < schemes.size(); i++) {
+            String s = schemes.get(i);
+            if (s.length() != end) {
+                continue;
+            }
+            int j = 0;
+            while (j < end && toLower(url.charAt(j)) == s.charAt(j)) {
+                j++;
+            }
+            if (j == end) {
+                return 1L << i;
+            }
+        }
+        return OTHER_SCHEME;
+    }
+
+    // Returns -1 for an empty port, like Uri.getPort(), and ANY_PORT for a
+    // port that is not a plain number.
+    private static int parsePort(String url, int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        if (end - start > 9) {
+            return ANY_PORT;
+        }
+        int ret = 0;
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            if (c < '0' || c > '9') {
+                return ANY_PORT;
+            }
+            ret = ret * 10 + (c - '0');
+        }
+        return ret;
+    }
+
+    private static boolean isHostChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-';
+    }
+
+    // The patterns are case-insensitive for ASCII letters only.
+    private static char toLower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static final class Rule {
+        long schemes;
+        final int port;
+        // The literal parts of the path pattern, which are separated by "*".
+        final String[] glob;
+
+        Rule(long schemes, int port, String[] glob) {
+            this.schemes = schemes;
+            this.port = port;
+            this.glob = glob;
+        }
+
+        boolean matches(long schemeBit, int urlPort, String url, int pathStart, int pathEnd) {
+            if ((schemes & schemeBit) == 0 || (port != ANY_PORT && port != urlPort)) {
+                return false;
+            }
+            if (glob == null) {
+                return true;
+            }
+            if (pathStart < 0) {
+                return false;
+            }
+            String first = glob[0];
+            if (glob.length == 1) {
+                return pathEnd - pathStart == first.length() && url.startsWith(first, pathStart);
+            }
+            String last = glob[glob.length - 1];
+            int pos = pathStart + first.length();
+            int limit = pathEnd - last.length();
+            if (pos > limit || !url.startsWith(first, pathStart) || !url.startsWith(last, limit)) {
+                return false;
+            }
+            // Taking the leftmost match of each middle part is always best.
+            for (int i = 1; i < glob.length - 1; i++) {
+                int found = url.indexOf(glob[i], pos);
+                if (found < 0 || found + glob[i].length() > limit) {
+                    return false;
+                }
+                pos = found + glob[i].length();
+            }
+            return true;
+        }
+    }
+
+    private static final class HostNode {
+        // Sorted, to allow a binary search.
+        char[] keys = new char[0];
+        HostNode[] children = new HostNode[0];
+        Rule[] exactRules = new Rule[0];
+        Rule[] wildcardRules = new Rule[0];
+
+        HostNode child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        // Returns the node for host, which is walked from its last character.
+        HostNode insert(String host) {
+            HostNode node = this;
+            for (int i = host.length() - 1; i >= 0; i--) {
+                char c = toLower(host.charAt(i));
+                int index = Arrays.binarySearch(node.keys, c);
+                if (index < 0) {
+                    index = -index - 1;
+                    char[] keys = new char[node.keys.length + 1];
+                    HostNode[] children = new HostNode[keys.length];
+                    System.arraycopy(node.keys, 0, keys, 0, index);
+                    System.arraycopy(node.keys, index, keys, index + 1, node.keys.length - index);
+                    System.arraycopy(node.children, 0, children, 0, index);
+                    System.arraycopy(node.children, index, children, index + 1, node.keys.length - index);
+                    keys[index] = c;
+                    children[index] = new HostNode();
+                    node.keys = keys;
+                    node.children = children;
+                }
+                node = node.children[index];
+            }
+            return node;
+        }
+    }
+}
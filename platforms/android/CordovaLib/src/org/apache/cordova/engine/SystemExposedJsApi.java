@@ -41,6 +41,15 @@ class SystemExposedJsApi implements ExposedJsApi {
         return bridge.jsExec(bridgeSecret, service, action, callbackId, arguments);
     }
 
+    /**
+     * Batched form of exec(). Not part of ExposedJsApi, so cordova.js checks
+     * for it before use.
+     */
+    @JavascriptInterface
+    public String execBatch(int bridgeSecret, String batch) throws JSONException, IllegalAccessException {
+        return bridge.jsExecBatch(bridgeSecret, batch);
+    }
+
     @JavascriptInterface
     public void setNativeToJsBridgeMode(int bridgeSecret, int value) throws IllegalAccessException {
         bridge.jsSetNativeToJsBridgeMode(bridgeSecret, value);
@@ -33,6 +33,7 @@ import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 
+import org.apache.cordova.AssetCache;
 import org.apache.cordova.AuthenticationToken;
 import org.apache.cordova.CordovaClientCertRequest;
 import org.apache.cordova.CordovaHttpAuthHandler;
@@ -42,7 +43,9 @@ import org.apache.cordova.PluginManager;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
 
 
 /**
@@ -333,6 +336,25 @@ public class SystemWebViewClient extends WebViewClient {
             // Allow plugins to intercept WebView requests.
             Uri remappedUri = resourceApi.remapUri(origUri);
 
+            if (CordovaResourceApi.getUriType(remappedUri) == CordovaResourceApi.URI_TYPE_ASSET) {
+                AssetCache assetCache = resourceApi.getAssetCache();
+                CordovaResourceApi.OpenForReadResult result = null;
+                if (assetCache != null) {
+                    result = assetCache.openForRead(remappedUri);
+                }
+                // Bundled assets are not in the APK's assets, so the WebView
+                // cannot load them itself.
+                if (result == null && resourceApi.getAssetBundle() != null) {
+                    result = resourceApi.openForRead(remappedUri, true);
+                }
+                if (result != null) {
+                    WebResourceResponse response = new WebResourceResponse(result.mimeType, "UTF-8", result.inputStream);
+                    if (assetCache != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                        Lollipop.setETag(response, assetCache.getETag());
+                    }
+                    return response;
+                }
+            }
             if (!origUri.equals(remappedUri) || needsSpecialsInAssetUrlFix(origUri) || needsKitKatContentUrlFix(origUri)) {
                 CordovaResourceApi.OpenForReadResult result = resourceApi.openForRead(remappedUri, true);
                 return new WebResourceResponse(result.mimeType, "UTF-8", result.inputStream);
@@ -348,6 +370,15 @@ public class SystemWebViewClient extends WebViewClient {
         }
     }
 
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static class Lollipop {
+        static void setETag(WebResourceResponse response, String etag) {
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("ETag", etag);
+            response.setResponseHeaders(headers);
+        }
+    }
+
     private static boolean needsKitKatContentUrlFix(Uri uri) {
         return android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.KITKAT && "content".equals(uri.getScheme());
     }
@@ -106,7 +106,8 @@ public class SystemWebViewEngine implements CordovaWebViewEngine {
 
         initWebViewSettings();
 
-        nativeToJsMessageQueue.addBridgeMode(new NativeToJsMessageQueue.OnlineEventsBridgeMode(new NativeToJsMessageQueue.OnlineEventsBridgeMode.OnlineEventsBridgeModeDelegate() {
+        NativeToJsMessageQueue.OnlineEventsBridgeMode.OnlineEventsBridgeModeDelegate onlineEventsDelegate =
+                new NativeToJsMessageQueue.OnlineEventsBridgeMode.OnlineEventsBridgeModeDelegate() {
             @Override
             public void setNetworkAvailable(boolean value) {
                 webView.setNetworkAvailable(value);
@@ -115,7 +116,9 @@ public class SystemWebViewEngine implements CordovaWebViewEngine {
             public void runOnUiThread(Runnable r) {
                 SystemWebViewEngine.this.cordova.getActivity().runOnUiThread(r);
             }
-        }));
+        };
+        nativeToJsMessageQueue.addBridgeMode(new NativeToJsMessageQueue.OnlineEventsBridgeMode(onlineEventsDelegate));
+        nativeToJsMessageQueue.addBridgeMode(new NativeToJsMessageQueue.AdaptiveBridgeMode(onlineEventsDelegate));
         bridge = new CordovaBridge(pluginManager, nativeToJsMessageQueue);
         exposeJsInterface(webView, bridge);
     }
@@ -0,0 +1,136 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Opens assets from bundles laid out as cordova/lib/assetBundle.js writes
+ * them, and rejects corrupt ones when they are opened.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class AssetBundleTest {
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 16;
+
+    // Packs path/content pairs, which must be sorted by path. Unlike the
+    // packer, data is not page-aligned.
+    private static ByteBuffer bundle(String... pathsAndContents) throws IOException {
+        int count = pathsAndContents.length / 2;
+        byte[][] parts = new byte[pathsAndContents.length][];
+        int size = HEADER_SIZE + count * ENTRY_SIZE;
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = pathsAndContents[i].getBytes("UTF-8");
+            size += parts[i].length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(0x4350414B).putInt(1).putInt(count).putInt(size);
+        int offset = HEADER_SIZE + count * ENTRY_SIZE;
+        for (int i = 0; i < count; i++) {
+            buf.putInt(offset).putInt(parts[2 * i].length);
+            offset += parts[2 * i].length;
+            buf.putInt(offset).putInt(parts[2 * i + 1].length);
+            offset += parts[2 * i + 1].length;
+        }
+        for (byte[] part : parts) {
+            buf.put(part);
+        }
+        buf.clear();
+        return buf;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[3];
+        int count;
+        while ((count = in.read(buf)) >= 0) {
+            out.write(buf, 0, count);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static void assertRejected(ByteBuffer map) {
+        try {
+            new AssetBundle(map);
+            fail("Opened a corrupt bundle");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void opensAssetsByPath() throws Exception {
+        AssetBundle bundle = new AssetBundle(bundle(
+                "www/cordova.js", "cordova();",
+                "www/css/index.css", "body {}",
+                "www/index.html", "<html></html>"));
+        InputStream in = bundle.open("www/css/index.css");
+        assertEquals(7, in.available());
+        assertEquals("body {}", read(in));
+        assertEquals("cordova();", read(bundle.open("www/cordova.js")));
+        assertEquals("<html></html>", read(bundle.open("www/index.html")));
+        assertNull(bundle.open("www/css"));
+        assertNull(bundle.open("www/missing.js"));
+    }
+
+    @Test
+    public void rejectsEntriesOutsideTheBundle() throws Exception {
+        // The fields of the only entry: path offset and length, data offset
+        // and length.
+        int[][] corruptions = {
+            { 0, -1 }, { 4, 1000 }, { 4, Integer.MAX_VALUE },
+            { 8, 1000 }, { 12, -5 }, { 12, Integer.MAX_VALUE },
+        };
+        for (int[] corruption : corruptions) {
+            ByteBuffer map = bundle("www/index.html", "<html></html>");
+            map.putInt(HEADER_SIZE + corruption[0], corruption[1]);
+            assertRejected(map);
+        }
+    }
+
+    @Test
+    public void rejectsBadHeaders() throws Exception {
+        assertRejected(ByteBuffer.allocate(8));
+        ByteBuffer wrongSize = bundle("www/index.html", "<html></html>");
+        wrongSize.putInt(12, wrongSize.capacity() + 1);
+        assertRejected(wrongSize);
+        ByteBuffer tooManyEntries = bundle("www/index.html", "<html></html>");
+        tooManyEntries.putInt(8, 1000);
+        assertRejected(tooManyEntries);
+        ByteBuffer negativeCount = bundle("www/index.html", "<html></html>");
+        negativeCount.putInt(8, -1);
+        assertRejected(negativeCount);
+        byte[] truncated = Arrays.copyOf(bundle("www/index.html", "<html></html>").array(), 20);
+        assertRejected(ByteBuffer.wrap(truncated));
+    }
+}
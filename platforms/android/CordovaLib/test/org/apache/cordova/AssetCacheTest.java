@@ -0,0 +1,140 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentResolver;
+import android.content.ContextWrapper;
+import android.content.res.AssetManager;
+import android.net.Uri;
+
+/**
+ * Misses and hits of an {@link AssetCache} over a resource API that counts
+ * how often each asset is read.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class AssetCacheTest {
+    private static final byte[] ASSET = new byte[64 * 1024];
+
+    static {
+        for (int i = 0; i < ASSET.length; i++) {
+            ASSET[i] = (byte) i;
+        }
+    }
+
+    private static class CountingResourceApi extends CordovaResourceApi {
+        final AtomicInteger reads = new AtomicInteger();
+
+        CountingResourceApi() {
+            super(new ContextWrapper(null) {
+                @Override
+                public ContentResolver getContentResolver() {
+                    return null;
+                }
+
+                @Override
+                public AssetManager getAssets() {
+                    return null;
+                }
+            }, null);
+        }
+
+        @Override
+        public OpenForReadResult openForRead(Uri uri, boolean skipThreadCheck) throws IOException {
+            reads.incrementAndGet();
+            try {
+                // Long enough for the other threads to miss too.
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new OpenForReadResult(uri, new ByteArrayInputStream(ASSET), "text/javascript", ASSET.length, null);
+        }
+    }
+
+    private static byte[] read(CordovaResourceApi.OpenForReadResult result) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = result.inputStream;
+        byte[] buf = new byte[8192];
+        int count;
+        while ((count = in.read(buf)) >= 0) {
+            out.write(buf, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void readsAnAssetOnceForConcurrentMisses() throws Exception {
+        CountingResourceApi resourceApi = new CountingResourceApi();
+        final AssetCache cache = new AssetCache(resourceApi, 1024 * 1024, "1");
+        final Uri uri = Uri.parse("file:///android_asset/www/cordova.js");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return read(cache.openForRead(uri));
+                    }
+                }));
+            }
+            for (Future<byte[]> result : results) {
+                assertArrayEquals(ASSET, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, resourceApi.reads.get());
+
+        assertArrayEquals(ASSET, read(cache.openForRead(uri)));
+        assertEquals(1, resourceApi.reads.get());
+    }
+
+    @Test
+    public void readsAssetsTooLargeToCacheEveryTime() throws Exception {
+        CountingResourceApi resourceApi = new CountingResourceApi();
+        AssetCache cache = new AssetCache(resourceApi, ASSET.length, "1");
+        Uri uri = Uri.parse("file:///android_asset/www/cordova.js");
+        assertArrayEquals(ASSET, read(cache.openForRead(uri)));
+        assertArrayEquals(ASSET, read(cache.openForRead(uri)));
+        assertEquals(2, resourceApi.reads.get());
+    }
+}
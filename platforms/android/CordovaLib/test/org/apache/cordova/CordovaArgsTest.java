@@ -0,0 +1,149 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.util.Base64;
+
+/**
+ * Compares CordovaArgs parsed lazily from the raw exec() text with
+ * CordovaArgs over the JSONArray parsed up front.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class CordovaArgsTest {
+    private static final String[] VALID = {
+        "[]",
+        " [ ] ",
+        "[1, 2.5, -3e2, true, false, null]",
+        "[\"a\", \"\\\"quoted\\\"\", \"\\u00e9\\n\", \"\"]",
+        "[{\"a\": [1, {\"b\": \"]\"}]}, [\"[\", \"{\"], \"}\"]",
+        "[\"AAECAwQFBgcICQ==\", 4, \"/w==\"]",
+        "[\"AAEC\\nAwQF\"]",
+        // Lenient syntax that JSONTokener accepts.
+        "[1; 2, ]",
+        "['a', b, {'c': ']'}]",
+        "[1] trailing text",
+    };
+
+    private static final String[] MALFORMED = {
+        "",
+        "{}",
+        "[1,",
+        "[1 2]",
+        "[\"a]",
+        "[[1, 2]",
+        "[{\"a\": }]",
+        "[{\"a\" 1}]",
+        "[\"\\u12\"]",
+        "[\"\\uzzzz\"]",
+    };
+
+    @Test
+    public void lazyArgumentsMatchEagerArguments() throws JSONException {
+        for (String raw : VALID) {
+            JSONArray array = new JSONArray(raw);
+            CordovaArgs eager = new CordovaArgs(array);
+            CordovaArgs lazy = new CordovaArgs(raw);
+            for (int i = -1; i <= array.length(); i++) {
+                assertEquals(raw, String.valueOf(eager.opt(i)), String.valueOf(lazy.opt(i)));
+                assertEquals(raw, eager.optString(i), lazy.optString(i));
+                assertEquals(raw, eager.optInt(i), lazy.optInt(i));
+                assertEquals(raw, eager.isNull(i), lazy.isNull(i));
+            }
+        }
+    }
+
+    @Test
+    public void malformedArgumentsFailWhenCreated() {
+        for (String raw : MALFORMED) {
+            boolean eagerFailed = false;
+            try {
+                new JSONArray(raw);
+            } catch (JSONException e) {
+                eagerFailed = true;
+            }
+            try {
+                new CordovaArgs(raw);
+                assertTrue(raw + " was rejected by JSONArray only", !eagerFailed);
+            } catch (JSONException e) {
+                assertTrue(raw + " was rejected by CordovaArgs only", eagerFailed);
+            }
+        }
+    }
+
+    @Test
+    public void decodesArrayBuffersWithTheBase64Decoder() throws JSONException {
+        for (int length = 0; length < 40; length++) {
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) (i * 37);
+            }
+            String encoded = Base64.encodeToString(data, Base64.DEFAULT);
+            String raw = new JSONArray().put(encoded).toString();
+            assertArrayEquals(data, new CordovaArgs(raw).getArrayBuffer(0));
+        }
+    }
+
+    @Test
+    public void decodesArrayBuffersIntoTheCallersBuffer() throws JSONException {
+        CordovaArgs args = new CordovaArgs("[\"AAECAwQFBgcICQ==\", \"/w==\"]");
+        ByteBuffer out = ByteBuffer.allocate(12);
+        out.put((byte) 42);
+        assertEquals(10, args.getArrayBuffer(0, out));
+        assertEquals(11, out.position());
+        assertEquals(1, args.getArrayBuffer(1, out));
+        assertArrayEquals(new byte[] { 42, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, -1 }, out.array());
+
+        out.clear().position(5);
+        try {
+            args.getArrayBuffer(0, out);
+            fail();
+        } catch (BufferOverflowException e) {
+            // Expected.
+        }
+        assertEquals(5, out.position());
+    }
+
+    @Test
+    public void typedGettersStillThrowForTheWrongType() throws JSONException {
+        CordovaArgs args = new CordovaArgs("[\"a\"]");
+        try {
+            args.getInt(0);
+            fail();
+        } catch (JSONException e) {
+            // Expected.
+        }
+        assertEquals(0, args.optInt(0));
+    }
+}
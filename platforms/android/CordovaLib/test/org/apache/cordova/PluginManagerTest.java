@@ -0,0 +1,209 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Plugin startup in PluginManager: one instance per service however many
+ * threads ask for it, dependencies first, and no stale instances after a
+ * reload.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PluginManagerTest {
+    static final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+    static final List<String> paused = Collections.synchronizedList(new ArrayList<String>());
+    static final List<CordovaPlugin> instances = Collections.synchronizedList(new ArrayList<CordovaPlugin>());
+    static volatile PluginManager manager;
+    static volatile CordovaPlugin selfRequest;
+    static volatile CountDownLatch entered;
+    static volatile CountDownLatch release;
+
+    public static class Recorder extends CordovaPlugin {
+        @Override
+        protected void pluginInitialize() {
+            started.add(getServiceName());
+            instances.add(this);
+        }
+
+        @Override
+        public void onPause(boolean multitasking) {
+            paused.add(getServiceName());
+        }
+    }
+
+    public static class Slow extends Recorder {
+        @Override
+        protected void pluginInitialize() {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.pluginInitialize();
+        }
+    }
+
+    public static class SelfRequesting extends Recorder {
+        @Override
+        protected void pluginInitialize() {
+            selfRequest = manager.getPlugin(getServiceName());
+            super.pluginInitialize();
+        }
+    }
+
+    public static class Blocking extends Recorder {
+        @Override
+        protected void pluginInitialize() {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.pluginInitialize();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        started.clear();
+        paused.clear();
+        instances.clear();
+        selfRequest = null;
+        entered = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    private static Object proxy(Class<?> type, final CordovaPreferences preferences) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getPreferences") ? preferences : null;
+            }
+        });
+    }
+
+    private static PluginEntry entry(String service, Class<? extends CordovaPlugin> type,
+            PluginEntry.StartMode startMode, String... dependencies) {
+        return new PluginEntry(service, type.getName(), startMode, dependencies, PluginEntry.ExecPolicy.BRIDGE, null);
+    }
+
+    private static PluginManager createManager(PluginEntry... entries) {
+        CordovaPreferences preferences = new CordovaPreferences();
+        manager = new PluginManager((CordovaWebView) proxy(CordovaWebView.class, preferences),
+                (CordovaInterface) proxy(CordovaInterface.class, preferences), Arrays.asList(entries));
+        return manager;
+    }
+
+    @Test
+    public void concurrentRequestsShareOneInstance() throws Exception {
+        final PluginManager pm = createManager(entry("Slow", Slow.class, PluginEntry.StartMode.LAZY));
+        final CordovaPlugin[] results = new CordovaPlugin[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    results[index] = pm.getPlugin("Slow");
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, instances.size());
+        for (CordovaPlugin result : results) {
+            assertSame(instances.get(0), result);
+        }
+    }
+
+    @Test
+    public void dependenciesStartFirstAndPluginsAreNotifiedInConfigOrder() {
+        PluginManager pm = createManager(
+                entry("Sync", Recorder.class, PluginEntry.StartMode.BLOCKING, "Storage"),
+                entry("Storage", Recorder.class, PluginEntry.StartMode.BLOCKING, "Device"),
+                entry("Device", Recorder.class, PluginEntry.StartMode.BLOCKING),
+                entry("Camera", Recorder.class, PluginEntry.StartMode.LAZY));
+        pm.init();
+        assertEquals(Arrays.asList("Device", "Storage", "Sync"), started);
+
+        pm.getPlugin("Camera");
+        pm.onPause(false);
+        assertEquals(Arrays.asList("Sync", "Storage", "Device", "Camera"), paused);
+    }
+
+    @Test
+    public void aPluginRequestingItselfGetsNull() {
+        PluginManager pm = createManager(entry("Self", SelfRequesting.class, PluginEntry.StartMode.LAZY));
+        CordovaPlugin plugin = pm.getPlugin("Self");
+        assertNotNull(plugin);
+        assertNull(selfRequest);
+        assertSame(plugin, pm.getPlugin("Self"));
+    }
+
+    @Test
+    public void reloadDuringAStartDiscardsTheStaleInstance() throws Exception {
+        final PluginManager pm = createManager(entry("Bg", Blocking.class, PluginEntry.StartMode.LAZY));
+        pm.init();
+        // Starts the plugin off the UI thread, as startupThread does for
+        // background plugins.
+        Thread starter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pm.getPlugin("Bg");
+            }
+        });
+        starter.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        pm.init();
+        release.countDown();
+        starter.join();
+
+        CordovaPlugin current = pm.getPlugin("Bg");
+        assertEquals(2, instances.size());
+        assertNotSame(instances.get(0), current);
+        assertSame(instances.get(1), current);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Pooled results from CallbackContext.obtainResult(), sent through a
+ * NativeToJsMessageQueue.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PluginResultPoolTest {
+    // One second of a 1 kHz notification stream, drained once per 60 Hz
+    // display frame.
+    private static final int STREAM_RATE = 1000;
+    private static final int MESSAGES_PER_FLUSH = STREAM_RATE / 60;
+
+    private NativeToJsMessageQueue queue;
+    private CallbackContext callbackContext;
+    private final byte[] value = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 };
+
+    @Before
+    public void setUp() {
+        queue = new NativeToJsMessageQueue();
+        queue.addBridgeMode(new NativeToJsMessageQueue.NoOpBridgeMode());
+        queue.setBridgeMode(0);
+        callbackContext = new CallbackContext("BLE1", webView(queue));
+    }
+
+    // Only sendPluginResult() is used by CallbackContext.
+    private static CordovaWebView webView(final NativeToJsMessageQueue queue) {
+        return (CordovaWebView) Proxy.newProxyInstance(CordovaWebView.class.getClassLoader(),
+                new Class<?>[] { CordovaWebView.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("sendPluginResult")) {
+                            queue.addPluginResult((PluginResult) args[0], (String) args[1]);
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @Test
+    public void ordinaryResultsCannotBeModified() {
+        PluginResult result = new PluginResult(PluginResult.Status.OK, "a");
+        try {
+            result.setMessage("b");
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+        assertEquals(PluginResult.MESSAGE_TYPE_STRING, result.getMessageType());
+        assertEquals("\"a\"", result.getMessage());
+    }
+
+    @Test
+    public void pooledResultsCannotBeModifiedOnceSent() {
+        PluginResult result = callbackContext.obtainResult(PluginResult.Status.OK).setMessage("a");
+        callbackContext.sendPluginResult(result);
+        try {
+            result.setMessage("b");
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+        assertEquals("\"a\"", result.getMessage());
+    }
+
+    @Test
+    public void pooledResultsAreReusedOnceDelivered() {
+        PluginResult first = callbackContext.obtainResult(PluginResult.Status.OK).setMessage(value);
+        callbackContext.sendPluginResult(first);
+        assertTrue(queue.popAndEncode(false).contains("BLE1"));
+
+        PluginResult second = callbackContext.obtainResult(PluginResult.Status.ERROR);
+        assertSame(first, second);
+        assertEquals(PluginResult.Status.ERROR.ordinal(), second.getStatus());
+        assertEquals(PluginResult.MESSAGE_TYPE_NULL, second.getMessageType());
+    }
+
+    private interface Stream {
+        void send();
+    }
+
+    // Bytes allocated by this thread in sending one second of the stream,
+    // not counting the encoding of flushes.
+    private long allocatedPerSecond(Stream stream) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        // Calibrates for the allocations of getThreadAllocatedBytes() itself.
+        long overhead = threads.getThreadAllocatedBytes(thread);
+        overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+        long allocated = 0;
+        for (int i = 0; i < STREAM_RATE; i++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            stream.send();
+            allocated += threads.getThreadAllocatedBytes(thread) - before - overhead;
+            if (i % MESSAGES_PER_FLUSH == MESSAGES_PER_FLUSH - 1) {
+                queue.popAndEncode(false);
+            }
+        }
+        queue.popAndEncode(false);
+        return allocated;
+    }
+
+    private long measure(Stream stream) {
+        // Warms up the pool, the queue's ring and the JIT.
+        for (int i = 0; i < 20; i++) {
+            allocatedPerSecond(stream);
+        }
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            least = Math.min(least, allocatedPerSecond(stream));
+        }
+        return least;
+    }
+
+    @Test
+    public void pooledStreamAllocatesNothingOnceWarm() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        // Queues the results directly: the proxy behind callbackContext
+        // allocates an argument array for every call, which a real
+        // CordovaWebView does not.
+        long pooled = measure(new Stream() {
+            @Override
+            public void send() {
+                PluginResult result = callbackContext.obtainResult(PluginResult.Status.OK).setMessage(value);
+                result.markSent();
+                queue.addPluginResult(result, "BLE1");
+            }
+        });
+        long unpooled = measure(new Stream() {
+            @Override
+            public void send() {
+                PluginResult result = new PluginResult(PluginResult.Status.OK, value);
+                result.setKeepCallback(true);
+                queue.addPluginResult(result, "BLE1");
+            }
+        });
+        assertTrue("Bytes allocated per result: pooled " + pooled / STREAM_RATE + ", new results " + unpooled / STREAM_RATE,
+                pooled < STREAM_RATE);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.net.Uri;
+
+/**
+ * Checks {@link Whitelist} and its {@link WhitelistMatcher} against the
+ * regex and android.net.Uri matching they replaced.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class WhitelistTest {
+    private static final String[] SCHEMES = { "http", "HTTPS", "file", "content", "ftp", "x-y", "*", "" };
+    private static final String[] HOSTS = { "example.com", "*.example.com", "Foo.Example.com", "*", "a-b.c", "*..x", "127.0.0.1", "*.com", "host" };
+    private static final String[] PORTS = { "", ":80", ":8080", ":*", ":0" };
+    private static final String[] PATHS = { "", "/", "/*", "/a/*", "/a*b*c", "/x", "/a/*/z", "/*.png", "/**" };
+
+    private static final String[] URL_SCHEMES = { "http:", "https:", "HTTP:", "file:", "content:", "ftp:", "x-y:", "mailto:", "", "data:", "weird/s:" };
+    private static final String[] URL_AUTHORITIES = { "//", "/", "", "///" };
+    private static final String[] URL_HOSTS = { "example.com", "EXAMPLE.com", "a.example.com", "x_y.example.com", "a.b.example.com",
+            ".example.com", "badexample.com", "foo.example.com", "a-b.c", "..x", "y..x", "127.0.0.1", "host", "", "u@host",
+            "ho%73t", "[::1]", "hé.com", "h\\x", "example.com.", "k.com" };
+    private static final String[] URL_PORTS = { "", ":80", ":8080", ":", ":0080", ":x", ":99999999999", ":0" };
+    private static final String[] URL_PATHS = { "", "/", "/a/", "/a/b/z", "/abc", "/aXbYc", "/x", "/x/", "/a/q/z", "/img.png",
+            "/a%2Fb", "/a\nb", "/a/é/z", "/acb" };
+    private static final String[] URL_TAILS = { "", "?q=1", "#f", "?a/b#c", "?%20" };
+
+    /**
+     * The matching of Whitelist before WhitelistMatcher was added: each
+     * origin becomes a URLPattern of regexes, which is tried against the
+     * parts of the URL as parsed by android.net.Uri.
+     */
+    private static class ReferenceWhitelist {
+        private ArrayList<Pattern[]> schemeHostPath = new ArrayList<Pattern[]>();
+        private final ArrayList<Integer> ports = new ArrayList<Integer>();
+
+        private static String regexFromPattern(String pattern, boolean allowWildcards) {
+            final String toReplace = "\\.[]{}()^$?+|";
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '*' && allowWildcards) {
+                    regex.append(".");
+                } else if (toReplace.indexOf(c) > -1) {
+                    regex.append('\\');
+                }
+                regex.append(c);
+            }
+            return regex.toString();
+        }
+
+        private void addPattern(String scheme, String host, String port, String path) {
+            Integer p = null;
+            if (port != null && !"*".equals(port)) {
+                try {
+                    p = Integer.parseInt(port, 10);
+                } catch (NumberFormatException e) {
+                    return;
+                }
+            }
+            Pattern s = scheme == null || "*".equals(scheme) ? null
+                    : Pattern.compile(regexFromPattern(scheme, false), Pattern.CASE_INSENSITIVE);
+            Pattern h;
+            if ("*".equals(host)) {
+                h = null;
+            } else if (host.startsWith("*.")) {
+                h = Pattern.compile("([a-z0-9.-]*\\.)?" + regexFromPattern(host.substring(2), false), Pattern.CASE_INSENSITIVE);
+            } else {
+                h = Pattern.compile(regexFromPattern(host, false), Pattern.CASE_INSENSITIVE);
+            }
+            Pattern pa = path == null || "/*".equals(path) ? null : Pattern.compile(regexFromPattern(path, true));
+            schemeHostPath.add(new Pattern[] { s, h, pa });
+            ports.add(p);
+        }
+
+        void addWhiteListEntry(String origin) {
+            if (schemeHostPath == null) {
+                return;
+            }
+            if (origin.equals("*")) {
+                schemeHostPath = null;
+                return;
+            }
+            Matcher m = Pattern.compile("^((\\*|[A-Za-z-]+):(//)?)?(\\*|((\\*\\.)?[^*/:]+))?(:(\\d+))?(/.*)?").matcher(origin);
+            if (!m.matches()) {
+                return;
+            }
+            String scheme = m.group(2);
+            String host = m.group(4);
+            if (("file".equals(scheme) || "content".equals(scheme)) && host == null) host = "*";
+            if (host == null) {
+                // URLPattern threw a NullPointerException, and the origin was skipped.
+                return;
+            }
+            if (scheme == null) {
+                addPattern("http", host, m.group(8), m.group(9));
+                addPattern("https", host, m.group(8), m.group(9));
+            } else {
+                addPattern(scheme, host, m.group(8), m.group(9));
+            }
+        }
+
+        boolean isUrlWhiteListed(String url) {
+            if (schemeHostPath == null) {
+                return true;
+            }
+            Uri uri = Uri.parse(url);
+            for (int i = 0; i < schemeHostPath.size(); i++) {
+                Pattern[] p = schemeHostPath.get(i);
+                Integer port = ports.get(i);
+                try {
+                    if ((p[0] == null || p[0].matcher(uri.getScheme()).matches())
+                            && (p[1] == null || p[1].matcher(uri.getHost()).matches())
+                            && (port == null || port.equals(uri.getPort()))
+                            && (p[2] == null || p[2].matcher(uri.getPath()).matches())) {
+                        return true;
+                    }
+                } catch (Exception e) {
+                    // A null part, as URLPattern.matches() treated it.
+                }
+            }
+            return false;
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    @Test
+    public void matchesLikeUrlPatterns() {
+        Random random = new Random(42);
+        int checks = 0;
+        int decidedByMatcher = 0;
+        for (int i = 0; i < 1000; i++) {
+            Whitelist whitelist = new Whitelist();
+            ReferenceWhitelist reference = new ReferenceWhitelist();
+            WhitelistMatcher matcher = new WhitelistMatcher();
+            StringBuilder origins = new StringBuilder();
+            int count = 1 + random.nextInt(6);
+            for (int j = 0; j < count; j++) {
+                String scheme = pick(random, SCHEMES);
+                String origin = (scheme.length() == 0 ? "" : scheme + "://") + pick(random, HOSTS) + pick(random, PORTS) + pick(random, PATHS);
+                if (random.nextInt(40) == 0) {
+                    origin = random.nextBoolean() ? "*" : "file:///*";
+                }
+                whitelist.addWhiteListEntry(origin, false);
+                reference.addWhiteListEntry(origin);
+                origins.append(' ').append(origin);
+            }
+            for (int j = 0; j < 300; j++) {
+                String url = pick(random, URL_SCHEMES) + pick(random, URL_AUTHORITIES) + pick(random, URL_HOSTS)
+                        + pick(random, URL_PORTS) + pick(random, URL_PATHS) + pick(random, URL_TAILS);
+                assertEquals(url + " against" + origins, reference.isUrlWhiteListed(url), whitelist.isUrlWhiteListed(url));
+                checks++;
+                if (matcher.match(url) != WhitelistMatcher.UNKNOWN) {
+                    decidedByMatcher++;
+                }
+            }
+        }
+        // Most URLs must not fall back to Uri, or the comparison above says
+        // little about WhitelistMatcher.
+        assertTrue(decidedByMatcher + " of " + checks, decidedByMatcher * 2 > checks);
+    }
+
+    @Test
+    public void seesEntriesAddedWhileMatching() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            final Whitelist whitelist = new Whitelist();
+            final int entries = 500;
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < entries; i++) {
+                        whitelist.addWhiteListEntry("https://h" + i + ".example.com/*", false);
+                    }
+                }
+            };
+            writer.start();
+            while (writer.isAlive()) {
+                whitelist.isUrlWhiteListed("https://h0.example.com/index.html");
+            }
+            writer.join();
+            for (int i = 0; i < entries; i++) {
+                assertTrue("h" + i, whitelist.isUrlWhiteListed("https://h" + i + ".example.com/index.html"));
+            }
+        }
+    }
+}
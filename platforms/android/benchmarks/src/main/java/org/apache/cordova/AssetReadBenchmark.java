@@ -0,0 +1,173 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads every text asset of a www directory, as the WebView's requests do on
+ * startup, from a zip laid out like an APK:
+ *
+ *   deflatedOriginals  deflated, as aapt packages text assets by default
+ *   storedOriginals    stored, as with cdvStoreTextAssetsUncompressed
+ *                      (see build-extras.gradle)
+ *
+ * Run it on the app's own www directory with -p www=<dir>; the default is
+ * the project's www when run from this directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AssetReadBenchmark {
+    private static final List<String> EXTENSIONS = Arrays.asList(".js", ".css", ".html", ".json", ".svg", ".map", ".txt");
+
+    /** The www directory, relative to the working directory. */
+    @Param({ "../../../www" })
+    public String www;
+
+    File apk;
+    ZipFile zip;
+    List<String> assets = new ArrayList<String>();
+    byte[] buf = new byte[8192];
+
+    @Setup
+    public void setUp() throws IOException {
+        apk = File.createTempFile("assets", ".apk");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(apk));
+        out.setLevel(Deflater.BEST_COMPRESSION);
+        try {
+            collect(new File(www), "www/", out);
+        } finally {
+            out.close();
+        }
+        zip = new ZipFile(apk);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        zip.close();
+        apk.delete();
+    }
+
+    private void collect(File dir, String prefix, ZipOutputStream out) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + dir);
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                collect(file, prefix + name + "/", out);
+                continue;
+            }
+            int dot = name.lastIndexOf('.');
+            if (dot < 0 || !EXTENSIONS.contains(name.substring(dot).toLowerCase(Locale.ENGLISH)) || file.length() < 1024) {
+                continue;
+            }
+            byte[] data = readFully(new FileInputStream(file));
+            String path = prefix + name;
+            assets.add(path);
+            out.putNextEntry(new ZipEntry(path));
+            out.write(data);
+            out.closeEntry();
+            stored(out, path + ".stored", data);
+        }
+    }
+
+    private static void stored(ZipOutputStream out, String path, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(path);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int count;
+        while ((count = in.read(buf)) >= 0) {
+            out.write(buf, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private long drain(InputStream in) throws IOException {
+        long n = 0;
+        int count;
+        while ((count = in.read(buf)) >= 0) {
+            n += count;
+        }
+        in.close();
+        return n;
+    }
+
+    @Benchmark
+    public long deflatedOriginals() throws IOException {
+        long n = 0;
+        for (String path : assets) {
+            n += drain(zip.getInputStream(zip.getEntry(path)));
+        }
+        return n;
+    }
+
+    @Benchmark
+    public long storedOriginals() throws IOException {
+        long n = 0;
+        for (String path : assets) {
+            n += drain(zip.getInputStream(zip.getEntry(path + ".stored")));
+        }
+        return n;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The time to encode a burst of results that piled up while the bridge was
+ * not being flushed, e.g. while a scan ran in the background. Each
+ * invocation drains a queue holding burstSize keep-callback results with a
+ * single popAndEncode() or popAndEncodeAsJs() call, as the bridge does once
+ * the WebView polls again. LinkedListMessageQueue is the baseline.
+ *
+ * The results alternate between strings and JSON, and are created afresh
+ * for each invocation so that no encoded lengths are cached beforehand.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBurstBenchmark {
+
+    private static PluginResult result(int i) throws JSONException {
+        PluginResult result;
+        if (i % 2 == 0) {
+            result = new PluginResult(PluginResult.Status.OK, "AAECAwQFBgcICQ==");
+        } else {
+            result = new PluginResult(PluginResult.Status.OK,
+                    new JSONObject().put("value", "AAECAwQFBgcICQ==").put("rssi", -60 - i % 30));
+        }
+        result.setKeepCallback(true);
+        return result;
+    }
+
+    @State(Scope.Thread)
+    public static class RingBurst {
+        @Param({ "1000", "10000", "100000" })
+        public int burstSize;
+
+        NativeToJsMessageQueue queue;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            queue = new NativeToJsMessageQueue();
+            queue.addBridgeMode(new NativeToJsMessageQueue.NoOpBridgeMode());
+            queue.setBridgeMode(0);
+        }
+
+        @Setup(Level.Invocation)
+        public void fill() throws JSONException {
+            for (int i = 0; i < burstSize; i++) {
+                queue.addPluginResult(result(i), "BLE" + (i % 8));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LinkedListBurst {
+        @Param({ "1000", "10000", "100000" })
+        public int burstSize;
+
+        final LinkedListMessageQueue queue = new LinkedListMessageQueue();
+
+        @Setup(Level.Invocation)
+        public void fill() throws JSONException {
+            for (int i = 0; i < burstSize; i++) {
+                queue.addPluginResult(result(i), "BLE" + (i % 8));
+            }
+        }
+    }
+
+    @Benchmark
+    public String ringPopAndEncode(RingBurst burst) {
+        return burst.queue.popAndEncode(false);
+    }
+
+    @Benchmark
+    public String ringPopAndEncodeAsJs(RingBurst burst) {
+        return burst.queue.popAndEncodeAsJs();
+    }
+
+    @Benchmark
+    public String linkedListPopAndEncode(LinkedListBurst burst) {
+        return burst.queue.popAndEncode(false);
+    }
+
+    @Benchmark
+    public String linkedListPopAndEncodeAsJs(LinkedListBurst burst) {
+        return burst.queue.popAndEncodeAsJs();
+    }
+}
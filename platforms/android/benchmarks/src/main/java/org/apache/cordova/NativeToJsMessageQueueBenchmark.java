@@ -0,0 +1,144 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+/**
+ * Keep-callback results enqueued by several producer threads and drained by
+ * one consumer calling popAndEncode(), as the bridge does. The ring-based
+ * NativeToJsMessageQueue runs with each overflow policy, and the
+ * LinkedListMessageQueue it replaced is the baseline.
+ *
+ * The producer score is the rate at which results are enqueued. The consumer
+ * score also counts calls that found the queue empty.
+ *
+ * Producers run 4 to 1 against the consumer by default; other ratios can be
+ * measured with e.g. -tg 1,1 or -tg 8,1.
+ *
+ * Producers back off while PENDING_LIMIT messages are queued, so that an
+ * unbounded queue cannot grow without limit when the consumer falls behind.
+ * They stop backing off once the iteration is over, since the consumer may
+ * already have stopped draining.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeToJsMessageQueueBenchmark {
+    static final int PENDING_LIMIT = 4096;
+    static final int CAPACITY = 1024;
+
+    private static final PluginResult RESULT = result();
+
+    private static PluginResult result() {
+        PluginResult r = new PluginResult(PluginResult.Status.OK, "{\"value\":\"AAECAwQFBgcICQ==\",\"rssi\":-60}");
+        r.setKeepCallback(true);
+        return r;
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        private static final AtomicInteger nextId = new AtomicInteger();
+
+        String callbackId;
+
+        @Setup
+        public void setUp() {
+            callbackId = "BLE" + nextId.incrementAndGet();
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Ring {
+        /** "unbounded", or the overflow policy of a queue bounded to CAPACITY. */
+        @Param({ "unbounded", "block", "drop-oldest", "coalesce" })
+        public String policy;
+
+        NativeToJsMessageQueue queue;
+
+        @Setup
+        public void setUp() {
+            if ("unbounded".equals(policy)) {
+                queue = new NativeToJsMessageQueue();
+            } else {
+                queue = new NativeToJsMessageQueue(CAPACITY,
+                        NativeToJsMessageQueue.OverflowPolicy.fromString(policy, null));
+            }
+            queue.addBridgeMode(new NativeToJsMessageQueue.NoOpBridgeMode());
+            queue.setBridgeMode(0);
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Baseline {
+        final LinkedListMessageQueue queue = new LinkedListMessageQueue();
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(4)
+    public void ringProduce(Ring ring, Producer producer, Control control) {
+        while (ring.queue.size() >= PENDING_LIMIT && !control.stopMeasurement) {
+            Thread.yield();
+        }
+        ring.queue.addPluginResult(RESULT, producer.callbackId);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public String ringConsume(Ring ring) {
+        return ring.queue.popAndEncode(false);
+    }
+
+    @Benchmark
+    @Group("linkedList")
+    @GroupThreads(4)
+    public void linkedListProduce(Baseline baseline, Producer producer, Control control) {
+        while (baseline.queue.size() >= PENDING_LIMIT && !control.stopMeasurement) {
+            Thread.yield();
+        }
+        baseline.queue.addPluginResult(RESULT, producer.callbackId);
+    }
+
+    @Benchmark
+    @Group("linkedList")
+    @GroupThreads(1)
+    public String linkedListConsume(Baseline baseline) {
+        return baseline.queue.popAndEncode(false);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The shouldAllowRequest() calls of one page load: PAGE_ASSETS distinct
+ * URLs, checked by a plugin against a whitelist of WHITELIST_ORIGINS
+ * origins, with most assets matching one of the last origins.
+ *
+ * "repeatedLoad" loads the page again with the decisions of the previous
+ * load still cached, which is what the cache is for. "firstLoad" invalidates
+ * the cache before every request, so each one asks the plugins and the
+ * whitelist; apart from the cache bookkeeping this is the cost without it.
+ *
+ * Scores are per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PageLoadBenchmark {
+    static final int PAGE_ASSETS = 300;
+    static final int WHITELIST_ORIGINS = 31;
+
+    /** Answers shouldAllowRequest() from a whitelist, as the whitelist plugin does. */
+    static class WhitelistPlugin extends CordovaPlugin {
+        final Whitelist whitelist = new Whitelist();
+
+        @Override
+        public Boolean shouldAllowRequest(String url) {
+            return whitelist.isUrlWhiteListed(url) ? Boolean.TRUE : null;
+        }
+    }
+
+    PluginManager pluginManager;
+    String[] urls;
+
+    @Setup
+    public void setUp() {
+        WhitelistPlugin plugin = new WhitelistPlugin();
+        for (int i = 0; i < WHITELIST_ORIGINS - 1; i++) {
+            plugin.whitelist.addWhiteListEntry("https://*.cdn" + i + ".example.com/static/*", false);
+        }
+        plugin.whitelist.addWhiteListEntry("https://assets.example.org/*", false);
+        pluginManager = new PluginManager(webView(), proxy(CordovaInterface.class, null),
+                Collections.singletonList(new PluginEntry("Whitelist", plugin)));
+
+        urls = new String[PAGE_ASSETS];
+        for (int i = 0; i < PAGE_ASSETS; i++) {
+            if (i % 10 == 0) {
+                urls[i] = "https://img.cdn" + (WHITELIST_ORIGINS - 2) + ".example.com/static/img" + i + ".png";
+            } else {
+                urls[i] = "https://assets.example.org/app/module" + i + ".js?v=5";
+            }
+        }
+    }
+
+    private static CordovaWebView webView() {
+        return proxy(CordovaWebView.class, new CordovaPreferences());
+    }
+
+    // Every method returns null, except getPreferences().
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, final CordovaPreferences preferences) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("getPreferences") ? preferences : null;
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_ASSETS)
+    public void repeatedLoad(Blackhole bh) {
+        for (String url : urls) {
+            bh.consume(pluginManager.shouldAllowRequest(url));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_ASSETS)
+    public void firstLoad(Blackhole bh) {
+        for (String url : urls) {
+            pluginManager.invalidateUrlPolicyCache();
+            bh.consume(pluginManager.shouldAllowRequest(url));
+        }
+    }
+}
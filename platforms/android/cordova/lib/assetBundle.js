@@ -0,0 +1,123 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+var fs = require('fs');
+var path = require('path');
+var events = require('cordova-common').events;
+
+var MAGIC = 0x4350414B; // "CPAK"
+var VERSION = 1;
+var HEADER_SIZE = 16;
+var ENTRY_SIZE = 16;
+var PAGE_SIZE = 4096;
+
+/**
+ * Packs the files of the platform's www directory into a single archive
+ *   that AssetBundle memory-maps, and removes the packed files.
+ *
+ * Layout (big-endian):
+ *   header   magic, version, entry count, total size (4 ints)
+ *   index    per asset, sorted by the UTF-8 bytes of its path: path offset,
+ *            path length, data offset, data length (4 ints)
+ *   paths    UTF-8 asset paths ("www/...")
+ *   data     each asset's bytes, starting on a page boundary
+ *
+ * @param   {String}  www     The platform's www directory (assets/www)
+ * @param   {String}  bundle  The archive to write; it must be stored
+ *   uncompressed in the APK
+ */
+module.exports.pack = function (www, bundle) {
+    var files = [];
+    walk(www, function (file) {
+        var relative = path.relative(www, file).split(path.sep).join('/');
+        files.push({ file: file, key: Buffer.from('www/' + relative, 'utf-8') });
+    });
+    files.sort(function (a, b) {
+        return Buffer.compare(a.key, b.key);
+    });
+
+    var pathsOffset = HEADER_SIZE + files.length * ENTRY_SIZE;
+    var pathsSize = files.reduce(function (n, f) { return n + f.key.length; }, 0);
+    var offset = align(pathsOffset + pathsSize);
+    files.forEach(function (f) {
+        f.size = fs.statSync(f.file).size;
+        f.offset = offset;
+        offset = align(offset + f.size);
+    });
+
+    var head = Buffer.alloc(align(pathsOffset + pathsSize));
+    head.writeInt32BE(MAGIC, 0);
+    head.writeInt32BE(VERSION, 4);
+    head.writeInt32BE(files.length, 8);
+    head.writeInt32BE(offset, 12);
+    var pathOffset = pathsOffset;
+    files.forEach(function (f, i) {
+        var entry = HEADER_SIZE + i * ENTRY_SIZE;
+        head.writeInt32BE(pathOffset, entry);
+        head.writeInt32BE(f.key.length, entry + 4);
+        head.writeInt32BE(f.offset, entry + 8);
+        head.writeInt32BE(f.size, entry + 12);
+        f.key.copy(head, pathOffset);
+        pathOffset += f.key.length;
+    });
+
+    var fd = fs.openSync(bundle, 'w');
+    try {
+        fs.writeSync(fd, head, 0, head.length, 0);
+        files.forEach(function (f) {
+            var data = fs.readFileSync(f.file);
+            fs.writeSync(fd, data, 0, data.length, f.offset);
+        });
+        fs.ftruncateSync(fd, offset);
+    } finally {
+        fs.closeSync(fd);
+    }
+    files.forEach(function (f) {
+        fs.unlinkSync(f.file);
+    });
+    removeEmptyDirs(www);
+    events.emit('verbose', 'Packed ' + files.length + ' assets into "' + bundle + '" (' + offset + ' bytes)');
+};
+
+function align(n) {
+    return Math.ceil(n / PAGE_SIZE) * PAGE_SIZE;
+}
+
+function walk(dir, callback) {
+    fs.readdirSync(dir).forEach(function (name) {
+        var file = path.join(dir, name);
+        if (fs.statSync(file).isDirectory()) {
+            walk(file, callback);
+        } else {
+            callback(file);
+        }
+    });
+}
+
+function removeEmptyDirs(dir) {
+    fs.readdirSync(dir).forEach(function (name) {
+        var sub = path.join(dir, name);
+        if (fs.statSync(sub).isDirectory()) {
+            removeEmptyDirs(sub);
+            if (fs.readdirSync(sub).length === 0) {
+                fs.rmdirSync(sub);
+            }
+        }
+    });
+}
@@ -0,0 +1,136 @@
+/**
+    Licensed to the Apache Software Foundation (ASF) under one
+    or more contributor license agreements.  See the NOTICE file
+    distributed with this work for additional information
+    regarding copyright ownership.  The ASF licenses this file
+    to you under the Apache License, Version 2.0 (the
+    "License"); you may not use this file except in compliance
+    with the License.  You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+*/
+
+var fs = require('fs');
+var path = require('path');
+var shell = require('shelljs');
+var events = require('cordova-common').events;
+var xmlHelpers = require('cordova-common').xmlHelpers;
+
+var GENERATED_CLASS = 'GeneratedPluginFactories';
+var GENERATED_PACKAGE = 'org.apache.cordova';
+
+/**
+ * Writes src/org/apache/cordova/GeneratedPluginFactories.java, which registers
+ *   a PluginFactory for every plugin class named in config.xml so that
+ *   PluginManager does not have to create plugins through reflection.
+ *
+ * Only classes whose sources are part of the project and that can be created
+ *   with a public no-arg constructor get a factory; other plugins, e.g. from
+ *   jars or libraries, are still created through reflection.
+ *
+ * @param   {String}  configXml  Path to the platform's config.xml
+ * @param   {String}  root       The platform's root directory
+ */
+module.exports.generate = function (configXml, root) {
+    var doc = xmlHelpers.parseElementtreeSync(configXml);
+    var classes = [];
+    doc.findall('feature').forEach(function (feature) {
+        feature.findall('param').forEach(function (param) {
+            var className = param.attrib.value;
+            if (param.attrib.name !== 'android-package' || !className ||
+                    classes.indexOf(className) >= 0) {
+                return;
+            }
+            var source = readSource(root, className);
+            if (source === null) {
+                events.emit('verbose', 'No source for plugin class ' + className +
+                    '; it will be created through reflection');
+                return;
+            }
+            if (!hasPublicNoArgConstructor(source, className)) {
+                events.emit('verbose', 'Plugin class ' + className + ' has no public no-arg constructor' +
+                    '; it will be created through reflection');
+                return;
+            }
+            classes.push(className);
+        });
+    });
+
+    var destFile = path.join(root, 'src', GENERATED_PACKAGE.replace(/\./g, '/'), GENERATED_CLASS + '.java');
+    shell.mkdir('-p', path.dirname(destFile));
+    fs.writeFileSync(destFile, javaSource(classes), 'utf-8');
+    events.emit('verbose', 'Wrote plugin factories for ' + classes.length + ' plugin classes to "' + destFile + '"');
+};
+
+function readSource(root, className) {
+    var relative = className.replace(/\./g, '/') + '.java';
+    var candidates = [path.join(root, 'src', relative), path.join(root, 'CordovaLib', 'src', relative)];
+    for (var i = 0; i < candidates.length; i++) {
+        if (fs.existsSync(candidates[i])) {
+            return fs.readFileSync(candidates[i], 'utf-8');
+        }
+    }
+    return null;
+}
+
+// Whether "new className()" compiles from another package: the class is a
+//   public, concrete top-level class, and either declares no constructor or
+//   declares a public one without parameters.
+function hasPublicNoArgConstructor(source, className) {
+    var simpleName = className.substring(className.lastIndexOf('.') + 1);
+    // Drop comments and string literals so that they cannot match.
+    var code = source.replace(/\/\*[\s\S]*?\*\/|\/\/.*$|"(?:\\.|[^"\\\n])*"/gm, function (token) {
+        return token.charAt(0) === '"' ? '""' : ' ';
+    });
+    var declaration = new RegExp('((?:\\b(?:public|abstract|final|strictfp)\\s+)*)class\\s+' + simpleName + '\\b').exec(code);
+    if (!declaration || !/\bpublic\b/.test(declaration[1]) || /\babstract\b/.test(declaration[1])) {
+        return false;
+    }
+    var constructor = new RegExp('((?:\\b(?:public|protected|private)\\s+)?)(?:<[^>]*>\\s*)?\\b' + simpleName + '\\s*\\(([^)]*)\\)\\s*(?:throws\\b[^{;]*)?\\{', 'g');
+    var found = false;
+    var match;
+    while ((match = constructor.exec(code)) !== null) {
+        // Skip "new simpleName(...) {", an anonymous subclass.
+        if (/\bnew\s*$/.test(code.substring(0, match.index))) {
+            continue;
+        }
+        found = true;
+        if (/\bpublic\b/.test(match[1]) && match[2].trim() === '') {
+            return true;
+        }
+    }
+    return !found;
+}
+
+function javaSource(classes) {
+    var lines = [
+        '// Generated by "cordova prepare" from res/xml/config.xml. Do not edit.',
+        'package ' + GENERATED_PACKAGE + ';',
+        '',
+        'final class ' + GENERATED_CLASS + ' {',
+        '    static {'
+    ];
+    classes.forEach(function (className) {
+        lines.push(
+            '        PluginManager.registerPluginFactory("' + className + '", new PluginFactory() {',
+            '            public CordovaPlugin newInstance() {',
+            '                return new ' + className + '();',
+            '            }',
+            '        });');
+    });
+    lines.push(
+        '    }',
+        '',
+        '    private ' + GENERATED_CLASS + '() {',
+        '    }',
+        '}',
+        '');
+    return lines.join('\n');
+}
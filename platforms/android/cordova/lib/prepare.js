@@ -23,6 +23,8 @@ var path = require('path');
 var shell = require('shelljs');
 var events = require('cordova-common').events;
 var AndroidManifest = require('./AndroidManifest');
+var pluginFactories = require('./pluginFactories');
+var assetBundle = require('./assetBundle');
 var xmlHelpers = require('cordova-common').xmlHelpers;
 var CordovaError = require('cordova-common').CordovaError;
 var ConfigParser = require('cordova-common').ConfigParser;
@@ -34,8 +36,20 @@ module.exports.prepare = function (cordovaProject) {
     this._config = updateConfigFilesFrom(cordovaProject.projectConfig,
         this._munger, this.locations);
 
+    // Plugin classes are read from the merged config.xml.
+    pluginFactories.generate(this.locations.configXml, this.root);
+
     // Update own www dir with project's www assets and plugins' assets and js-files
     return Q.when(updateWwwFrom(cordovaProject, this.locations))
+    .then(function () {
+        // Read by AssetBundle when the same preference is set at runtime.
+        var bundle = path.join(self.locations.www, '..', 'www.pack');
+        if (self._config.getPreference('AssetBundle', 'android') === 'true') {
+            assetBundle.pack(self.locations.www, bundle);
+        } else {
+            shell.rm('-f', bundle);
+        }
+    })
     .then(function () {
         // update project according to config.xml changes.
         return updateProjectAccordingTo(self._config, self.locations);
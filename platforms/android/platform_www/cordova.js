@@ -897,7 +897,11 @@ var cordova = require('cordova'),
         // For the ONLINE_EVENT to be viable, it would need to intercept all event
         // listeners (both through addEventListener and window.ononline) as well
         // as set the navigator property itself.
-        ONLINE_EVENT: 2
+        ONLINE_EVENT: 2,
+        // Like ONLINE_EVENT, but batches messages into one flush per
+        // 4-16ms window while the native side is sending many of them.
+        // Only available with the system WebView engine.
+        ADAPTIVE: 3
     },
     jsToNativeBridgeMode,  // Set lazily.
     nativeToJsBridgeMode = nativeToJsModes.ONLINE_EVENT,
@@ -906,6 +910,10 @@ var cordova = require('cordova'),
 
 var messagesFromNative = [];
 var isProcessing = false;
+// Flat list of (service, action, callbackId, argsJson) tuples collected
+// inside androidExec.batch().
+var pendingBatch = [];
+var batchDepth = 0;
 var resolvedPromise = typeof Promise == 'undefined' ? null : Promise.resolve();
 var nextTick = resolvedPromise ? function(fn) { resolvedPromise.then(fn); } : function(fn) { setTimeout(fn); };
 
@@ -937,6 +945,11 @@ function androidExec(success, fail, service, action, args) {
         cordova.callbacks[callbackId] = {success:success, fail:fail};
     }
 
+    if (batchDepth > 0 && jsToNativeBridgeMode == jsToNativeModes.JS_OBJECT && nativeApiProvider.get().execBatch) {
+        pendingBatch.push(service, action, callbackId, argsJson);
+        return;
+    }
+
     var msgs = nativeApiProvider.get().exec(bridgeSecret, service, action, callbackId, argsJson);
     // If argsJson was received by Java as null, try again with the PROMPT bridge mode.
     // This happens in rare circumstances, such as when certain Unicode characters are passed over the bridge on a Galaxy S2.  See CB-2666.
@@ -951,6 +964,48 @@ function androidExec(success, fail, service, action, args) {
     }
 }
 
+/**
+ * Runs fn, sending all the exec() calls it makes to native in one bridge
+ * crossing once it returns. Calls are dispatched in order, and a call that
+ * fails natively does not affect the others. Falls back to one crossing per
+ * call when the bridge does not support batching.
+ */
+androidExec.batch = function(fn) {
+    batchDepth++;
+    try {
+        fn();
+    } finally {
+        if (--batchDepth === 0) {
+            flushBatch();
+        }
+    }
+};
+
+function flushBatch() {
+    var calls = pendingBatch;
+    if (calls.length === 0) {
+        return;
+    }
+    pendingBatch = [];
+    var msgs = nativeApiProvider.get().execBatch(bridgeSecret, JSON.stringify(calls));
+    // See CB-2666 in androidExec: resend the calls one by one through the PROMPT bridge.
+    // "@Invalid batch." means the batch arrived corrupted in the same way.
+    if (msgs === "@Null arguments." || msgs === "@Invalid batch.") {
+        androidExec.setJsToNativeBridgeMode(jsToNativeModes.PROMPT);
+        for (var i = 0; i < calls.length; i += 4) {
+            var callMsgs = nativeApiProvider.get().exec(bridgeSecret, calls[i], calls[i + 1], calls[i + 2], calls[i + 3]);
+            if (callMsgs) {
+                messagesFromNative.push(callMsgs);
+            }
+        }
+        androidExec.setJsToNativeBridgeMode(jsToNativeModes.JS_OBJECT);
+        nextTick(processMessages);
+    } else if (msgs) {
+        messagesFromNative.push(msgs);
+        nextTick(processMessages);
+    }
+}
+
 androidExec.init = function() {
     bridgeSecret = +prompt('', 'gap_init:' + nativeToJsBridgeMode);
     channel.onNativeReady.fire();
@@ -18,6 +18,27 @@ module.exports = [
         "clobbers": [
             "device"
         ]
+    },
+    {
+        "file": "plugins/cordova-plugin-reading-store/www/readingstore.js",
+        "id": "cordova-plugin-reading-store.readingstore",
+        "clobbers": [
+            "cordova.plugins.readingStore"
+        ]
+    },
+    {
+        "file": "plugins/cordova-plugin-upload-queue/www/uploadqueue.js",
+        "id": "cordova-plugin-upload-queue.uploadqueue",
+        "clobbers": [
+            "cordova.plugins.uploadQueue"
+        ]
+    },
+    {
+        "file": "plugins/cordova-plugin-mqtt/www/mqtt.js",
+        "id": "cordova-plugin-mqtt.mqtt",
+        "clobbers": [
+            "cordova.plugins.mqtt"
+        ]
     }
 ];
 module.exports.metadata = 
@@ -26,7 +47,10 @@ module.exports.metadata =
     "cordova-plugin-whitelist": "1.2.1",
     "cordova-plugin-console": "1.0.3",
     "cordova-plugin-ble": "1.2.0",
-    "cordova-plugin-device": "1.1.2"
+    "cordova-plugin-device": "1.1.2",
+    "cordova-plugin-reading-store": "0.1.0",
+    "cordova-plugin-upload-queue": "0.1.0",
+    "cordova-plugin-mqtt": "0.1.0"
 };
 // BOTTOM OF METADATA
 });
\ No newline at end of file
@@ -0,0 +1,66 @@
+cordova.define("cordova-plugin-mqtt.mqtt", function(require, exports, module) {
+var exec = require('cordova/exec');
+
+/**
+ * Publishes BLE notification data to an MQTT broker from native code, so
+ * samples do not pass through JavaScript and publishing continues while
+ * the app is in the background.
+ * @namespace
+ */
+var mqtt = {};
+
+/**
+ * @typedef {Object} MqttOptions
+ * @property {string} host - Broker host.
+ * @property {number} port - Broker port, default 1883.
+ * @property {string} clientId
+ * @property {string} userName - Optional.
+ * @property {string} password - Optional.
+ * @property {string} topic - Topic to publish to, e.g.
+ * 'iot-2/evt/iotsensor/fmt/json'.
+ * @property {number} keepAlive - Keep alive interval in seconds, default 60.
+ * 0 disables keep alive.
+ * @property {number} publishTimeout - Time in ms to wait for the broker to
+ * acknowledge a message when the window is full, before reconnecting,
+ * default 30000.
+ * @property {number} batchInterval - Maximum time in ms samples are held
+ * before being published, default 1000.
+ * @property {number} maxBatchSamples - Maximum samples per message,
+ * default 200.
+ * @property {number} window - Maximum unacknowledged messages, default 16.
+ */
+
+/**
+ * Connects to the broker and starts publishing the data of every BLE
+ * notification, batched and at QoS 1. Unacknowledged messages are kept
+ * on disk and resent after a reconnect or restart.
+ * @param {MqttOptions} options
+ * @param {function} success
+ * @param {function(string)} fail
+ */
+mqtt.start = function(options, success, fail) {
+    exec(success, fail, 'Mqtt', 'start', [options]);
+};
+
+/**
+ * Stops publishing and disconnects.
+ * @param {function} success
+ * @param {function(string)} fail
+ */
+mqtt.stop = function(success, fail) {
+    exec(success, fail, 'Mqtt', 'stop', []);
+};
+
+/**
+ * Returns connected, inflight, queued, published, acknowledged,
+ * droppedBatches and lastError.
+ * @param {function(Object)} success
+ * @param {function(string)} fail
+ */
+mqtt.status = function(success, fail) {
+    exec(success, fail, 'Mqtt', 'status', []);
+};
+
+module.exports = mqtt;
+
+});
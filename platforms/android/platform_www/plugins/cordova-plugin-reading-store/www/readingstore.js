@@ -0,0 +1,91 @@
+cordova.define("cordova-plugin-reading-store.readingstore", function(require, exports, module) {
+var exec = require('cordova/exec');
+
+/**
+ * Native time-series store of sensor readings, persisted on the device.
+ * Readings use the same shape as the app's Reading interface:
+ * { policyNumber, date, isClient, sensorData: [{ name, systemId, data }] }.
+ * Calls run one at a time in the order they were made, so a summary or
+ * query made after an append includes the appended reading. Only readings
+ * appended on this device are stored.
+ * @namespace
+ */
+var readingStore = {};
+
+/**
+ * Stores a reading.
+ * @param {Object} reading
+ * @param {function} success
+ * @param {function(string)} fail
+ */
+readingStore.append = function(reading, success, fail) {
+    exec(success, fail, 'ReadingStore', 'append', [reading]);
+};
+
+/**
+ * Stores several readings in one call.
+ * @param {Object[]} readings
+ * @param {function} success
+ * @param {function(string)} fail
+ */
+readingStore.appendAll = function(readings, success, fail) {
+    exec(success, fail, 'ReadingStore', 'appendAll', [readings]);
+};
+
+/**
+ * Returns the readings of a policy, sorted by date.
+ * @param {string} policyNumber - null for all policies.
+ * @param {number} from - Earliest date in ms, or null.
+ * @param {number} to - Latest date in ms, or null.
+ * @param {function(Object[])} success
+ * @param {function(string)} fail
+ */
+readingStore.query = function(policyNumber, from, to, success, fail) {
+    exec(success, fail, 'ReadingStore', 'query', [policyNumber, from, to]);
+};
+
+/**
+ * Returns running aggregates of a policy's readings: readings, firstDate,
+ * lastDate and, per sensor, count and the count/min/max/mean of
+ * ambientTemperature, targetTemperature and relativeHumidity. Summaries are
+ * maintained as readings are stored, so this does not scan the history.
+ * @param {string} policyNumber - null for an array of all summaries.
+ * @param {function(Object)} success - Called with null if the policy has no
+ * readings.
+ * @param {function(string)} fail
+ */
+readingStore.summary = function(policyNumber, success, fail) {
+    exec(success, fail, 'ReadingStore', 'summary', [policyNumber]);
+};
+
+/**
+ * Moves recently stored readings into compact storage. Can be called
+ * when the app is idle, e.g. on pause.
+ * @param {function(number)} success - Called with the number of rows moved.
+ * @param {function(string)} fail
+ */
+readingStore.compact = function(success, fail) {
+    exec(success, fail, 'ReadingStore', 'compact', []);
+};
+
+/**
+ * Deletes all stored readings.
+ * @param {function} success
+ * @param {function(string)} fail
+ */
+readingStore.clear = function(success, fail) {
+    exec(success, fail, 'ReadingStore', 'clear', []);
+};
+
+/**
+ * Returns storage statistics: logRows, segments, segmentRows, strings.
+ * @param {function(Object)} success
+ * @param {function(string)} fail
+ */
+readingStore.stats = function(success, fail) {
+    exec(success, fail, 'ReadingStore', 'stats', []);
+};
+
+module.exports = readingStore;
+
+});
@@ -25,11 +25,14 @@ import android.bluetooth.le.*;
 import android.bluetooth.BluetoothAdapter.LeScanCallback;
 import android.content.*;
 import android.app.Activity;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Iterator;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.*;
 import android.util.Base64;
@@ -63,6 +66,42 @@ public class BLE extends CordovaPlugin implements LeScanCallback
 	// Monotonically incrementing key to the Gatt map.
 	int mNextGattHandle = 1;
 
+	// Used by startBackgroundCollection(). Receives the backlog summary
+	// when the app returns to the foreground.
+	private CallbackContext mBackgroundCallbackContext;
+
+	// Options for the foreground service notification.
+	private String mBackgroundTitle;
+	private String mBackgroundText;
+
+	// Notification data received while this is true is written to
+	// mBackgroundLog instead of being sent to JavaScript.
+	private volatile boolean mCollectingInBackground = false;
+
+	private BackgroundSampleLog mBackgroundLog;
+
+	// Receives notification data in native code, e.g. for publishing
+	// without a round trip through JavaScript.
+	public interface NotificationListener
+	{
+		// Called on a Binder thread. Must not block, and must copy value
+		// if it is kept after returning.
+		void onNotification(String address, String characteristicUuid, byte[] value);
+	}
+
+	private static final CopyOnWriteArrayList<NotificationListener> sNotificationListeners =
+		new CopyOnWriteArrayList<NotificationListener>();
+
+	public static void addNotificationListener(NotificationListener listener)
+	{
+		sNotificationListeners.addIfAbsent(listener);
+	}
+
+	public static void removeNotificationListener(NotificationListener listener)
+	{
+		sNotificationListeners.remove(listener);
+	}
+
 	// Called each time cordova.js is loaded.
 	@Override
 	public void initialize(final CordovaInterface cordova, CordovaWebView webView)
@@ -76,6 +115,13 @@ public class BLE extends CordovaPlugin implements LeScanCallback
 				new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
 			mRegisteredReceiver = true;
 		}
+
+		// A collection service that was restarted after the process was
+		// killed is collecting on its own; the app is back, so end it. Its
+		// samples stay in the log until startBackgroundCollection().
+		if(!mCollectingInBackground) {
+			BackgroundCollectionService.stop(mContext);
+		}
 	}
 
 	// Handles JavaScript-to-native function calls.
@@ -104,6 +150,10 @@ public class BLE extends CordovaPlugin implements LeScanCallback
 		else if("testCharConversion".equals(action)) { testCharConversion(args, callbackContext); return true; }
 		else if("reset".equals(action)) { reset(args, callbackContext); return true; }
 
+		else if("startBackgroundCollection".equals(action)) { startBackgroundCollection(args, callbackContext); return true; }
+		else if("stopBackgroundCollection".equals(action)) { stopBackgroundCollection(args, callbackContext); return true; }
+		else if("clearBackgroundSamples".equals(action)) { clearBackgroundSamples(args, callbackContext); return true; }
+
 		else if("startAdvertise".equals(action)) { startAdvertise(args, callbackContext); return true; }
 		else if("stopAdvertise".equals(action)) { stopAdvertise(args, callbackContext); return true; }
 
@@ -150,6 +200,73 @@ public class BLE extends CordovaPlugin implements LeScanCallback
 			mGattServer.close();
 			mGattServer = null;
 		}
+		endBackgroundCollection();
+		mBackgroundCallbackContext = null;
+	}
+
+	// When background collection is enabled, notification data is diverted
+	// to the sample log while the Activity is paused.
+	@Override
+	public void onPause(boolean multitasking)
+	{
+		if(mBackgroundCallbackContext == null)
+			return;
+		try {
+			mBackgroundLog.open();
+		} catch(IOException e) {
+			e.printStackTrace();
+			mBackgroundCallbackContext.error("Could not open background sample log: " + e.getMessage());
+			mBackgroundCallbackContext = null;
+			return;
+		}
+		BackgroundCollectionService.start(mContext, mBackgroundTitle, mBackgroundText,
+			notificationTargets());
+		mCollectingInBackground = true;
+	}
+
+	@Override
+	public void onResume(boolean multitasking)
+	{
+		if(!mCollectingInBackground)
+			return;
+		endBackgroundCollection();
+		try {
+			keepCallback(mBackgroundCallbackContext, mBackgroundLog.takeSummary());
+		} catch(JSONException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void onDestroy()
+	{
+		endBackgroundCollection();
+	}
+
+	// The characteristics with notifications enabled, as "address/uuid",
+	// for the service to reconnect to if the process is killed.
+	private ArrayList<String> notificationTargets()
+	{
+		ArrayList<String> targets = new ArrayList<String>();
+		if(mConnectedDevices == null)
+			return targets;
+		for(GattHandler gh : mConnectedDevices.values()) {
+			String address = gh.mGatt.getDevice().getAddress();
+			for(BluetoothGattCharacteristic c : gh.mNotifications.keySet()) {
+				targets.add(address + "/" + c.getUuid().toString());
+			}
+		}
+		return targets;
+	}
+
+	// Stops diverting notifications and releases the foreground service.
+	private void endBackgroundCollection()
+	{
+		if(!mCollectingInBackground)
+			return;
+		mCollectingInBackground = false;
+		BackgroundCollectionService.stop(mContext);
+		mBackgroundLog.close();
 	}
 
 	// Possibly asynchronous.
@@ -202,6 +319,15 @@ public class BLE extends CordovaPlugin implements LeScanCallback
 		}
 	}
 
+	private void keepCallback(final CallbackContext callbackContext, JsonWriter message)
+	{
+		PluginResult r = new PluginResult(PluginResult.Status.OK, message);
+		r.setKeepCallback(true);
+		if (callbackContext != null) {
+			callbackContext.sendPluginResult(r);
+		}
+	}
+
 	private void keepCallback(final CallbackContext callbackContext, String message)
 	{
 		PluginResult r = new PluginResult(PluginResult.Status.OK, message);
@@ -262,17 +388,27 @@ public class BLE extends CordovaPlugin implements LeScanCallback
 		if(mScanCallbackContext == null) {
 			return;
 		}
-		try {
-			//System.out.println("onLeScan "+device.getAddress()+" "+rssi+" "+device.getName());
-			JSONObject o = new JSONObject();
-			o.put("address", device.getAddress());
-			o.put("rssi", rssi);
-			o.put("name", device.getName());
-			o.put("scanRecord", Base64.encodeToString(scanRecord, Base64.NO_WRAP));
-			keepCallback(mScanCallbackContext, o);
-		} catch(JSONException e) {
-			mScanCallbackContext.error(e.toString());
+		//System.out.println("onLeScan "+device.getAddress()+" "+rssi+" "+device.getName());
+		CallbackContext cc = mScanCallbackContext;
+		if(cc == null) {
+			return;
+		}
+		// Scan results arrive at a high rate; reuse pooled results. Only the
+		// latest advertisement (and RSSI) of each device matters, so one that
+		// is still queued for JavaScript is replaced.
+		PluginResult r = cc.obtainResult(PluginResult.Status.OK);
+		r.setLatestValueKey(device.getAddress());
+		JsonWriter w = r.jsonWriter().beginObject()
+			.name("address").value(device.getAddress())
+			.name("rssi").value(rssi);
+		// Devices without a name have no "name" key, as with JSONObject.
+		String name = device.getName();
+		if(name != null) {
+			w.name("name").value(name);
 		}
+		w.name("scanRecord").value(Base64.encodeToString(scanRecord, Base64.NO_WRAP))
+			.endObject();
+		cc.sendPluginResult(r);
 	}
 
 	// API implementation.
@@ -701,6 +837,54 @@ public class BLE extends CordovaPlugin implements LeScanCallback
 		cc.error("Unknown state: "+state);
 	}
 
+	// API implementation.
+	private void startBackgroundCollection(final CordovaArgs args, final CallbackContext cc)
+	{
+		JSONObject options = args.optJSONObject(0);
+		if(options != null) {
+			mBackgroundTitle = options.optString("notificationTitle", null);
+			mBackgroundText = options.optString("notificationText", null);
+		}
+		mBackgroundLog = BackgroundSampleLog.get(mContext);
+		mBackgroundCallbackContext = cc;
+		if(mBackgroundLog.hasSamples()) {
+			// Collected by the service after an earlier process was killed.
+			try {
+				keepCallback(cc, mBackgroundLog.takeSummary());
+			} catch(JSONException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		PluginResult r = new PluginResult(PluginResult.Status.NO_RESULT);
+		r.setKeepCallback(true);
+		cc.sendPluginResult(r);
+	}
+
+	// API implementation.
+	private void stopBackgroundCollection(final CordovaArgs args, final CallbackContext cc)
+	{
+		endBackgroundCollection();
+		if(mBackgroundCallbackContext != null) {
+			mBackgroundCallbackContext.success();
+			mBackgroundCallbackContext = null;
+		}
+		cc.success();
+	}
+
+	// API implementation.
+	private void clearBackgroundSamples(final CordovaArgs args, final CallbackContext cc)
+	{
+		if(mCollectingInBackground) {
+			cc.error("Background collection in progress");
+			return;
+		}
+		if(mBackgroundLog != null) {
+			mBackgroundLog.clear();
+		}
+		cc.success();
+	}
+
 	// Receives notification about Bluetooth power on and off. Used by reset().
 	class BluetoothStateReceiver extends BroadcastReceiver
 	{
@@ -788,15 +972,12 @@ public class BLE extends CordovaPlugin implements LeScanCallback
 		public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState)
 		{
 			if(status == BluetoothGatt.GATT_SUCCESS) {
-				try {
-					JSONObject o = new JSONObject();
-					o.put("deviceHandle", mHandle);
-					o.put("state", newState);
-					keepCallback(mConnectContext, o);
-				} catch(JSONException e) {
-					e.printStackTrace();
-					assert(false);
-				}
+				JsonWriter w = new JsonWriter(32);
+				w.beginObject()
+					.name("deviceHandle").value(mHandle)
+					.name("state").value(newState)
+					.endObject();
+				keepCallback(mConnectContext, w);
 			} else {
 				mConnectContext.error(status);
 			}
@@ -907,8 +1088,21 @@ public class BLE extends CordovaPlugin implements LeScanCallback
 		@Override
 		public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic c)
 		{
+			for(NotificationListener l : sNotificationListeners) {
+				l.onNotification(g.getDevice().getAddress(), c.getUuid().toString(), c.getValue());
+			}
+			if(mCollectingInBackground) {
+				mBackgroundLog.append(g.getDevice().getAddress(), c.getUuid().toString(), c.getValue());
+				return;
+			}
 			CallbackContext cc = mNotifications.get(c);
-			keepCallback(cc, c.getValue());
+			if(cc != null) {
+				// Only the latest value is shown; the background log and
+				// native listeners above receive every notification.
+				PluginResult r = cc.obtainResult(PluginResult.Status.OK).setMessage(c.getValue());
+				r.setLatestValueOnly(true);
+				cc.sendPluginResult(r);
+			}
 		}
 	}
 
@@ -0,0 +1,89 @@
+package com.pointsource.mqtt;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaArgs;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.LOG;
+import org.json.JSONException;
+
+/**
+ * Exposes {@link MqttPublisher} to JavaScript as cordova.plugins.mqtt.
+ *
+ * Publishing is not paused with the activity, so it continues while the
+ * app is in the background for as long as the process runs, e.g. during
+ * BLE background collection.
+ */
+public class MqttPlugin extends CordovaPlugin {
+    private static final String TAG = "Mqtt";
+
+    private InflightStore inflight;
+    private MqttPublisher publisher;
+
+    @Override
+    public void initialize(CordovaInterface cordova, CordovaWebView webView) {
+        super.initialize(cordova, webView);
+        inflight = new InflightStore(new File(cordova.getActivity().getFilesDir(), "mqtt-inflight"));
+    }
+
+    @Override
+    public boolean execute(String action, final CordovaArgs args, final CallbackContext callbackContext) throws JSONException {
+        if ("start".equals(action)) {
+            final MqttPublisher.Options options = MqttPublisher.Options.fromJSON(args.getJSONObject(0));
+            try {
+                cordova.getThreadPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start(options);
+                            callbackContext.success();
+                        } catch (IOException e) {
+                            LOG.e(TAG, "Could not load inflight messages", e);
+                            callbackContext.error(e.getMessage());
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                LOG.w(TAG, "Could not start publisher: " + e.getMessage());
+                callbackContext.error(e.getMessage());
+            }
+        } else if ("stop".equals(action)) {
+            stop();
+            callbackContext.success();
+        } else if ("status".equals(action)) {
+            MqttPublisher p = publisher;
+            if (p == null) {
+                callbackContext.error("Not started");
+            } else {
+                callbackContext.success(p.status());
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void start(MqttPublisher.Options options) throws IOException {
+        stop();
+        inflight.open();
+        publisher = new MqttPublisher(options, inflight);
+        publisher.start();
+    }
+
+    private synchronized void stop() {
+        if (publisher != null) {
+            publisher.stop();
+            publisher = null;
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        stop();
+    }
+}
@@ -0,0 +1,346 @@
+package com.pointsource.mqtt;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.LOG;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.util.Base64;
+
+import com.evothings.BLE;
+
+/**
+ * Publishes BLE notification data to an MQTT broker without passing it
+ * through JavaScript.
+ *
+ * Samples are grouped by device and characteristic into one JSON message
+ * per batch interval, in the IoT Foundation event format:
+ *   {"d": {"streams": [{"address", "characteristic", "t": [...], "v": [...]}]}}
+ * with times in ms and values Base64 encoded.
+ *
+ * Messages are published at QoS 1 by a dedicated thread. At most
+ * Options.window messages are in flight; they are kept in an
+ * {@link InflightStore} until acknowledged, and resent after a reconnect.
+ */
+final class MqttPublisher implements BLE.NotificationListener, MqttConnection.Listener {
+    private static final String TAG = "MqttPublisher";
+
+    private static final long INITIAL_BACKOFF = 1000;
+    private static final long MAX_BACKOFF = 60 * 1000;
+    // How long stop() waits for the publisher thread. It is called from
+    // onDestroy() on the UI thread, so this stays well below the ANR limit.
+    private static final long STOP_TIMEOUT = 2000;
+    // Batches waiting for the connection or for a free inflight slot. The
+    // oldest are dropped beyond this.
+    private static final int MAX_QUEUED_BATCHES = 256;
+
+    static final class Options {
+        String host;
+        int port = 1883;
+        String clientId;
+        String userName;
+        String password;
+        String topic;
+        int keepAliveSeconds = 60;
+        // How long to wait for a free inflight slot before the connection
+        // is considered dead. Independent of keepAliveSeconds, which may be
+        // 0 to disable keep alive.
+        long publishTimeout = 30000;
+        long batchInterval = 1000;
+        int maxBatchSamples = 200;
+        int window = 16;
+
+        static Options fromJSON(JSONObject o) throws JSONException {
+            Options options = new Options();
+            options.host = o.getString("host");
+            options.port = o.optInt("port", options.port);
+            options.clientId = o.getString("clientId");
+            options.userName = o.has("userName") ? o.getString("userName") : null;
+            options.password = o.has("password") ? o.getString("password") : null;
+            options.topic = o.getString("topic");
+            options.keepAliveSeconds = o.optInt("keepAlive", options.keepAliveSeconds);
+            options.publishTimeout = o.optLong("publishTimeout", options.publishTimeout);
+            options.batchInterval = o.optLong("batchInterval", options.batchInterval);
+            options.maxBatchSamples = o.optInt("maxBatchSamples", options.maxBatchSamples);
+            options.window = Math.max(1, Math.min(0xFFFF, o.optInt("window", options.window)));
+            return options;
+        }
+    }
+
+    private static final class Stream {
+        long[] times = new long[16];
+        String[] values = new String[16];
+        int size;
+
+        void add(long time, String value) {
+            if (size == times.length) {
+                long[] t = new long[size * 2];
+                System.arraycopy(times, 0, t, 0, size);
+                times = t;
+                String[] v = new String[size * 2];
+                System.arraycopy(values, 0, v, 0, size);
+                values = v;
+            }
+            times[size] = time;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    private final Options options;
+    private final InflightStore inflight;
+    private final LinkedBlockingDeque<byte[]> batches = new LinkedBlockingDeque<byte[]>(MAX_QUEUED_BATCHES);
+
+    // The batch being filled, keyed by address and characteristic.
+    private final Object batchLock = new Object();
+    private LinkedHashMap<String, Stream> streams = new LinkedHashMap<String, Stream>();
+    private int batchSamples;
+    private long batchStart;
+
+    private volatile boolean running;
+    private Thread thread;
+    private volatile MqttConnection connection;
+    private volatile boolean connectionLost;
+    private volatile String lastError;
+
+    private volatile long published;
+    private volatile long acknowledged;
+    private volatile long droppedBatches;
+
+    MqttPublisher(Options options, InflightStore inflight) {
+        this.options = options;
+        this.inflight = inflight;
+    }
+
+    void start() {
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                publishLoop();
+            }
+        }, "MqttPublisher");
+        thread.start();
+        BLE.addNotificationListener(this);
+    }
+
+    /**
+     * Stops publishing. Batches not yet published are discarded; messages
+     * in flight stay on disk and are resent by the next publisher.
+     *
+     * Waits for the publisher thread to exit, so that a publisher started
+     * next does not share the InflightStore and client id with this one.
+     */
+    void stop() {
+        BLE.removeNotificationListener(this);
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(STOP_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                LOG.w(TAG, "Publisher thread did not stop within " + STOP_TIMEOUT + "ms");
+            }
+            thread = null;
+        }
+    }
+
+    JSONObject status() throws JSONException {
+        JSONObject o = new JSONObject();
+        o.put("connected", running && !connectionLost && connection != null);
+        o.put("inflight", inflight.size());
+        o.put("queued", batches.size());
+        o.put("published", published);
+        o.put("acknowledged", acknowledged);
+        o.put("droppedBatches", droppedBatches);
+        o.put("lastError", lastError);
+        return o;
+    }
+
+    @Override
+    public void onNotification(String address, String characteristicUuid, byte[] value) {
+        // Encoding happens outside batchLock, so the Binder thread and the
+        // publisher thread only contend for the few field updates below.
+        String encoded = Base64.encodeToString(value, Base64.NO_WRAP);
+        long now = System.currentTimeMillis();
+        String key = address + ' ' + characteristicUuid;
+        LinkedHashMap<String, Stream> full = null;
+        synchronized (batchLock) {
+            Stream s = streams.get(key);
+            if (s == null) {
+                s = new Stream();
+                streams.put(key, s);
+            }
+            if (batchSamples == 0) {
+                batchStart = now;
+            }
+            s.add(now, encoded);
+            if (++batchSamples >= options.maxBatchSamples) {
+                full = takeBatch();
+            }
+        }
+        if (full != null) {
+            queueBatch(full);
+        }
+    }
+
+    @Override
+    public void onPubAck(int packetId) {
+        if (inflight.remove(packetId)) {
+            acknowledged++;
+        }
+    }
+
+    @Override
+    public void onConnectionLost(IOException e) {
+        lastError = e.toString();
+        connectionLost = true;
+    }
+
+    private void sealBatchIfDue() {
+        LinkedHashMap<String, Stream> due = null;
+        synchronized (batchLock) {
+            if (batchSamples > 0 && System.currentTimeMillis() - batchStart >= options.batchInterval) {
+                due = takeBatch();
+            }
+        }
+        if (due != null) {
+            queueBatch(due);
+        }
+    }
+
+    // Called with batchLock held. Starts a new batch and returns the old one.
+    private LinkedHashMap<String, Stream> takeBatch() {
+        LinkedHashMap<String, Stream> batch = streams;
+        streams = new LinkedHashMap<String, Stream>();
+        batchSamples = 0;
+        return batch;
+    }
+
+    // Encodes a batch taken from the map and queues it for publishing.
+    private void queueBatch(LinkedHashMap<String, Stream> batch) {
+        try {
+            JSONArray a = new JSONArray();
+            for (Map.Entry<String, Stream> e : batch.entrySet()) {
+                int split = e.getKey().indexOf(' ');
+                Stream s = e.getValue();
+                JSONArray times = new JSONArray();
+                JSONArray values = new JSONArray();
+                for (int i = 0; i < s.size; i++) {
+                    times.put(s.times[i]);
+                    values.put(s.values[i]);
+                }
+                JSONObject o = new JSONObject();
+                o.put("address", e.getKey().substring(0, split));
+                o.put("characteristic", e.getKey().substring(split + 1));
+                o.put("t", times);
+                o.put("v", values);
+                a.put(o);
+            }
+            JSONObject d = new JSONObject();
+            d.put("streams", a);
+            JSONObject message = new JSONObject();
+            message.put("d", d);
+            byte[] payload = message.toString().getBytes("UTF-8");
+            // Batches are queued from the Binder thread and the publisher
+            // thread.
+            synchronized (batches) {
+                while (!batches.offerLast(payload)) {
+                    batches.pollFirst();
+                    droppedBatches++;
+                }
+            }
+        } catch (JSONException e) {
+            LOG.e(TAG, "Could not encode batch", e);
+        } catch (IOException e) {
+            LOG.e(TAG, "Could not encode batch", e);
+        }
+    }
+
+    private void publishLoop() {
+        long backoff = INITIAL_BACKOFF;
+        long lastWrite = 0;
+        try {
+            while (running) {
+                if (connection == null) {
+                    try {
+                        connect();
+                        backoff = INITIAL_BACKOFF;
+                        lastWrite = System.currentTimeMillis();
+                    } catch (IOException e) {
+                        lastError = e.toString();
+                        LOG.d(TAG, "Connect failed (" + e + "), retrying in " + backoff + "ms");
+                        Thread.sleep(backoff);
+                        backoff = Math.min(MAX_BACKOFF, backoff * 2);
+                        continue;
+                    }
+                }
+                try {
+                    sealBatchIfDue();
+                    byte[] payload = batches.pollFirst(options.batchInterval, TimeUnit.MILLISECONDS);
+                    if (payload != null) {
+                        if (inflight.awaitBelow(options.window, options.publishTimeout) && !connectionLost) {
+                            InflightStore.Message m = inflight.add(options.topic, payload);
+                            connection.publish(m.packetId, m.topic, m.payload, false);
+                            connection.flush();
+                            published++;
+                            lastWrite = System.currentTimeMillis();
+                        } else {
+                            // The window did not drain; the connection is
+                            // probably dead. Keep the batch for later.
+                            batches.offerFirst(payload);
+                            connectionLost = true;
+                        }
+                    }
+                    if (options.keepAliveSeconds > 0
+                            && System.currentTimeMillis() - lastWrite >= options.keepAliveSeconds * 500L) {
+                        connection.ping();
+                        lastWrite = System.currentTimeMillis();
+                    }
+                } catch (IOException e) {
+                    lastError = e.toString();
+                    connectionLost = true;
+                }
+                if (connectionLost) {
+                    LOG.d(TAG, "Connection lost: " + lastError);
+                    connection.close();
+                    connection = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped.
+        }
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+    }
+
+    private void connect() throws IOException {
+        MqttConnection c = new MqttConnection();
+        connectionLost = false;
+        try {
+            c.connect(options.host, options.port, options.clientId, options.userName, options.password,
+                    options.keepAliveSeconds, this);
+            // Resend whatever was not acknowledged on the previous connection.
+            for (InflightStore.Message m : inflight.snapshot()) {
+                c.publish(m.packetId, m.topic, m.payload, true);
+            }
+            c.flush();
+        } catch (IOException e) {
+            c.close();
+            throw e;
+        }
+        connection = c;
+        lastError = null;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.pointsource.readingstore;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Running aggregates of the readings of one policy, updated as rows are
+ * added so that a summary never requires a scan of the readings.
+ */
+final class PolicySummary {
+    final int policy;
+    long readings;
+    long firstDate = Long.MAX_VALUE;
+    long lastDate = Long.MIN_VALUE;
+    final LinkedHashMap<Integer, SensorSummary> sensors = new LinkedHashMap<Integer, SensorSummary>();
+
+    PolicySummary(int policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Adds a row. newReading is true for the first row of each reading.
+     */
+    void add(Row r, boolean newReading) {
+        if (newReading) {
+            readings++;
+        }
+        firstDate = Math.min(firstDate, r.date);
+        lastDate = Math.max(lastDate, r.date);
+        SensorSummary s = sensors.get(r.sensor);
+        if (s == null) {
+            s = new SensorSummary(r.sensor);
+            sensors.put(r.sensor, s);
+        }
+        s.add(r);
+    }
+
+    JSONObject toJSON(StringTable strings) throws JSONException {
+        JSONObject o = new JSONObject();
+        o.put("policyNumber", strings.get(policy));
+        o.put("readings", readings);
+        o.put("firstDate", firstDate);
+        o.put("lastDate", lastDate);
+        JSONArray a = new JSONArray();
+        for (SensorSummary s : sensors.values()) {
+            a.put(s.toJSON(strings));
+        }
+        o.put("sensors", a);
+        return o;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(policy);
+        out.writeLong(readings);
+        out.writeLong(firstDate);
+        out.writeLong(lastDate);
+        out.writeInt(sensors.size());
+        for (SensorSummary s : sensors.values()) {
+            s.write(out);
+        }
+    }
+
+    static PolicySummary read(DataInputStream in) throws IOException {
+        PolicySummary p = new PolicySummary(in.readInt());
+        p.readings = in.readLong();
+        p.firstDate = in.readLong();
+        p.lastDate = in.readLong();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            SensorSummary s = SensorSummary.read(in);
+            p.sensors.put(s.sensor, s);
+        }
+        return p;
+    }
+
+    static final class SensorSummary {
+        final int sensor;
+        int name;
+        long count;
+        final Stat ambientTemperature = new Stat();
+        final Stat targetTemperature = new Stat();
+        final Stat humidity = new Stat();
+
+        SensorSummary(int sensor) {
+            this.sensor = sensor;
+        }
+
+        void add(Row r) {
+            // The most recent name wins if a sensor is renamed.
+            name = r.name;
+            count++;
+            ambientTemperature.add(r.ambientTemperature);
+            targetTemperature.add(r.targetTemperature);
+            humidity.add(r.humidity);
+        }
+
+        JSONObject toJSON(StringTable strings) throws JSONException {
+            JSONObject o = new JSONObject();
+            o.put("systemId", strings.get(sensor));
+            o.put("name", strings.get(name));
+            o.put("count", count);
+            o.put("ambientTemperature", ambientTemperature.toJSON());
+            o.put("targetTemperature", targetTemperature.toJSON());
+            o.put("relativeHumidity", humidity.toJSON());
+            return o;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(sensor);
+            out.writeInt(name);
+            out.writeLong(count);
+            ambientTemperature.write(out);
+            targetTemperature.write(out);
+            humidity.write(out);
+        }
+
+        static SensorSummary read(DataInputStream in) throws IOException {
+            SensorSummary s = new SensorSummary(in.readInt());
+            s.name = in.readInt();
+            s.count = in.readLong();
+            s.ambientTemperature.read(in);
+            s.targetTemperature.read(in);
+            s.humidity.read(in);
+            return s;
+        }
+    }
+
+    /** Count, min, max and mean of one value, ignoring missing (NaN) values. */
+    static final class Stat {
+        long count;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        double sum;
+
+        void add(float v) {
+            if (Float.isNaN(v)) {
+                return;
+            }
+            count++;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            sum += v;
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject o = new JSONObject();
+            o.put("count", count);
+            if (count > 0) {
+                o.put("min", (double) min);
+                o.put("max", (double) max);
+                o.put("mean", sum / count);
+            }
+            return o;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(count);
+            out.writeFloat(min);
+            out.writeFloat(max);
+            out.writeDouble(sum);
+        }
+
+        void read(DataInputStream in) throws IOException {
+            count = in.readLong();
+            min = in.readFloat();
+            max = in.readFloat();
+            sum = in.readDouble();
+        }
+    }
+}
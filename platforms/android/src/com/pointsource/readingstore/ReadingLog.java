@@ -0,0 +1,183 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.pointsource.readingstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-mapped, append-only log of fixed size rows. New readings land here
+ * until {@link ReadingStore#compact()} moves them into a segment.
+ *
+ * Layout:
+ *   header  magic, version, row count, generation (4 ints)
+ *   rows    RECORD_SIZE bytes each, see the OFF_* constants
+ *
+ * The row count is written after the row itself, so a row torn by a crash
+ * is simply not counted. The generation is bumped every time the log is
+ * cleared by a compaction; segments record the generation they were built
+ * from so that an interrupted compaction can be detected on open.
+ */
+final class ReadingLog {
+    private static final int MAGIC = 0x52444c47; // "RDLG"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int HDR_COUNT = 8;
+    private static final int HDR_GENERATION = 12;
+
+    static final int RECORD_SIZE = 40;
+    private static final int OFF_DATE = 0;
+    private static final int OFF_POLICY = 8;
+    private static final int OFF_SENSOR = 12;
+    private static final int OFF_NAME = 16;
+    private static final int OFF_FLAGS = 20;
+    private static final int OFF_AMBIENT = 24;
+    private static final int OFF_TARGET = 28;
+    private static final int OFF_HUMIDITY = 32;
+
+    private static final int FLAG_CLIENT = 1;
+
+    // Rows added per remap when the log is full.
+    private static final int GROW_ROWS = 1024;
+
+    private final File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int count;
+    private int capacity;
+    private int generation;
+
+    ReadingLog(File file) {
+        this.file = file;
+    }
+
+    void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        boolean isNew = raf.length() < HEADER_SIZE;
+        // Read before remap() grows the file.
+        int rows = isNew ? 0 : (int) ((raf.length() - HEADER_SIZE) / RECORD_SIZE);
+        remap(Math.max(rows, GROW_ROWS));
+        if (isNew) {
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(HDR_COUNT, 0);
+            map.putInt(HDR_GENERATION, 0);
+        } else if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new IOException("Not a reading log: " + file);
+        }
+        // Rows beyond the end of a truncated file are not counted.
+        count = Math.max(0, Math.min(map.getInt(HDR_COUNT), rows));
+        generation = map.getInt(HDR_GENERATION);
+    }
+
+    void close() throws IOException {
+        if (map != null) {
+            map.force();
+            map = null;
+        }
+        if (raf != null) {
+            raf.close();
+            raf = null;
+            channel = null;
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    /**
+     * Appends a row and returns its index.
+     */
+    int append(Row r) throws IOException {
+        if (count == capacity) {
+            remap(capacity + GROW_ROWS);
+        }
+        int base = HEADER_SIZE + count * RECORD_SIZE;
+        map.putLong(base + OFF_DATE, r.date);
+        map.putInt(base + OFF_POLICY, r.policy);
+        map.putInt(base + OFF_SENSOR, r.sensor);
+        map.putInt(base + OFF_NAME, r.name);
+        map.putInt(base + OFF_FLAGS, r.client ? FLAG_CLIENT : 0);
+        map.putFloat(base + OFF_AMBIENT, r.ambientTemperature);
+        map.putFloat(base + OFF_TARGET, r.targetTemperature);
+        map.putFloat(base + OFF_HUMIDITY, r.humidity);
+        map.putInt(HDR_COUNT, ++count);
+        return count - 1;
+    }
+
+    long date(int index) {
+        return map.getLong(HEADER_SIZE + index * RECORD_SIZE + OFF_DATE);
+    }
+
+    int policy(int index) {
+        return map.getInt(HEADER_SIZE + index * RECORD_SIZE + OFF_POLICY);
+    }
+
+    Row read(int index, Row r) {
+        int base = HEADER_SIZE + index * RECORD_SIZE;
+        r.date = map.getLong(base + OFF_DATE);
+        r.policy = map.getInt(base + OFF_POLICY);
+        r.sensor = map.getInt(base + OFF_SENSOR);
+        r.name = map.getInt(base + OFF_NAME);
+        r.client = (map.getInt(base + OFF_FLAGS) & FLAG_CLIENT) != 0;
+        r.ambientTemperature = map.getFloat(base + OFF_AMBIENT);
+        r.targetTemperature = map.getFloat(base + OFF_TARGET);
+        r.humidity = map.getFloat(base + OFF_HUMIDITY);
+        return r;
+    }
+
+    /**
+     * Flushes appended rows to storage.
+     */
+    void force() {
+        map.force();
+    }
+
+    /**
+     * Drops all rows and starts a new generation.
+     */
+    void clear() throws IOException {
+        count = 0;
+        generation++;
+        map.putInt(HDR_COUNT, 0);
+        map.putInt(HDR_GENERATION, generation);
+        // The file is not shrunk: truncating a mapped file is unsafe, and the
+        // space will be reused by the next rows anyway.
+        map.force();
+    }
+
+    private void remap(int rows) throws IOException {
+        if (map != null) {
+            map.force();
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) rows * RECORD_SIZE);
+        capacity = rows;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.pointsource.readingstore;
+
+import java.util.Comparator;
+
+/**
+ * One sensor's values within a reading. A reading taken from N sensors is
+ * stored as N rows sharing the same policy, date and client flag.
+ * String fields hold ids from the {@link StringTable}.
+ */
+final class Row {
+    long date;
+    int policy;
+    int sensor;
+    int name;
+    boolean client;
+    float ambientTemperature = Float.NaN;
+    float targetTemperature = Float.NaN;
+    float humidity = Float.NaN;
+
+    static final Comparator<Row> BY_DATE = new Comparator<Row>() {
+        @Override
+        public int compare(Row a, Row b) {
+            if (a.date != b.date) {
+                return a.date < b.date ? -1 : 1;
+            }
+            // Keeps the rows of each reading adjacent when several policies
+            // have readings with the same date.
+            if (a.policy != b.policy) {
+                return a.policy < b.policy ? -1 : 1;
+            }
+            if (a.client != b.client) {
+                return a.client ? 1 : -1;
+            }
+            return a.sensor < b.sensor ? -1 : (a.sensor == b.sensor ? 0 : 1);
+        }
+    };
+}
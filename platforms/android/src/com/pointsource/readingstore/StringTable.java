@@ -0,0 +1,130 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.pointsource.readingstore;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Append-only dictionary of the strings referenced by the reading log
+ * (policy numbers, sensor System IDs and sensor names). Rows store the
+ * integer id of a string instead of the string itself.
+ */
+final class StringTable {
+    private final File file;
+    private final ArrayList<String> strings = new ArrayList<String>();
+    private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+    private DataOutputStream out;
+
+    StringTable(File file) {
+        this.file = file;
+    }
+
+    void open() throws IOException {
+        long validLength = 0;
+        if (file.exists()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                while (true) {
+                    String s = in.readUTF();
+                    ids.put(s, strings.size());
+                    strings.add(s);
+                    // 2 byte length prefix + modified UTF-8 bytes.
+                    validLength += 2 + utfLength(s);
+                }
+            } catch (EOFException e) {
+                // End of table, or a partially written last entry.
+            } finally {
+                in.close();
+            }
+            if (validLength != file.length()) {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(validLength);
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+        out = new DataOutputStream(new FileOutputStream(file, true));
+    }
+
+    void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Returns the id of the given string, adding it to the table if needed.
+     */
+    int intern(String s) throws IOException {
+        Integer id = ids.get(s);
+        if (id != null) {
+            return id;
+        }
+        out.writeUTF(s);
+        out.flush();
+        int newId = strings.size();
+        strings.add(s);
+        ids.put(s, newId);
+        return newId;
+    }
+
+    /**
+     * Returns the id of the given string, or -1 if it is not in the table.
+     */
+    int lookup(String s) {
+        Integer id = ids.get(s);
+        return id == null ? -1 : id;
+    }
+
+    String get(int id) {
+        return strings.get(id);
+    }
+
+    int size() {
+        return strings.size();
+    }
+
+    private static int utfLength(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                len += 1;
+            } else if (c > 0x07FF) {
+                len += 3;
+            } else {
+                len += 2;
+            }
+        }
+        return len;
+    }
+}
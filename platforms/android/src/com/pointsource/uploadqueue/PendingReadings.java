@@ -0,0 +1,233 @@
+package com.pointsource.uploadqueue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Readings waiting to be uploaded, persisted as one JSON line per reading.
+ *
+ * A sensor value is identified by (policyNumber, date, systemId). Values that
+ * are already queued, or were uploaded recently, are dropped from incoming
+ * readings, and a reading left with no sensor data is not queued at all.
+ *
+ * Readings the server refused are moved to a second file rather than
+ * deleted, so that they no longer hold up the queue but can be queued again.
+ */
+final class PendingReadings {
+    private static final String UTF8 = "UTF-8";
+
+    // How many uploaded keys are remembered for de-duplication.
+    private static final int MAX_RECENT_KEYS = 2048;
+
+    private final File file;
+    private final File rejectedFile;
+    private int rejectedCount;
+    private final ArrayList<String> lines = new ArrayList<String>();
+    private final HashSet<String> queuedKeys = new HashSet<String>();
+    private final LinkedHashMap<String, Boolean> uploadedKeys = new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_RECENT_KEYS;
+        }
+    };
+
+    PendingReadings(File file, File rejectedFile) {
+        this.file = file;
+        this.rejectedFile = rejectedFile;
+    }
+
+    synchronized void open() throws IOException {
+        lines.clear();
+        queuedKeys.clear();
+        read(file, lines, queuedKeys);
+        ArrayList<String> rejected = new ArrayList<String>();
+        read(rejectedFile, rejected, new HashSet<String>());
+        rejectedCount = rejected.size();
+    }
+
+    private static void read(File from, List<String> into, Set<String> keys) throws IOException {
+        if (!from.exists()) {
+            return;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(from), UTF8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                try {
+                    addKeys(new JSONObject(line), keys);
+                    into.add(line);
+                } catch (JSONException e) {
+                    // A line torn by a crash while appending.
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    synchronized int size() {
+        return lines.size();
+    }
+
+    synchronized int rejectedSize() {
+        return rejectedCount;
+    }
+
+    /**
+     * Queues a reading. Returns false if all of its sensor values were
+     * already queued or uploaded.
+     */
+    synchronized boolean add(JSONObject reading) throws IOException, JSONException {
+        JSONArray sensorData = reading.getJSONArray("sensorData");
+        JSONArray fresh = new JSONArray();
+        for (int i = 0; i < sensorData.length(); i++) {
+            JSONObject sd = sensorData.getJSONObject(i);
+            String key = key(reading, sd);
+            if (!queuedKeys.contains(key) && !uploadedKeys.containsKey(key)) {
+                fresh.put(sd);
+            }
+        }
+        if (fresh.length() == 0) {
+            return false;
+        }
+        if (fresh.length() != sensorData.length()) {
+            reading = new JSONObject(reading.toString());
+            reading.put("sensorData", fresh);
+        }
+        String line = reading.toString();
+        append(file, Collections.singletonList(line));
+        addKeys(reading, queuedKeys);
+        lines.add(line);
+        return true;
+    }
+
+    /**
+     * Returns up to max of the oldest queued readings, as JSON lines.
+     */
+    synchronized List<String> peek(int max) {
+        return new ArrayList<String>(lines.subList(0, Math.min(max, lines.size())));
+    }
+
+    /**
+     * Removes the n oldest readings after they have been uploaded.
+     */
+    synchronized void remove(int n) throws IOException {
+        List<String> done = lines.subList(0, n);
+        for (String line : done) {
+            try {
+                JSONObject reading = new JSONObject(line);
+                HashSet<String> keys = new HashSet<String>();
+                addKeys(reading, keys);
+                queuedKeys.removeAll(keys);
+                for (String key : keys) {
+                    uploadedKeys.put(key, Boolean.TRUE);
+                }
+            } catch (JSONException e) {
+                // Lines are validated when added or loaded.
+            }
+        }
+        done.clear();
+        rewrite();
+    }
+
+    /**
+     * Moves the n oldest readings to the rejected file after the server
+     * refused them. Their sensor values may be queued again.
+     */
+    synchronized void reject(int n) throws IOException {
+        List<String> refused = lines.subList(0, n);
+        append(rejectedFile, refused);
+        rejectedCount += refused.size();
+        for (String line : refused) {
+            try {
+                HashSet<String> keys = new HashSet<String>();
+                addKeys(new JSONObject(line), keys);
+                queuedKeys.removeAll(keys);
+            } catch (JSONException e) {
+                // Lines are validated when added or loaded.
+            }
+        }
+        refused.clear();
+        rewrite();
+    }
+
+    /**
+     * Puts the rejected readings back at the end of the queue, e.g. after
+     * the server was fixed. Returns how many were queued.
+     */
+    synchronized int requeueRejected() throws IOException {
+        ArrayList<String> rejected = new ArrayList<String>();
+        read(rejectedFile, rejected, new HashSet<String>());
+        for (String line : rejected) {
+            try {
+                addKeys(new JSONObject(line), queuedKeys);
+            } catch (JSONException e) {
+                // Validated by read().
+            }
+        }
+        lines.addAll(rejected);
+        rewrite();
+        rejectedFile.delete();
+        rejectedCount = 0;
+        return rejected.size();
+    }
+
+    private static void append(File to, List<String> newLines) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : newLines) {
+            sb.append(line).append('\n');
+        }
+        FileOutputStream out = new FileOutputStream(to, true);
+        try {
+            out.write(sb.toString().getBytes(UTF8));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void rewrite() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (String line : lines) {
+                sb.append(line).append('\n');
+            }
+            out.write(sb.toString().getBytes(UTF8));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not rename " + tmp + " to " + file);
+        }
+    }
+
+    private static void addKeys(JSONObject reading, Set<String> keys) throws JSONException {
+        JSONArray sensorData = reading.getJSONArray("sensorData");
+        for (int i = 0; i < sensorData.length(); i++) {
+            keys.add(key(reading, sensorData.getJSONObject(i)));
+        }
+    }
+
+    private static String key(JSONObject reading, JSONObject sensorData) throws JSONException {
+        return reading.getString("policyNumber") + '\u0000' + reading.getLong("date") + '\u0000'
+                + sensorData.getString("systemId");
+    }
+}
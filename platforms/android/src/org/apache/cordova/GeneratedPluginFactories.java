@@ -0,0 +1,40 @@
+// Generated by "cordova prepare" from res/xml/config.xml. Do not edit.
+package org.apache.cordova;
+
+final class GeneratedPluginFactories {
+    static {
+        PluginManager.registerPluginFactory("org.apache.cordova.whitelist.WhitelistPlugin", new PluginFactory() {
+            public CordovaPlugin newInstance() {
+                return new org.apache.cordova.whitelist.WhitelistPlugin();
+            }
+        });
+        PluginManager.registerPluginFactory("com.evothings.BLE", new PluginFactory() {
+            public CordovaPlugin newInstance() {
+                return new com.evothings.BLE();
+            }
+        });
+        PluginManager.registerPluginFactory("org.apache.cordova.device.Device", new PluginFactory() {
+            public CordovaPlugin newInstance() {
+                return new org.apache.cordova.device.Device();
+            }
+        });
+        PluginManager.registerPluginFactory("com.pointsource.readingstore.ReadingStorePlugin", new PluginFactory() {
+            public CordovaPlugin newInstance() {
+                return new com.pointsource.readingstore.ReadingStorePlugin();
+            }
+        });
+        PluginManager.registerPluginFactory("com.pointsource.uploadqueue.UploadQueuePlugin", new PluginFactory() {
+            public CordovaPlugin newInstance() {
+                return new com.pointsource.uploadqueue.UploadQueuePlugin();
+            }
+        });
+        PluginManager.registerPluginFactory("com.pointsource.mqtt.MqttPlugin", new PluginFactory() {
+            public CordovaPlugin newInstance() {
+                return new com.pointsource.mqtt.MqttPlugin();
+            }
+        });
+    }
+
+    private GeneratedPluginFactories() {
+    }
+}
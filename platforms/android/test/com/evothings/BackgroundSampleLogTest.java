@@ -0,0 +1,126 @@
+package com.evothings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.pointsource.iotpoc.BuildConfig;
+
+/**
+ * Writes the background sample log and reads its summary back through a new
+ * instance, as after the process was killed.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class BackgroundSampleLogTest {
+    private static final String ADDRESS = "B0:B4:48:C0:5D:81";
+    private static final String HUMIDITY = "f000aa21-0451-4000-b000-000000000000";
+    private static final String TEMPERATURE = "f000aa01-0451-4000-b000-000000000000";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "samples.bin");
+    }
+
+    private BackgroundSampleLog restart() {
+        return new BackgroundSampleLog(file);
+    }
+
+    @Test
+    public void summaryIsRebuiltAfterARestart() throws Exception {
+        BackgroundSampleLog log = restart();
+        log.open();
+        log.append(ADDRESS, HUMIDITY, new byte[] { 1 });
+        log.append(ADDRESS, TEMPERATURE, new byte[] { 2 });
+        log.append(ADDRESS, HUMIDITY, new byte[] { 3 });
+        log.close();
+
+        log = restart();
+        assertTrue(log.hasSamples());
+        JSONObject summary = log.takeSummary();
+        assertEquals(3, summary.getLong("sampleCount"));
+        JSONArray streams = summary.getJSONArray("streams");
+        assertEquals(2, streams.length());
+        assertEquals(HUMIDITY, streams.getJSONObject(0).getString("characteristic"));
+        assertEquals(2, streams.getJSONObject(0).getLong("count"));
+        assertEquals("Aw==", streams.getJSONObject(0).getString("lastValue"));
+
+        // Summarized samples are not counted again.
+        assertFalse(restart().hasSamples());
+    }
+
+    @Test
+    public void onlySamplesAfterTheLastSummaryAreRebuilt() throws Exception {
+        BackgroundSampleLog log = restart();
+        log.open();
+        log.append(ADDRESS, HUMIDITY, new byte[] { 1 });
+        log.takeSummary();
+        log.append(ADDRESS, HUMIDITY, new byte[] { 2 });
+        log.append(ADDRESS, HUMIDITY, new byte[] { 3 });
+        log.close();
+
+        assertEquals(2, restart().takeSummary().getLong("sampleCount"));
+    }
+
+    @Test
+    public void aTornRecordIsDropped() throws Exception {
+        BackgroundSampleLog log = restart();
+        log.open();
+        log.append(ADDRESS, HUMIDITY, new byte[] { 1 });
+        log.append(ADDRESS, HUMIDITY, new byte[] { 2 });
+        log.close();
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(new byte[] { 0, 0, 1, 2, 3 });
+        } finally {
+            out.close();
+        }
+
+        log = restart();
+        log.open();
+        log.append(ADDRESS, HUMIDITY, new byte[] { 3 });
+        log.close();
+
+        JSONObject summary = restart().takeSummary();
+        assertEquals(3, summary.getLong("sampleCount"));
+        assertEquals("Aw==", summary.getJSONArray("streams").getJSONObject(0).getString("lastValue"));
+    }
+
+    @Test
+    public void theLogIsRotatedOnceItIsFull() throws Exception {
+        byte[] value = new byte[60000];
+        int samples = (int) (BackgroundSampleLog.MAX_FILE_SIZE / value.length) + 10;
+        BackgroundSampleLog log = restart();
+        log.open();
+        for (int i = 0; i < samples; i++) {
+            log.append(ADDRESS, HUMIDITY, value);
+        }
+        log.close();
+
+        File previous = new File(file.getPath() + ".1");
+        assertTrue(previous.length() >= BackgroundSampleLog.MAX_FILE_SIZE);
+        assertTrue(file.length() < BackgroundSampleLog.MAX_FILE_SIZE);
+
+        JSONObject summary = restart().takeSummary();
+        assertEquals(samples, summary.getLong("sampleCount"));
+        assertEquals(previous.length() + file.length(), summary.getLong("fileSize"));
+    }
+}
@@ -0,0 +1,174 @@
+package com.pointsource.mqtt;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An MQTT 3.1.1 broker for tests that accepts connections on the loopback
+ * interface and records what is published. It understands CONNECT,
+ * PUBLISH at QoS 1, PINGREQ and DISCONNECT, which is all that
+ * {@link MqttConnection} sends.
+ */
+final class EmbeddedBroker {
+    static final class Publish {
+        final int packetId;
+        final String topic;
+        final boolean dup;
+        final byte[] payload;
+
+        Publish(int packetId, String topic, boolean dup, byte[] payload) {
+            this.packetId = packetId;
+            this.topic = topic;
+            this.dup = dup;
+            this.payload = payload;
+        }
+    }
+
+    private final ServerSocket server;
+    private final List<Socket> clients = Collections.synchronizedList(new ArrayList<Socket>());
+    private final List<Publish> published = Collections.synchronizedList(new ArrayList<Publish>());
+    private volatile int connections;
+    private volatile boolean acknowledging = true;
+    private volatile long ackDelay;
+
+    EmbeddedBroker() throws IOException {
+        server = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "EmbeddedBroker");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    int connections() {
+        return connections;
+    }
+
+    List<Publish> published() {
+        synchronized (published) {
+            return new ArrayList<Publish>(published);
+        }
+    }
+
+    /**
+     * Whether PUBLISH packets are acknowledged, and after how many ms.
+     */
+    void setAcknowledging(boolean acknowledging, long delay) {
+        this.acknowledging = acknowledging;
+        this.ackDelay = delay;
+    }
+
+    /**
+     * Closes every client connection, as a broker restart would.
+     */
+    void dropConnections() throws IOException {
+        synchronized (clients) {
+            for (Socket s : clients) {
+                s.close();
+            }
+            clients.clear();
+        }
+    }
+
+    void close() throws IOException {
+        server.close();
+        dropConnections();
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                final Socket s = server.accept();
+                clients.add(s);
+                connections++;
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(s);
+                        } catch (IOException e) {
+                            // Client gone.
+                        } catch (InterruptedException e) {
+                            // Stopped.
+                        }
+                    }
+                }, "EmbeddedBrokerClient");
+                t.setDaemon(true);
+                t.start();
+            }
+        } catch (IOException e) {
+            // Closed.
+        }
+    }
+
+    private void serve(Socket s) throws IOException, InterruptedException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        OutputStream out = s.getOutputStream();
+        while (true) {
+            int header = in.readUnsignedByte();
+            int length = readRemainingLength(in);
+            byte[] body = new byte[length];
+            in.readFully(body);
+            switch (header & 0xF0) {
+                case 0x10: // CONNECT
+                    write(out, new byte[] { 0x20, 0x02, 0x00, 0x00 });
+                    break;
+                case 0x30: { // PUBLISH
+                    int topicLength = ((body[0] & 0xFF) << 8) | (body[1] & 0xFF);
+                    String topic = new String(body, 2, topicLength, "UTF-8");
+                    int packetId = ((body[2 + topicLength] & 0xFF) << 8) | (body[3 + topicLength] & 0xFF);
+                    byte[] payload = new byte[length - topicLength - 4];
+                    System.arraycopy(body, topicLength + 4, payload, 0, payload.length);
+                    published.add(new Publish(packetId, topic, (header & 0x08) != 0, payload));
+                    if (acknowledging) {
+                        if (ackDelay > 0) {
+                            Thread.sleep(ackDelay);
+                        }
+                        write(out, new byte[] { 0x40, 0x02, (byte) (packetId >> 8), (byte) packetId });
+                    }
+                    break;
+                }
+                case 0xC0: // PINGREQ
+                    write(out, new byte[] { (byte) 0xD0, 0x00 });
+                    break;
+                case 0xE0: // DISCONNECT
+                    s.close();
+                    return;
+                default:
+                    throw new IOException("Unexpected packet type " + header);
+            }
+        }
+    }
+
+    private static void write(OutputStream out, byte[] packet) throws IOException {
+        out.write(packet);
+        out.flush();
+    }
+
+    private static int readRemainingLength(DataInputStream in) throws IOException {
+        int length = 0;
+        int multiplier = 1;
+        int digit;
+        do {
+            digit = in.readUnsignedByte();
+            length += (digit & 0x7F) * multiplier;
+            multiplier *= 128;
+        } while ((digit & 0x80) != 0);
+        return length;
+    }
+}
@@ -0,0 +1,203 @@
+package com.pointsource.mqtt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.util.Base64;
+
+import com.pointsource.iotpoc.BuildConfig;
+
+/**
+ * Publishes through {@link MqttConnection} to an {@link EmbeddedBroker}.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class MqttPublisherTest {
+    private static final String TOPIC = "iot-2/evt/iotsensor/fmt/json";
+    private static final String ADDRESS = "B0:B4:48:BD:0A:83";
+    private static final String HUMIDITY = "f000aa21-0451-4000-b000-000000000000";
+    private static final String TEMPERATURE = "f000aa01-0451-4000-b000-000000000000";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddedBroker broker;
+    private InflightStore inflight;
+    private MqttPublisher publisher;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new EmbeddedBroker();
+        inflight = new InflightStore(folder.newFolder("inflight"));
+        inflight.open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (publisher != null) {
+            publisher.stop();
+        }
+        broker.close();
+    }
+
+    private MqttPublisher.Options options() {
+        MqttPublisher.Options options = new MqttPublisher.Options();
+        options.host = "127.0.0.1";
+        options.port = broker.port();
+        options.clientId = "d:test:iotsensor:1";
+        options.topic = TOPIC;
+        options.batchInterval = 50;
+        return options;
+    }
+
+    private void start(MqttPublisher.Options options) {
+        publisher = new MqttPublisher(options, inflight);
+        publisher.start();
+    }
+
+    private interface Condition {
+        boolean holds() throws Exception;
+    }
+
+    private static void await(Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.holds()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void awaitPublished(final int count) throws Exception {
+        await(new Condition() {
+            @Override
+            public boolean holds() {
+                return broker.published().size() >= count;
+            }
+        });
+    }
+
+    private void awaitAcknowledged(final long count) throws Exception {
+        await(new Condition() {
+            @Override
+            public boolean holds() throws Exception {
+                return publisher.status().getLong("acknowledged") >= count;
+            }
+        });
+    }
+
+    @Test
+    public void publishesOneMessagePerBatch() throws Exception {
+        MqttPublisher.Options options = options();
+        options.maxBatchSamples = 3;
+        start(options);
+
+        publisher.onNotification(ADDRESS, HUMIDITY, new byte[] { 1, 2 });
+        publisher.onNotification(ADDRESS, TEMPERATURE, new byte[] { 3 });
+        publisher.onNotification(ADDRESS, HUMIDITY, new byte[] { 4 });
+        awaitPublished(1);
+        awaitAcknowledged(1);
+
+        EmbeddedBroker.Publish p = broker.published().get(0);
+        assertEquals(TOPIC, p.topic);
+        assertFalse(p.dup);
+        JSONArray streams = new JSONObject(new String(p.payload, "UTF-8")).getJSONObject("d").getJSONArray("streams");
+        assertEquals(2, streams.length());
+        JSONObject humidity = streams.getJSONObject(0);
+        assertEquals(ADDRESS, humidity.getString("address"));
+        assertEquals(HUMIDITY, humidity.getString("characteristic"));
+        assertEquals(2, humidity.getJSONArray("t").length());
+        assertEquals(Base64.encodeToString(new byte[] { 1, 2 }, Base64.NO_WRAP), humidity.getJSONArray("v").getString(0));
+        assertEquals(1, streams.getJSONObject(1).getJSONArray("v").length());
+        assertEquals(0, inflight.size());
+    }
+
+    @Test
+    public void publishesPartialBatchesAfterTheInterval() throws Exception {
+        start(options());
+
+        publisher.onNotification(ADDRESS, HUMIDITY, new byte[] { 1 });
+        awaitPublished(1);
+        awaitAcknowledged(1);
+    }
+
+    @Test
+    public void waitsForAFullWindowWithKeepAliveDisabled() throws Exception {
+        MqttPublisher.Options options = options();
+        options.keepAliveSeconds = 0;
+        options.window = 1;
+        options.maxBatchSamples = 1;
+        broker.setAcknowledging(true, 200);
+        start(options);
+
+        for (int i = 0; i < 3; i++) {
+            publisher.onNotification(ADDRESS, HUMIDITY, new byte[] { (byte) i });
+        }
+        awaitAcknowledged(3);
+
+        // Each message waited for the previous acknowledgement on the same
+        // connection, rather than the window being treated as stuck.
+        assertEquals(1, broker.connections());
+        List<EmbeddedBroker.Publish> published = broker.published();
+        assertEquals(3, published.size());
+        for (EmbeddedBroker.Publish p : published) {
+            assertFalse(p.dup);
+        }
+    }
+
+    private static boolean publisherThreadAlive() {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("MqttPublisher") && t.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void stopWaitsForThePublisherThread() throws Exception {
+        start(options());
+        publisher.onNotification(ADDRESS, HUMIDITY, new byte[] { 1 });
+        awaitAcknowledged(1);
+
+        publisher.stop();
+        publisher = null;
+        assertFalse(publisherThreadAlive());
+    }
+
+    @Test
+    public void resendsUnacknowledgedMessagesAfterReconnecting() throws Exception {
+        MqttPublisher.Options options = options();
+        options.maxBatchSamples = 1;
+        broker.setAcknowledging(false, 0);
+        start(options);
+
+        publisher.onNotification(ADDRESS, HUMIDITY, new byte[] { 1 });
+        awaitPublished(1);
+        assertEquals(1, inflight.size());
+
+        broker.setAcknowledging(true, 0);
+        broker.dropConnections();
+        awaitPublished(2);
+        awaitAcknowledged(1);
+
+        List<EmbeddedBroker.Publish> published = broker.published();
+        assertTrue(published.get(1).dup);
+        assertEquals(published.get(0).packetId, published.get(1).packetId);
+        assertEquals(0, inflight.size());
+        assertEquals(2, broker.connections());
+    }
+}
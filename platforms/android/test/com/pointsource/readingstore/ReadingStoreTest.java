@@ -0,0 +1,256 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.pointsource.readingstore;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.pointsource.iotpoc.BuildConfig;
+
+/**
+ * Runs the reading store against a temporary directory, including after
+ * crashes left its files half written.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ReadingStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private ReadingStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = new File(folder.getRoot(), "reading-store");
+        store = new ReadingStore(dir);
+        store.open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    private static JSONObject reading(String policyNumber, long date, String... sensors) throws JSONException {
+        JSONArray sensorData = new JSONArray();
+        for (int i = 0; i < sensors.length; i++) {
+            sensorData.put(new JSONObject()
+                    .put("systemId", sensors[i])
+                    .put("name", "Sensor " + sensors[i])
+                    .put("data", new JSONObject()
+                            .put("humidityData", new JSONObject().put("relativeHumidity", 40.5 + i))
+                            .put("temperatureData", new JSONObject()
+                                    .put("ambientTemperature", 20.25 + i)
+                                    .put("targetTemperature", 18.75 + i))));
+        }
+        return new JSONObject()
+                .put("policyNumber", policyNumber)
+                .put("date", date)
+                .put("isClient", false)
+                .put("sensorData", sensorData);
+    }
+
+    private JSONArray readAll() throws JSONException {
+        return store.toReadings(store.query(null, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    private void reopen() throws IOException {
+        store.close();
+        store = new ReadingStore(dir);
+        store.open();
+    }
+
+    private static List<Long> dates(JSONArray readings) throws JSONException {
+        List<Long> dates = new ArrayList<Long>();
+        for (int i = 0; i < readings.length(); i++) {
+            dates.add(readings.getJSONObject(i).getLong("date"));
+        }
+        return dates;
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> dates = new ArrayList<Long>();
+        for (long date = from; date <= to; date++) {
+            dates.add(date);
+        }
+        return dates;
+    }
+
+    @Test
+    public void readingsRoundTripThroughTheLogAndSegments() throws Exception {
+        store.append(reading("P1", 2000, "S1", "S2"));
+        store.append(reading("P2", 1000, "S1"));
+        store.sync();
+
+        for (int pass = 0; pass < 3; pass++) {
+            JSONArray readings = readAll();
+            assertEquals(2, readings.length());
+            JSONObject first = readings.getJSONObject(0);
+            assertEquals("P2", first.getString("policyNumber"));
+            assertEquals(1000, first.getLong("date"));
+            JSONObject second = readings.getJSONObject(1);
+            assertEquals("P1", second.getString("policyNumber"));
+            JSONArray sensorData = second.getJSONArray("sensorData");
+            assertEquals(2, sensorData.length());
+            JSONObject s2 = sensorData.getJSONObject(1);
+            assertEquals("S2", s2.getString("systemId"));
+            assertEquals("Sensor S2", s2.getString("name"));
+            JSONObject data = s2.getJSONObject("data");
+            assertEquals(41.5, data.getJSONObject("humidityData").getDouble("relativeHumidity"), 0);
+            assertEquals(21.25, data.getJSONObject("temperatureData").getDouble("ambientTemperature"), 0);
+            assertEquals(19.75, data.getJSONObject("temperatureData").getDouble("targetTemperature"), 0);
+
+            // Reads the same rows again from a reopened log, then from a segment.
+            if (pass == 0) {
+                reopen();
+            } else if (pass == 1) {
+                assertEquals(3, store.compact());
+                reopen();
+            }
+        }
+        assertEquals(1, store.toReadings(store.query("P1", 0, 5000)).length());
+    }
+
+    @Test
+    public void readingsOfDifferentPoliciesWithTheSameDateStaySeparate() throws Exception {
+        store.append(reading("P1", 1000, "S1", "S2"));
+        store.append(reading("P2", 1000, "S1", "S2"));
+
+        JSONArray readings = readAll();
+        assertEquals(2, readings.length());
+        assertEquals(2, readings.getJSONObject(0).getJSONArray("sensorData").length());
+        assertEquals(2, readings.getJSONObject(1).getJSONArray("sensorData").length());
+    }
+
+    @Test
+    public void recoversFromATruncatedLog() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            store.append(reading("P1", 1000 + i, "S1"));
+        }
+        store.sync();
+        store.close();
+
+        // A crash while the file was being extended leaves six whole rows
+        // and half of the seventh.
+        RandomAccessFile log = new RandomAccessFile(new File(dir, "readings.log"), "rw");
+        try {
+            log.setLength(16 + 6 * ReadingLog.RECORD_SIZE + ReadingLog.RECORD_SIZE / 2);
+        } finally {
+            log.close();
+        }
+        store.open();
+        assertEquals(range(1000, 1005), dates(readAll()));
+
+        store.append(reading("P1", 2000, "S1"));
+        reopen();
+        List<Long> expected = range(1000, 1005);
+        expected.add(2000L);
+        assertEquals(expected, dates(readAll()));
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        FileInputStream in = new FileInputStream(from);
+        try {
+            FileOutputStream out = new FileOutputStream(to);
+            try {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    // Appends one reading and compacts it into its own segment, count times.
+    private void writeSegments(int first, int count) throws Exception {
+        for (int i = first; i < first + count; i++) {
+            store.append(reading("P" + (i % 3), 1000 + i, "S1", "S2"));
+            assertEquals(2, store.compact());
+        }
+    }
+
+    @Test
+    public void mergesOnceThereAreMoreThanEightSegments() throws Exception {
+        writeSegments(0, 8);
+        assertEquals(8, store.stats().getInt("segments"));
+
+        writeSegments(8, 1);
+        assertEquals(1, store.stats().getInt("segments"));
+        assertEquals(18, store.stats().getInt("segmentRows"));
+        assertEquals(range(1000, 1008), dates(readAll()));
+
+        reopen();
+        assertEquals(1, store.stats().getInt("segments"));
+        assertEquals(range(1000, 1008), dates(readAll()));
+    }
+
+    @Test
+    public void recoversFromAMergeInterruptedBeforeDeletingItsInputs() throws Exception {
+        writeSegments(0, 8);
+        File[] inputs = dir.listFiles();
+        List<File> copies = new ArrayList<File>();
+        for (File f : inputs) {
+            if (f.getName().startsWith("seg-")) {
+                File copy = new File(folder.getRoot(), f.getName());
+                copy(f, copy);
+                copies.add(copy);
+            }
+        }
+        writeSegments(8, 1);
+        store.close();
+
+        // Puts back the inputs the merge had deleted, as if it had crashed
+        // just after writing the merged segment.
+        for (File copy : copies) {
+            File f = new File(dir, copy.getName());
+            if (!f.exists()) {
+                assertEquals(true, copy.renameTo(f));
+            }
+        }
+        store = new ReadingStore(dir);
+        store.open();
+        assertEquals(1, store.stats().getInt("segments"));
+        assertEquals(range(1000, 1008), dates(readAll()));
+    }
+}
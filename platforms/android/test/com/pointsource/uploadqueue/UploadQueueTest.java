@@ -0,0 +1,229 @@
+package com.pointsource.uploadqueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.cordova.CordovaResourceApi;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.net.Uri;
+
+import com.pointsource.iotpoc.BuildConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the upload queue against a local HTTP stub.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class UploadQueueTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+    private volatile int responseStatus = 200;
+
+    private PendingReadings pending;
+    private UploadQueuePlugin plugin;
+    private ScheduledExecutorService executor;
+
+    private static class Request {
+        String path;
+        String contentType;
+        String contentEncoding;
+        String body;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                Request r = new Request();
+                r.path = exchange.getRequestURI().getPath();
+                r.contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                r.contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                InputStream in = exchange.getRequestBody();
+                if ("gzip".equals(r.contentEncoding)) {
+                    in = new GZIPInputStream(in);
+                }
+                r.body = read(in);
+                requests.add(r);
+                exchange.sendResponseHeaders(responseStatus, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        pending = new PendingReadings(new File(folder.getRoot(), "queue.ndjson"),
+                new File(folder.getRoot(), "rejected.ndjson"));
+        plugin = new UploadQueuePlugin();
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    private void start(String path) {
+        plugin.start(pending, new BatchUploader(resourceApi()), path != null ? uri(path) : null, executor);
+    }
+
+    // Waits for the loading of the queue and any upload that is due now;
+    // retries after a backoff are scheduled later and are not waited for.
+    private void awaitIdle() throws Exception {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        plugin.onDestroy();
+        server.stop(0);
+    }
+
+    private Uri uri(String path) {
+        return Uri.parse("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static JSONObject reading(long date, String systemId) throws Exception {
+        return new JSONObject("{\"policyNumber\":\"01929\",\"date\":" + date
+                + ",\"isClient\":false,\"sensorData\":[{\"name\":\"Garage\",\"systemId\":\"" + systemId
+                + "\",\"data\":{}}]}");
+    }
+
+    @Test
+    public void postsEachReadingAsJson() throws Exception {
+        pending.add(reading(1, "a"));
+        pending.add(reading(2, "a"));
+        start("/readings/add");
+        awaitIdle();
+
+        assertEquals(2, requests.size());
+        for (Request r : requests) {
+            assertEquals("/readings/add", r.path);
+            assertTrue(r.contentType.startsWith("application/json"));
+            assertEquals(null, r.contentEncoding);
+        }
+        assertEquals(1, new JSONObject(requests.get(0).body).getLong("date"));
+        assertEquals(2, new JSONObject(requests.get(1).body).getLong("date"));
+        assertEquals(0, pending.size());
+    }
+
+    @Test
+    public void dropsDuplicateSensorValues() throws Exception {
+        assertTrue(pending.add(reading(1, "a")));
+        start("/readings/add");
+        awaitIdle();
+        assertEquals(false, pending.add(reading(1, "a")));
+        assertEquals(0, pending.size());
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void keepsRejectedReadings() throws Exception {
+        responseStatus = 422;
+        pending.add(reading(1, "a"));
+        pending.add(reading(2, "a"));
+        start("/readings/add");
+        awaitIdle();
+
+        // Both were tried, neither blocks the queue, and neither is lost.
+        assertEquals(2, requests.size());
+        assertEquals(0, pending.size());
+        assertEquals(2, pending.rejectedSize());
+
+        responseStatus = 200;
+        assertEquals(2, pending.requeueRejected());
+        plugin.onResume(false);
+        awaitIdle();
+        assertEquals(4, requests.size());
+        assertEquals(0, pending.size());
+        assertEquals(0, pending.rejectedSize());
+    }
+
+    @Test
+    public void rejectedReadingsSurviveARestart() throws Exception {
+        responseStatus = 400;
+        pending.add(reading(1, "a"));
+        start("/readings/add");
+        awaitIdle();
+
+        PendingReadings reopened = new PendingReadings(new File(folder.getRoot(), "queue.ndjson"),
+                new File(folder.getRoot(), "rejected.ndjson"));
+        reopened.open();
+        assertEquals(0, reopened.size());
+        assertEquals(1, reopened.rejectedSize());
+    }
+
+    @Test
+    public void retriesServerErrors() throws Exception {
+        responseStatus = 503;
+        pending.add(reading(1, "a"));
+        start("/readings/add");
+        awaitIdle();
+
+        assertEquals(1, requests.size());
+        assertEquals(1, pending.size());
+        assertEquals(0, pending.rejectedSize());
+    }
+
+    @Test
+    public void postsNdjsonBatchesWhenConfigured() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            pending.add(reading(i, "a"));
+        }
+        start(null);
+        plugin.configure(new JSONObject("{\"url\":\"" + uri("/readings/add-batch")
+                + "\",\"format\":\"ndjson\",\"batchSize\":10}"));
+        awaitIdle();
+
+        assertEquals(1, requests.size());
+        Request r = requests.get(0);
+        assertEquals("/readings/add-batch", r.path);
+        assertEquals("gzip", r.contentEncoding);
+        assertTrue(r.contentType.startsWith("application/x-ndjson"));
+        assertEquals(3, r.body.split("\n").length);
+    }
+
+    private static CordovaResourceApi resourceApi() {
+        CordovaResourceApi resourceApi = new CordovaResourceApi(RuntimeEnvironment.application, null);
+        resourceApi.setThreadCheckingEnabled(false);
+        return resourceApi;
+    }
+}
@@ -23,6 +23,9 @@ var exec = cordova.require('cordova/exec');
  * <p>To conserve energy, call stopScan() as soon as you've found the device
  * you're looking for.</p>
  * <p>Call stopScan() before calling startScan() again.</p>
+ * <p>On Android, if a device is found again before the previous result for
+ * it has been delivered (for example while the app is paused), only the
+ * newest result is delivered.</p>
  *
  * @param {array} uuids - Array with service UUID strings (optional).
  * On iOS multiple UUIDs are scanned for using logical OR operator,
@@ -570,7 +573,9 @@ exports.writeDescriptor = function(deviceHandle, descriptorHandle, data, win, fa
 *
 * @param {number} deviceHandle - A handle from {@link connectCallback}.
 * @param {number} characteristicHandle - A handle from {@link characteristicCallback}.
-* @param {dataCallback} win - Called every time the value changes.
+* @param {dataCallback} win - Called every time the value changes. On Android,
+* a value that has not yet been delivered when the next one arrives is
+* replaced by it.
 * @param {failCallback} fail
 * @example
 evothings.ble.enableNotification(
@@ -635,6 +640,84 @@ exports.reset = function(win, fail) {
 	exec(win, fail, 'BLE', 'reset', []);
 };
 
+/** Enables background collection of notification data. Android only.
+* <p>While the app is in the background, data from enabled notifications
+* is not sent to their callbacks. It is appended to a native on-disk log
+* instead, and a foreground service keeps the app process running.</p>
+* <p>When the app returns to the foreground, win is called once with a
+* {@link BacklogSummary} describing what was collected.</p>
+* <p>Background collection stays enabled until stopBackgroundCollection()
+* is called or the page is reloaded.</p>
+*
+* @param {BackgroundOptions} options - Optional.
+* @param {backlogCallback} win - Called each time the app resumes.
+* @param {failCallback} fail
+* @example
+evothings.ble.startBackgroundCollection(
+	{ notificationText: 'Recording SensorTag data' },
+	function(backlog)
+	{
+		console.log('Collected ' + backlog.sampleCount + ' samples in background');
+	},
+	function(errorCode)
+	{
+		console.log('BLE startBackgroundCollection error: ' + errorCode);
+	});
+*/
+exports.startBackgroundCollection = function(options, win, fail) {
+	if ('function' == typeof options)
+	{
+		// No options specified.
+		exec(options, win, 'BLE', 'startBackgroundCollection', []);
+	}
+	else
+	{
+		exec(win, fail, 'BLE', 'startBackgroundCollection', [options]);
+	}
+};
+
+/** Options for startBackgroundCollection(). All properties are optional.
+* @typedef {Object} BackgroundOptions
+* @property {string} notificationTitle - Title of the ongoing notification.
+* The default is the application name.
+* @property {string} notificationText - Text of the ongoing notification.
+*/
+
+/** Called with a summary of notification data collected in the background.
+* @callback backlogCallback
+* @param {BacklogSummary} backlog
+*/
+
+/** Describes notification data collected while the app was in the background.
+* @typedef {Object} BacklogSummary
+* @property {string} file - Path of the native sample log.
+* @property {number} fileSize - Size of the sample log in bytes, including
+* samples from earlier background periods that have not been cleared. Once
+* the log reaches 4MB it is moved to file + '.1', replacing an earlier one,
+* so fileSize counts both files.
+* @property {number} sampleCount - Number of samples collected during this
+* background period.
+* @property {Array} streams - One entry per device address and characteristic
+* UUID, with the properties address, characteristic, count, firstTime,
+* lastTime and lastValue (Base64).
+*/
+
+/** Disables background collection. The sample log is kept.
+* @param {emptyCallback} win
+* @param {failCallback} fail
+*/
+exports.stopBackgroundCollection = function(win, fail) {
+	exec(win, fail, 'BLE', 'stopBackgroundCollection', []);
+};
+
+/** Deletes the native sample log written by background collection.
+* @param {emptyCallback} win
+* @param {failCallback} fail
+*/
+exports.clearBackgroundSamples = function(win, fail) {
+	exec(win, fail, 'BLE', 'clearBackgroundSamples', []);
+};
+
 /** Converts an ArrayBuffer containing UTF-8 data to a JavaScript String.
 * @param {ArrayBuffer} a
 * @returns string
@@ -0,0 +1,260 @@
+/*
+Copyright 2014 Evothings AB
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.evothings;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.IBinder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.UUID;
+
+// Foreground service that keeps the application process alive while the
+// Activity is paused and BLE notifications are being collected natively.
+//
+// While the process lives the service does no work. GATT callbacks keep
+// arriving in the BLE plugin; the ongoing notification only raises the
+// process priority so that Android is less likely to kill it.
+//
+// If the process is killed anyway, the service is restarted with the
+// intent that started it. The plugin is gone at that point, so the service
+// reconnects to the devices listed in EXTRA_TARGETS itself, re-enables
+// their notifications and appends to the same BackgroundSampleLog.
+public class BackgroundCollectionService extends Service
+{
+	static final String EXTRA_TITLE = "title";
+	static final String EXTRA_TEXT = "text";
+
+	// Notifying characteristics to collect from after a restart, as
+	// "address/uuid" strings.
+	static final String EXTRA_TARGETS = "targets";
+
+	private static final int NOTIFICATION_ID = 0x45564f;
+
+	private static final UUID CLIENT_CONFIG =
+		UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+	// Connections opened by the service after a restart.
+	private final ArrayList<BluetoothGatt> mGatts = new ArrayList<BluetoothGatt>();
+
+	private volatile BackgroundSampleLog mLog;
+
+	static void start(Context context, String title, String text, ArrayList<String> targets)
+	{
+		Intent intent = new Intent(context, BackgroundCollectionService.class);
+		intent.putExtra(EXTRA_TITLE, title);
+		intent.putExtra(EXTRA_TEXT, text);
+		intent.putStringArrayListExtra(EXTRA_TARGETS, targets);
+		context.startService(intent);
+	}
+
+	static void stop(Context context)
+	{
+		context.stopService(new Intent(context, BackgroundCollectionService.class));
+	}
+
+	@Override
+	public int onStartCommand(Intent intent, int flags, int startId)
+	{
+		String title = null;
+		String text = null;
+		if(intent != null) {
+			title = intent.getStringExtra(EXTRA_TITLE);
+			text = intent.getStringExtra(EXTRA_TEXT);
+		}
+		if(title == null)
+			title = getApplicationInfo().loadLabel(getPackageManager()).toString();
+		if(text == null)
+			text = "Collecting sensor data";
+
+		Notification.Builder builder = new Notification.Builder(this)
+			.setSmallIcon(getApplicationInfo().icon)
+			.setContentTitle(title)
+			.setContentText(text)
+			.setOngoing(true);
+
+		Intent launch = getPackageManager().getLaunchIntentForPackage(getPackageName());
+		if(launch != null) {
+			builder.setContentIntent(PendingIntent.getActivity(this, 0, launch, 0));
+		}
+
+		Notification notification;
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			notification = builder.build();
+		} else {
+			notification = builder.getNotification();
+		}
+		startForeground(NOTIFICATION_ID, notification);
+
+		// A redelivered intent means the process was killed and the
+		// plugin's connections went with it.
+		if(intent != null && (flags & START_FLAG_REDELIVERY) != 0 && mLog == null) {
+			resumeCollection(intent.getStringArrayListExtra(EXTRA_TARGETS));
+		}
+
+		return START_REDELIVER_INTENT;
+	}
+
+	// Reopens the sample log and reconnects to every device in targets.
+	private void resumeCollection(ArrayList<String> targets)
+	{
+		BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+		if(targets == null || targets.isEmpty() || adapter == null)
+			return;
+
+		mLog = BackgroundSampleLog.get(this);
+		try {
+			mLog.open();
+		} catch(IOException e) {
+			e.printStackTrace();
+			mLog = null;
+			return;
+		}
+
+		HashMap<String, HashSet<UUID>> byAddress = new HashMap<String, HashSet<UUID>>();
+		for(String target : targets) {
+			int slash = target.indexOf('/');
+			if(slash < 0)
+				continue;
+			String address = target.substring(0, slash);
+			HashSet<UUID> uuids = byAddress.get(address);
+			if(uuids == null) {
+				uuids = new HashSet<UUID>();
+				byAddress.put(address, uuids);
+			}
+			uuids.add(UUID.fromString(target.substring(slash + 1)));
+		}
+
+		for(String address : byAddress.keySet()) {
+			if(!BluetoothAdapter.checkBluetoothAddress(address))
+				continue;
+			BluetoothDevice device = adapter.getRemoteDevice(address);
+			// autoConnect, so that a device that is out of range right now is
+			// picked up when it comes back.
+			BluetoothGatt gatt = device.connectGatt(this, true,
+				new Collector(byAddress.get(address)));
+			if(gatt != null)
+				mGatts.add(gatt);
+		}
+	}
+
+	// Enables notifications on the collected characteristics of one device,
+	// one descriptor write at a time, and appends what arrives to the log.
+	private class Collector extends BluetoothGattCallback
+	{
+		private final HashSet<UUID> mUuids;
+		private final LinkedList<BluetoothGattDescriptor> mPending =
+			new LinkedList<BluetoothGattDescriptor>();
+
+		Collector(HashSet<UUID> uuids)
+		{
+			mUuids = uuids;
+		}
+
+		@Override
+		public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState)
+		{
+			if(newState == BluetoothProfile.STATE_CONNECTED) {
+				gatt.discoverServices();
+			}
+		}
+
+		@Override
+		public void onServicesDiscovered(BluetoothGatt gatt, int status)
+		{
+			if(status != BluetoothGatt.GATT_SUCCESS)
+				return;
+			synchronized(mPending) {
+				mPending.clear();
+				for(BluetoothGattService s : gatt.getServices()) {
+					for(BluetoothGattCharacteristic c : s.getCharacteristics()) {
+						if(!mUuids.contains(c.getUuid()))
+							continue;
+						BluetoothGattDescriptor d = c.getDescriptor(CLIENT_CONFIG);
+						if(d == null || !gatt.setCharacteristicNotification(c, true))
+							continue;
+						d.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+						mPending.add(d);
+					}
+				}
+			}
+			writeNext(gatt);
+		}
+
+		@Override
+		public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor d, int status)
+		{
+			writeNext(gatt);
+		}
+
+		private void writeNext(BluetoothGatt gatt)
+		{
+			BluetoothGattDescriptor d;
+			synchronized(mPending) {
+				d = mPending.poll();
+			}
+			if(d != null && !gatt.writeDescriptor(d)) {
+				writeNext(gatt);
+			}
+		}
+
+		@Override
+		public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic c)
+		{
+			BackgroundSampleLog log = mLog;
+			if(log != null) {
+				log.append(gatt.getDevice().getAddress(), c.getUuid().toString(), c.getValue());
+			}
+		}
+	}
+
+	@Override
+	public void onDestroy()
+	{
+		for(BluetoothGatt gatt : mGatts) {
+			gatt.close();
+		}
+		mGatts.clear();
+		if(mLog != null) {
+			mLog.close();
+			mLog = null;
+		}
+		stopForeground(true);
+		super.onDestroy();
+	}
+
+	@Override
+	public IBinder onBind(Intent intent)
+	{
+		return null;
+	}
+}
@@ -0,0 +1,379 @@
+/*
+Copyright 2014 Evothings AB
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.evothings;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import android.util.Base64;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import android.content.Context;
+
+// Append-only on-disk buffer for notification data received while the
+// WebView is in the background.
+//
+// Record layout (big-endian, as written by DataOutputStream):
+//   long   time in milliseconds since the epoch
+//   UTF    device address
+//   UTF    characteristic UUID
+//   short  value length
+//   byte[] value
+//
+// The log also keeps a per-stream summary of what was appended since the
+// last call to takeSummary(), so the JavaScript side can be told about the
+// backlog with a single callback instead of one callback per sample. Where
+// the last summary ended is saved next to the log, so that the summary can
+// be rebuilt from the file after the process was killed.
+//
+// Once the log reaches MAX_FILE_SIZE it is renamed to samples.bin.1,
+// replacing an earlier one, and a new log is started. At most about twice
+// MAX_FILE_SIZE is kept.
+class BackgroundSampleLog
+{
+	static final long MAX_FILE_SIZE = 4 * 1024 * 1024;
+
+	private final File mFile;
+	private final File mPreviousFile;
+	private final File mPositionFile;
+	private DataOutputStream mOut;
+	// Length of mFile when mOut was opened.
+	private long mBaseLength;
+	// True once the summary has been rebuilt from the files.
+	private boolean mLoaded;
+
+	// Where the samples not yet summarized start: an offset into mFile, or
+	// into mPreviousFile if mSummaryInPrevious is set.
+	private boolean mSummaryInPrevious;
+	private long mSummaryOffset;
+
+	// Total number of samples appended since the last takeSummary().
+	private long mSampleCount;
+
+	// Keyed by "address/uuid", in order of first appearance.
+	private final LinkedHashMap<String, Stream> mStreams =
+		new LinkedHashMap<String, Stream>();
+
+	private static class Stream
+	{
+		final String mAddress;
+		final String mCharacteristic;
+		long mCount;
+		long mFirstTime;
+		long mLastTime;
+		byte[] mLastValue;
+
+		Stream(String address, String characteristic)
+		{
+			mAddress = address;
+			mCharacteristic = characteristic;
+		}
+	}
+
+	private static BackgroundSampleLog sInstance;
+
+	BackgroundSampleLog(File file)
+	{
+		mFile = file;
+		mPreviousFile = new File(file.getPath() + ".1");
+		mPositionFile = new File(file.getPath() + ".pos");
+	}
+
+	// The plugin and BackgroundCollectionService write the same file, the
+	// service only after the process was restarted. Sharing one instance
+	// keeps their appends and the summary consistent.
+	static synchronized BackgroundSampleLog get(Context context)
+	{
+		if(sInstance == null) {
+			File dir = new File(context.getFilesDir(), "ble-background");
+			sInstance = new BackgroundSampleLog(new File(dir, "samples.bin"));
+		}
+		return sInstance;
+	}
+
+	File getFile()
+	{
+		return mFile;
+	}
+
+	synchronized void open() throws IOException
+	{
+		if(mOut != null)
+			return;
+		File parent = mFile.getParentFile();
+		if(parent != null)
+			parent.mkdirs();
+		load();
+		mBaseLength = mFile.length();
+		mOut = new DataOutputStream(new BufferedOutputStream(
+			new FileOutputStream(mFile, true), 8192));
+	}
+
+	synchronized void append(String address, String characteristic, byte[] value)
+	{
+		if(mOut == null)
+			return;
+		long now = System.currentTimeMillis();
+		try {
+			if(length() >= MAX_FILE_SIZE)
+				rotate();
+			mOut.writeLong(now);
+			mOut.writeUTF(address);
+			mOut.writeUTF(characteristic);
+			mOut.writeShort(value.length);
+			mOut.write(value);
+		} catch(IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		count(address, characteristic, now, value);
+	}
+
+	private void count(String address, String characteristic, long time, byte[] value)
+	{
+		String key = address + "/" + characteristic;
+		Stream s = mStreams.get(key);
+		if(s == null) {
+			s = new Stream(address, characteristic);
+			s.mFirstTime = time;
+			mStreams.put(key, s);
+		}
+		s.mCount++;
+		s.mLastTime = time;
+		s.mLastValue = value;
+		mSampleCount++;
+	}
+
+	// Length of mFile, including buffered records.
+	private long length()
+	{
+		return mBaseLength + mOut.size();
+	}
+
+	private void rotate() throws IOException
+	{
+		mOut.close();
+		mOut = null;
+		mPreviousFile.delete();
+		if(!mFile.renameTo(mPreviousFile))
+			throw new IOException("Could not rename " + mFile);
+		if(mSummaryInPrevious) {
+			// The samples after the summary in the deleted file are gone.
+			mSummaryOffset = 0;
+		}
+		mSummaryInPrevious = true;
+		savePosition();
+		mBaseLength = 0;
+		mOut = new DataOutputStream(new BufferedOutputStream(
+			new FileOutputStream(mFile, true), 8192));
+	}
+
+	// Rebuilds the summary of the samples appended since the last
+	// takeSummary() by an earlier process, once.
+	private void load()
+	{
+		if(mLoaded)
+			return;
+		mLoaded = true;
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(mPositionFile));
+			try {
+				mSummaryInPrevious = in.readBoolean();
+				mSummaryOffset = in.readLong();
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			// No summary taken yet; everything is new.
+			mSummaryInPrevious = false;
+			mSummaryOffset = 0;
+		}
+		if(mSummaryInPrevious)
+			scan(mPreviousFile, mSummaryOffset);
+		long end = scan(mFile, mSummaryInPrevious ? 0 : mSummaryOffset);
+		if(end >= 0 && end < mFile.length()) {
+			// Drops a record torn by the process being killed, so that new
+			// records are appended after the last whole one.
+			try {
+				RandomAccessFile f = new RandomAccessFile(mFile, "rw");
+				try {
+					f.setLength(end);
+				} finally {
+					f.close();
+				}
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	// Counts the whole records of file from offset on. Returns the end of
+	// the last one, or -1 if the file could not be read.
+	private long scan(File file, long offset)
+	{
+		if(!file.exists())
+			return -1;
+		long end = offset;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 8192));
+			try {
+				long skipped = 0;
+				while(skipped < offset) {
+					long n = in.skip(offset - skipped);
+					if(n <= 0)
+						return -1;
+					skipped += n;
+				}
+				while(true) {
+					long time;
+					try {
+						time = in.readLong();
+					} catch(EOFException e) {
+						break;
+					}
+					String address = in.readUTF();
+					String characteristic = in.readUTF();
+					byte[] value = new byte[in.readUnsignedShort()];
+					in.readFully(value);
+					count(address, characteristic, time, value);
+					end += 8 + 2 + utfLength(address) + 2 + utfLength(characteristic) + 2 + value.length;
+				}
+			} catch(EOFException e) {
+				// A torn last record.
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			e.printStackTrace();
+			return -1;
+		}
+		return end;
+	}
+
+	// The number of bytes writeUTF() writes for s, without the length.
+	private static int utfLength(String s)
+	{
+		int n = 0;
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			n += (c >= 0x0001 && c <= 0x007F) ? 1 : (c > 0x07FF ? 3 : 2);
+		}
+		return n;
+	}
+
+	private void savePosition() throws IOException
+	{
+		File tmp = new File(mPositionFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+		try {
+			out.writeBoolean(mSummaryInPrevious);
+			out.writeLong(mSummaryOffset);
+		} finally {
+			out.close();
+		}
+		if(!tmp.renameTo(mPositionFile))
+			throw new IOException("Could not rename " + tmp);
+	}
+
+	// True if samples were appended since the last takeSummary(), including
+	// by a process that was killed.
+	synchronized boolean hasSamples()
+	{
+		load();
+		return mSampleCount > 0;
+	}
+
+	synchronized void close()
+	{
+		if(mOut == null)
+			return;
+		try {
+			mOut.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		mOut = null;
+	}
+
+	// Deletes everything written so far. The log is closed afterwards.
+	synchronized void clear()
+	{
+		close();
+		mFile.delete();
+		mPreviousFile.delete();
+		mPositionFile.delete();
+		mStreams.clear();
+		mSampleCount = 0;
+		mSummaryInPrevious = false;
+		mSummaryOffset = 0;
+		mLoaded = true;
+	}
+
+	// Returns a compact description of the samples appended since the
+	// previous call, and starts a new summary.
+	synchronized JSONObject takeSummary() throws JSONException
+	{
+		load();
+		if(mOut != null) {
+			try {
+				mOut.flush();
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		JSONArray streams = new JSONArray();
+		for(Stream s : mStreams.values()) {
+			JSONObject o = new JSONObject();
+			o.put("address", s.mAddress);
+			o.put("characteristic", s.mCharacteristic);
+			o.put("count", s.mCount);
+			o.put("firstTime", s.mFirstTime);
+			o.put("lastTime", s.mLastTime);
+			o.put("lastValue", Base64.encodeToString(s.mLastValue, Base64.NO_WRAP));
+			streams.put(o);
+		}
+
+		JSONObject summary = new JSONObject();
+		summary.put("name", "backlog");
+		summary.put("file", mFile.getAbsolutePath());
+		summary.put("fileSize", mFile.length() + mPreviousFile.length());
+		summary.put("sampleCount", mSampleCount);
+		summary.put("streams", streams);
+
+		mStreams.clear();
+		mSampleCount = 0;
+		mSummaryInPrevious = false;
+		mSummaryOffset = mFile.length();
+		try {
+			savePosition();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		return summary;
+	}
+}
@@ -0,0 +1,148 @@
+package com.pointsource.mqtt;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+/**
+ * QoS 1 messages that have been published but not acknowledged, one file
+ * each, so that they survive the process being killed and are resent on
+ * the next connection.
+ */
+final class InflightStore {
+    static final class Message {
+        final long sequence;
+        final int packetId;
+        final String topic;
+        final byte[] payload;
+
+        Message(long sequence, int packetId, String topic, byte[] payload) {
+            this.sequence = sequence;
+            this.packetId = packetId;
+            this.topic = topic;
+            this.payload = payload;
+        }
+    }
+
+    private final File dir;
+    // By packet id, in publish order.
+    private final LinkedHashMap<Integer, Message> messages = new LinkedHashMap<Integer, Message>();
+    private long nextSequence;
+    private int nextPacketId = 1;
+
+    InflightStore(File dir) {
+        this.dir = dir;
+    }
+
+    synchronized void open() throws IOException {
+        dir.mkdirs();
+        messages.clear();
+        File[] files = dir.listFiles();
+        Arrays.sort(files);
+        for (File f : files) {
+            if (!f.getName().endsWith(".msg")) {
+                f.delete();
+                continue;
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+            try {
+                long sequence = Long.parseLong(f.getName().substring(0, f.getName().length() - 4));
+                int packetId = in.readUnsignedShort();
+                String topic = in.readUTF();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                messages.put(packetId, new Message(sequence, packetId, topic, payload));
+                nextSequence = Math.max(nextSequence, sequence + 1);
+            } catch (IOException e) {
+                f.delete();
+            } catch (NumberFormatException e) {
+                f.delete();
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    synchronized int size() {
+        return messages.size();
+    }
+
+    /**
+     * Persists a message and assigns it a packet id that is not in flight.
+     * Must only be called when size() is below 65535.
+     */
+    synchronized Message add(String topic, byte[] payload) throws IOException {
+        while (messages.containsKey(nextPacketId)) {
+            nextPacketId = nextPacketId == 0xFFFF ? 1 : nextPacketId + 1;
+        }
+        Message m = new Message(nextSequence++, nextPacketId, topic, payload);
+        nextPacketId = nextPacketId == 0xFFFF ? 1 : nextPacketId + 1;
+
+        File tmp = new File(dir, m.sequence + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        DataOutputStream out = new DataOutputStream(fos);
+        try {
+            out.writeShort(m.packetId);
+            out.writeUTF(topic);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file(m))) {
+            tmp.delete();
+            throw new IOException("Could not rename " + tmp);
+        }
+        messages.put(m.packetId, m);
+        notifyAll();
+        return m;
+    }
+
+    /**
+     * Removes an acknowledged message. Returns false if it was not in flight.
+     */
+    synchronized boolean remove(int packetId) {
+        Message m = messages.remove(packetId);
+        if (m == null) {
+            return false;
+        }
+        file(m).delete();
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Waits until fewer than window messages are in flight. Returns false
+     * if that did not happen within timeout milliseconds.
+     */
+    synchronized boolean awaitBelow(int window, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (messages.size() >= window) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    synchronized Collection<Message> snapshot() {
+        return Arrays.asList(messages.values().toArray(new Message[messages.size()]));
+    }
+
+    // Zero padded, so that a name sort is a publish order sort.
+    private File file(Message m) {
+        return new File(dir, String.format(Locale.US, "%019d.msg", m.sequence));
+    }
+}
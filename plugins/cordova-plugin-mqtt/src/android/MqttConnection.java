@@ -0,0 +1,209 @@
+package com.pointsource.mqtt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Minimal MQTT 3.1.1 client connection: CONNECT, PUBLISH at QoS 1, PUBACK,
+ * PINGREQ and DISCONNECT. Subscriptions are not supported.
+ *
+ * Incoming packets are read on a dedicated thread and reported to the
+ * {@link Listener}.
+ */
+final class MqttConnection {
+    private static final int CONNECT = 0x10;
+    private static final int CONNACK = 0x20;
+    private static final int PUBLISH_QOS1 = 0x32;
+    private static final int PUBLISH_DUP = 0x08;
+    private static final int PUBACK = 0x40;
+    private static final int PINGREQ = 0xC0;
+    private static final int DISCONNECT = 0xE0;
+
+    private static final int CONNECT_TIMEOUT = 15000;
+
+    interface Listener {
+        void onPubAck(int packetId);
+
+        void onConnectionLost(IOException e);
+    }
+
+    private final Socket socket = new Socket();
+    private OutputStream out;
+    private DataInputStream in;
+    private Thread reader;
+    private volatile boolean closed;
+
+    /**
+     * Connects and waits for the broker's CONNACK. The session is kept
+     * (clean session off), so unacknowledged messages can be resent after
+     * reconnecting.
+     */
+    void connect(String host, int port, String clientId, String userName, String password,
+            int keepAliveSeconds, final Listener listener) throws IOException {
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(CONNECT_TIMEOUT);
+        out = new BufferedOutputStream(socket.getOutputStream());
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeString(body, "MQTT");
+        body.write(4); // Protocol level 3.1.1.
+        int flags = 0;
+        if (userName != null) {
+            flags |= 0x80;
+        }
+        if (password != null) {
+            flags |= 0x40;
+        }
+        body.write(flags);
+        body.write(keepAliveSeconds >> 8);
+        body.write(keepAliveSeconds);
+        writeString(body, clientId);
+        if (userName != null) {
+            writeString(body, userName);
+        }
+        if (password != null) {
+            writeString(body, password);
+        }
+        writePacket(CONNECT, body);
+        out.flush();
+
+        int type = in.readUnsignedByte();
+        int length = readRemainingLength(in);
+        if (type != CONNACK || length != 2) {
+            throw new IOException("Expected CONNACK, got packet type " + type);
+        }
+        in.readUnsignedByte(); // Session present.
+        int returnCode = in.readUnsignedByte();
+        if (returnCode != 0) {
+            throw new IOException("Connection refused by broker, return code " + returnCode);
+        }
+        // Keep alive pings guarantee traffic, so reads only time out if
+        // the connection is dead.
+        socket.setSoTimeout(keepAliveSeconds * 1500);
+
+        reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read(listener);
+            }
+        }, "MqttReader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    synchronized void publish(int packetId, String topic, byte[] payload, boolean dup) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(payload.length + topic.length() + 4);
+        writeString(body, topic);
+        body.write(packetId >> 8);
+        body.write(packetId);
+        body.write(payload);
+        writePacket(PUBLISH_QOS1 | (dup ? PUBLISH_DUP : 0), body);
+    }
+
+    synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    synchronized void ping() throws IOException {
+        writePacket(PINGREQ, null);
+        out.flush();
+    }
+
+    /**
+     * Disconnects cleanly if possible, then closes the socket.
+     */
+    void close() {
+        closed = true;
+        try {
+            synchronized (this) {
+                if (out != null) {
+                    writePacket(DISCONNECT, null);
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // Closing anyway.
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignored.
+        }
+    }
+
+    private void read(Listener listener) {
+        try {
+            while (true) {
+                int type = in.readUnsignedByte();
+                int length = readRemainingLength(in);
+                if ((type & 0xF0) == PUBACK && length == 2) {
+                    listener.onPubAck(in.readUnsignedShort());
+                } else {
+                    // PINGRESP, or anything else we don't handle.
+                    skipFully(length);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                listener.onConnectionLost(e);
+            }
+        }
+    }
+
+    private void writePacket(int header, ByteArrayOutputStream body) throws IOException {
+        int length = body == null ? 0 : body.size();
+        out.write(header);
+        do {
+            int digit = length % 128;
+            length /= 128;
+            out.write(length > 0 ? digit | 0x80 : digit);
+        } while (length > 0);
+        if (body != null) {
+            body.writeTo(out);
+        }
+    }
+
+    // skipBytes() may skip fewer bytes than asked, e.g. at the end of the
+    // buffered data.
+    private void skipFully(int count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes(count);
+            if (skipped == 0) {
+                // Blocks until a byte arrives, or throws at the end of the stream.
+                in.readByte();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static int readRemainingLength(DataInputStream in) throws IOException {
+        int length = 0;
+        int multiplier = 1;
+        for (int i = 0; i < 4; i++) {
+            int digit = in.readUnsignedByte();
+            length += (digit & 0x7F) * multiplier;
+            if ((digit & 0x80) == 0) {
+                return length;
+            }
+            multiplier *= 128;
+        }
+        throw new EOFException("Malformed remaining length");
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.write(bytes.length >> 8);
+        out.write(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,472 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.pointsource.readingstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Time-series store of sensor readings, keyed by policy number and sensor
+ * System ID.
+ *
+ * New rows are appended to a memory-mapped {@link ReadingLog}, with an
+ * in-memory per-policy index of row positions. {@link #compact()} moves the
+ * log into an immutable, delta-encoded {@link Segment}; once there are more
+ * than MAX_SEGMENTS segments they are merged into one.
+ *
+ * A {@link PolicySummary} per policy is updated on every append. A snapshot
+ * of the summaries is saved after each compaction, so that on open only the
+ * log has to be replayed.
+ *
+ * All methods are synchronized, and do file I/O, so they must not be called
+ * on the UI or WebCore threads.
+ */
+final class ReadingStore {
+    private static final int MAX_SEGMENTS = 8;
+
+    private static final String SUMMARIES_FILE = "summaries.dat";
+    private static final int SUMMARIES_MAGIC = 0x5253554d; // "RSUM"
+
+    private final File dir;
+    private StringTable strings;
+    private ReadingLog log;
+    private final ArrayList<Segment> segments = new ArrayList<Segment>();
+
+    // Positions of the log rows of each policy, in append order.
+    private final HashMap<Integer, IntList> logIndex = new HashMap<Integer, IntList>();
+    private final HashMap<Integer, PolicySummary> summaries = new HashMap<Integer, PolicySummary>();
+
+    ReadingStore(File dir) {
+        this.dir = dir;
+    }
+
+    synchronized void open() throws IOException {
+        if (log != null) {
+            return;
+        }
+        dir.mkdirs();
+        strings = new StringTable(new File(dir, "strings.dat"));
+        strings.open();
+        log = new ReadingLog(new File(dir, "readings.log"));
+        log.open();
+
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File d, String name) {
+                return name.startsWith("seg-");
+            }
+        });
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.getName().endsWith(".tmp")) {
+                // Left behind by an interrupted compaction.
+                f.delete();
+            } else {
+                segments.add(Segment.open(f));
+            }
+        }
+        // A merge that was interrupted before deleting its inputs.
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment s = segments.get(i);
+            for (Segment other : segments) {
+                if (s.isCoveredBy(other)) {
+                    s.file.delete();
+                    segments.remove(i);
+                    break;
+                }
+            }
+        }
+        // A compaction that was interrupted before clearing the log.
+        for (Segment s : segments) {
+            if (s.maxGeneration >= log.generation()) {
+                log.clear();
+                break;
+            }
+        }
+
+        loadSummaries();
+        Row r = new Row();
+        long prevDate = 0;
+        int prevPolicy = -1;
+        boolean prevClient = false;
+        for (int i = 0; i < log.size(); i++) {
+            log.read(i, r);
+            indexLogRow(r.policy, i);
+            // The rows of a reading are appended together.
+            summarize(r, r.policy != prevPolicy || r.date != prevDate || r.client != prevClient);
+            prevPolicy = r.policy;
+            prevDate = r.date;
+            prevClient = r.client;
+        }
+    }
+
+    synchronized void close() throws IOException {
+        if (log == null) {
+            return;
+        }
+        log.close();
+        strings.close();
+        log = null;
+        strings = null;
+        segments.clear();
+        logIndex.clear();
+        summaries.clear();
+    }
+
+    /**
+     * Appends a reading, in the shape used by the app's Reading interface.
+     */
+    synchronized void append(JSONObject reading) throws IOException, JSONException {
+        int policy = strings.intern(reading.getString("policyNumber"));
+        long date = reading.getLong("date");
+        boolean client = reading.optBoolean("isClient");
+        JSONArray sensorData = reading.getJSONArray("sensorData");
+        Row r = new Row();
+        for (int i = 0; i < sensorData.length(); i++) {
+            JSONObject sd = sensorData.getJSONObject(i);
+            JSONObject data = sd.optJSONObject("data");
+            JSONObject humidityData = data == null ? null : data.optJSONObject("humidityData");
+            JSONObject temperatureData = data == null ? null : data.optJSONObject("temperatureData");
+
+            r.date = date;
+            r.policy = policy;
+            r.client = client;
+            r.sensor = strings.intern(sd.getString("systemId"));
+            r.name = strings.intern(sd.optString("name"));
+            r.humidity = humidityData == null ? Float.NaN
+                    : (float) humidityData.optDouble("relativeHumidity");
+            r.ambientTemperature = temperatureData == null ? Float.NaN
+                    : (float) temperatureData.optDouble("ambientTemperature");
+            r.targetTemperature = temperatureData == null ? Float.NaN
+                    : (float) temperatureData.optDouble("targetTemperature");
+            indexLogRow(policy, log.append(r));
+            summarize(r, i == 0);
+        }
+    }
+
+    /**
+     * Makes appended readings durable.
+     */
+    synchronized void sync() {
+        log.force();
+    }
+
+    /**
+     * Returns the rows of the given policy, or of all policies if
+     * policyNumber is null, with from <= date <= to, sorted by date.
+     */
+    synchronized List<Row> query(String policyNumber, long from, long to) {
+        ArrayList<Row> out = new ArrayList<Row>();
+        if (policyNumber == null) {
+            for (Segment s : segments) {
+                for (Segment.Entry e : s.entries()) {
+                    s.read(e.policy, from, to, out);
+                }
+            }
+            for (int i = 0; i < log.size(); i++) {
+                addLogRow(i, from, to, out);
+            }
+        } else {
+            int policy = strings.lookup(policyNumber);
+            if (policy < 0) {
+                return out;
+            }
+            for (Segment s : segments) {
+                s.read(policy, from, to, out);
+            }
+            IntList rows = logIndex.get(policy);
+            if (rows != null) {
+                for (int i = 0; i < rows.size; i++) {
+                    addLogRow(rows.values[i], from, to, out);
+                }
+            }
+        }
+        Collections.sort(out, Row.BY_DATE);
+        return out;
+    }
+
+    /**
+     * Moves the log into a new segment. Returns the number of rows moved.
+     * Does nothing if the store is not open.
+     */
+    synchronized int compact() throws IOException {
+        int n = log == null ? 0 : log.size();
+        if (n == 0) {
+            return 0;
+        }
+        ArrayList<Row> rows = new ArrayList<Row>(n);
+        for (int i = 0; i < n; i++) {
+            rows.add(log.read(i, new Row()));
+        }
+        int generation = log.generation();
+        segments.add(writeSegment(rows, generation, generation));
+        log.clear();
+        logIndex.clear();
+
+        if (segments.size() > MAX_SEGMENTS) {
+            merge();
+        }
+        saveSummaries();
+        return n;
+    }
+
+    private void merge() throws IOException {
+        ArrayList<Row> rows = new ArrayList<Row>();
+        int minGeneration = Integer.MAX_VALUE;
+        int maxGeneration = Integer.MIN_VALUE;
+        for (Segment s : segments) {
+            s.readAll(rows);
+            minGeneration = Math.min(minGeneration, s.minGeneration);
+            maxGeneration = Math.max(maxGeneration, s.maxGeneration);
+        }
+        // Replaces the newest segment file; the others are covered by the
+        // merged generation range and are deleted below, or on the next open.
+        Segment merged = writeSegment(rows, minGeneration, maxGeneration);
+        for (Segment s : segments) {
+            if (!s.file.equals(merged.file)) {
+                s.file.delete();
+            }
+        }
+        segments.clear();
+        segments.add(merged);
+    }
+
+    private Segment writeSegment(List<Row> rows, int minGeneration, int maxGeneration) throws IOException {
+        String name = String.format(Locale.US, "seg-%08d", maxGeneration);
+        File tmp = new File(dir, name + ".tmp");
+        File file = new File(dir, name + ".dat");
+        Segment.write(tmp, rows, minGeneration, maxGeneration);
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not rename " + tmp + " to " + file);
+        }
+        return Segment.open(file);
+    }
+
+    /**
+     * Deletes all readings.
+     */
+    synchronized void clear() throws IOException {
+        close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        open();
+    }
+
+    /**
+     * Returns the summary of the given policy, or null if it has no readings.
+     */
+    synchronized JSONObject summary(String policyNumber) throws JSONException {
+        int policy = strings.lookup(policyNumber);
+        PolicySummary p = policy < 0 ? null : summaries.get(policy);
+        return p == null ? null : p.toJSON(strings);
+    }
+
+    synchronized JSONArray summaries() throws JSONException {
+        JSONArray a = new JSONArray();
+        for (PolicySummary p : summaries.values()) {
+            a.put(p.toJSON(strings));
+        }
+        return a;
+    }
+
+    synchronized JSONObject stats() throws JSONException {
+        int segmentRows = 0;
+        for (Segment s : segments) {
+            segmentRows += s.rowCount;
+        }
+        JSONObject o = new JSONObject();
+        o.put("logRows", log.size());
+        o.put("segments", segments.size());
+        o.put("segmentRows", segmentRows);
+        o.put("strings", strings.size());
+        return o;
+    }
+
+    /**
+     * Converts rows sorted by date back into readings in the app's shape.
+     * Rows with the same policy, date and client flag form one reading.
+     */
+    synchronized JSONArray toReadings(List<Row> rows) throws JSONException {
+        JSONArray readings = new JSONArray();
+        JSONObject reading = null;
+        JSONArray sensorData = null;
+        Row prev = null;
+        for (Row r : rows) {
+            if (prev == null || prev.date != r.date || prev.policy != r.policy || prev.client != r.client) {
+                reading = new JSONObject();
+                sensorData = new JSONArray();
+                reading.put("policyNumber", strings.get(r.policy));
+                reading.put("date", r.date);
+                reading.put("isClient", r.client);
+                reading.put("sensorData", sensorData);
+                readings.put(reading);
+            }
+            JSONObject temperatureData = new JSONObject();
+            putValue(temperatureData, "targetTemperature", r.targetTemperature);
+            putValue(temperatureData, "ambientTemperature", r.ambientTemperature);
+            JSONObject humidityData = new JSONObject();
+            putValue(humidityData, "relativeHumidity", r.humidity);
+            JSONObject data = new JSONObject();
+            data.put("humidityData", humidityData);
+            data.put("temperatureData", temperatureData);
+            JSONObject sd = new JSONObject();
+            sd.put("name", strings.get(r.name));
+            sd.put("systemId", strings.get(r.sensor));
+            sd.put("data", data);
+            sensorData.put(sd);
+            prev = r;
+        }
+        return readings;
+    }
+
+    private static void putValue(JSONObject o, String key, float value) throws JSONException {
+        // JSON has no NaN; missing values are left out.
+        if (!Float.isNaN(value)) {
+            o.put(key, (double) value);
+        }
+    }
+
+    private void summarize(Row r, boolean newReading) {
+        PolicySummary p = summaries.get(r.policy);
+        if (p == null) {
+            p = new PolicySummary(r.policy);
+            summaries.put(r.policy, p);
+        }
+        p.add(r, newReading);
+    }
+
+    // The snapshot is tagged with the newest segment generation it covers.
+    private int segmentGeneration() {
+        int generation = -1;
+        for (Segment s : segments) {
+            generation = Math.max(generation, s.maxGeneration);
+        }
+        return generation;
+    }
+
+    private void loadSummaries() throws IOException {
+        File file = new File(dir, SUMMARIES_FILE);
+        if (file.exists()) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() == SUMMARIES_MAGIC && in.readInt() == segmentGeneration()) {
+                    int n = in.readInt();
+                    for (int i = 0; i < n; i++) {
+                        PolicySummary p = PolicySummary.read(in);
+                        summaries.put(p.policy, p);
+                    }
+                    return;
+                }
+            } catch (EOFException e) {
+                // Truncated; rebuilt below.
+            } finally {
+                in.close();
+            }
+            summaries.clear();
+        }
+        // Missing or stale, e.g. after an interrupted compaction.
+        ArrayList<Row> rows = new ArrayList<Row>();
+        for (Segment s : segments) {
+            for (Segment.Entry e : s.entries()) {
+                rows.clear();
+                s.read(e.policy, Long.MIN_VALUE, Long.MAX_VALUE, rows);
+                // Sorted by date then client, so the rows of a reading are adjacent.
+                Row prev = null;
+                for (Row r : rows) {
+                    summarize(r, prev == null || prev.date != r.date || prev.client != r.client);
+                    prev = r;
+                }
+            }
+        }
+    }
+
+    // Only called when the log is empty, so the summaries cover exactly the segments.
+    private void saveSummaries() throws IOException {
+        File tmp = new File(dir, SUMMARIES_FILE + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        try {
+            out.writeInt(SUMMARIES_MAGIC);
+            out.writeInt(segmentGeneration());
+            out.writeInt(summaries.size());
+            for (PolicySummary p : summaries.values()) {
+                p.write(out);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(new File(dir, SUMMARIES_FILE))) {
+            throw new IOException("Could not rename " + tmp);
+        }
+    }
+
+    private void addLogRow(int index, long from, long to, List<Row> out) {
+        long date = log.date(index);
+        if (date >= from && date <= to) {
+            out.add(log.read(index, new Row()));
+        }
+    }
+
+    private void indexLogRow(int policy, int index) {
+        IntList rows = logIndex.get(policy);
+        if (rows == null) {
+            rows = new IntList();
+            logIndex.put(policy, rows);
+        }
+        rows.add(index);
+    }
+
+    /** Growable int array, to avoid boxing every row position. */
+    private static final class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+    }
+}
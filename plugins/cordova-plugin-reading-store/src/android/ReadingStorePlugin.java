@@ -0,0 +1,160 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.pointsource.readingstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaArgs;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Exposes {@link ReadingStore} to JavaScript as cordova.plugins.readingStore.
+ *
+ * Every action does file I/O. The plugin is declared with the serial
+ * exec-policy, so actions run off the bridge thread, one at a time and in
+ * the order they were called; a summary requested after an append includes
+ * the appended reading.
+ */
+public class ReadingStorePlugin extends CordovaPlugin {
+    private static final String TAG = "ReadingStore";
+
+    private ReadingStore store;
+
+    @Override
+    public void initialize(CordovaInterface cordova, CordovaWebView webView) {
+        super.initialize(cordova, webView);
+        store = new ReadingStore(new File(cordova.getActivity().getFilesDir(), "reading-store"));
+    }
+
+    @Override
+    public boolean execute(String action, CordovaArgs args, CallbackContext callbackContext) throws JSONException {
+        if (!"append".equals(action) && !"appendAll".equals(action) && !"query".equals(action)
+                && !"summary".equals(action) && !"compact".equals(action) && !"clear".equals(action)
+                && !"stats".equals(action)) {
+            return false;
+        }
+        try {
+            store.open();
+            handle(action, args, callbackContext);
+        } catch (IOException e) {
+            LOG.e(TAG, "Reading store action failed: " + action, e);
+            callbackContext.error(e.getMessage());
+        } catch (JSONException e) {
+            callbackContext.error(e.getMessage());
+        }
+        return true;
+    }
+
+    private void handle(String action, CordovaArgs args, CallbackContext callbackContext) throws IOException, JSONException {
+        if ("append".equals(action)) {
+            store.append(args.getJSONObject(0));
+            store.sync();
+            callbackContext.success();
+        } else if ("appendAll".equals(action)) {
+            JSONArray readings = args.getJSONArray(0);
+            for (int i = 0; i < readings.length(); i++) {
+                store.append(readings.getJSONObject(i));
+            }
+            store.sync();
+            callbackContext.success();
+        } else if ("query".equals(action)) {
+            String policyNumber = args.isNull(0) ? null : args.getString(0);
+            long from = args.isNull(1) ? Long.MIN_VALUE : args.getLong(1);
+            long to = args.isNull(2) ? Long.MAX_VALUE : args.getLong(2);
+            List<Row> rows = store.query(policyNumber, from, to);
+            callbackContext.success(store.toReadings(rows));
+        } else if ("summary".equals(action)) {
+            if (args.isNull(0)) {
+                callbackContext.success(store.summaries());
+            } else {
+                JSONObject summary = store.summary(args.getString(0));
+                if (summary == null) {
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, (String) null));
+                } else {
+                    callbackContext.success(summary);
+                }
+            }
+        } else if ("compact".equals(action)) {
+            callbackContext.success(store.compact());
+        } else if ("clear".equals(action)) {
+            store.clear();
+            callbackContext.success();
+        } else if ("stats".equals(action)) {
+            JSONObject stats = store.stats();
+            callbackContext.success(stats);
+        }
+    }
+
+    /**
+     * Compacts the log while the app is in the background. Compaction is
+     * skipped if the thread pool is full; the next pause retries it.
+     */
+    @Override
+    public void onPause(boolean multitasking) {
+        try {
+            cordova.getThreadPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        store.compact();
+                    } catch (IOException e) {
+                        LOG.e(TAG, "Could not compact reading store", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.w(TAG, "Skipping compaction: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the store on the thread pool, since closing flushes the log's
+     * mapping to storage. If the pool is full the store is closed on this
+     * thread instead, so the flush is not lost.
+     */
+    @Override
+    public void onDestroy() {
+        Runnable close = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    LOG.e(TAG, "Could not close reading store", e);
+                }
+            }
+        };
+        try {
+            cordova.getThreadPool().execute(close);
+        } catch (RejectedExecutionException e) {
+            close.run();
+        }
+    }
+}
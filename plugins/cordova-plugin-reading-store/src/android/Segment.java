@@ -0,0 +1,303 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package com.pointsource.readingstore;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable, memory-mapped file of compacted rows.
+ *
+ * Layout:
+ *   header     magic, version, min generation, max generation, row count,
+ *              policy count (6 ints)
+ *   directory  per policy: policy id, row count, min date, max date,
+ *              block offset, block length
+ *   blocks     one per policy, rows sorted by date, stored by column:
+ *                dates     first date, then deltas (unsigned varints)
+ *                sensors   varints
+ *                names     varints
+ *                flags     one byte per row
+ *                ambient, target, humidity   one float per row each
+ *
+ * The generation range identifies which reading log generations the segment
+ * holds; see {@link ReadingStore} for how it is used during recovery.
+ */
+final class Segment {
+    private static final int MAGIC = 0x52534547; // "RSEG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int ENTRY_SIZE = 32;
+
+    private static final int FLAG_CLIENT = 1;
+
+    static final class Entry {
+        final int policy;
+        final int rows;
+        final long minDate;
+        final long maxDate;
+        final int offset;
+        final int length;
+
+        Entry(int policy, int rows, long minDate, long maxDate, int offset, int length) {
+            this.policy = policy;
+            this.rows = rows;
+            this.minDate = minDate;
+            this.maxDate = maxDate;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    final File file;
+    final int minGeneration;
+    final int maxGeneration;
+    final int rowCount;
+    private final MappedByteBuffer map;
+    private final HashMap<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+    private Segment(File file, MappedByteBuffer map) throws IOException {
+        this.file = file;
+        this.map = map;
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new IOException("Not a reading segment: " + file);
+        }
+        minGeneration = map.getInt(8);
+        maxGeneration = map.getInt(12);
+        rowCount = map.getInt(16);
+        int policyCount = map.getInt(20);
+        for (int i = 0; i < policyCount; i++) {
+            int base = HEADER_SIZE + i * ENTRY_SIZE;
+            Entry e = new Entry(map.getInt(base), map.getInt(base + 4), map.getLong(base + 8),
+                    map.getLong(base + 16), map.getInt(base + 24), map.getInt(base + 28));
+            entries.put(e.policy, e);
+        }
+    }
+
+    static Segment open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            return new Segment(file, map);
+        } finally {
+            // The mapping stays valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns true if all generations of this segment are also held by other.
+     */
+    boolean isCoveredBy(Segment other) {
+        return other != this && other.minGeneration <= minGeneration && other.maxGeneration >= maxGeneration;
+    }
+
+    Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    Entry entry(int policy) {
+        return entries.get(policy);
+    }
+
+    /**
+     * Adds the rows of the given policy with from <= date <= to to out.
+     */
+    void read(int policy, long from, long to, List<Row> out) {
+        Entry e = entries.get(policy);
+        if (e == null || e.maxDate < from || e.minDate > to) {
+            return;
+        }
+        decodeBlock(e, from, to, out);
+    }
+
+    void readAll(List<Row> out) {
+        for (Entry e : entries.values()) {
+            decodeBlock(e, Long.MIN_VALUE, Long.MAX_VALUE, out);
+        }
+    }
+
+    private void decodeBlock(Entry e, long from, long to, List<Row> out) {
+        ByteBuffer b = map.duplicate();
+        b.position(e.offset);
+        int n = e.rows;
+        long[] dates = new long[n];
+        long date = 0;
+        for (int i = 0; i < n; i++) {
+            date += readVarLong(b);
+            dates[i] = date;
+        }
+        int first = 0;
+        while (first < n && dates[first] < from) {
+            first++;
+        }
+        int end = first;
+        while (end < n && dates[end] <= to) {
+            end++;
+        }
+        if (first == end) {
+            return;
+        }
+        Row[] rows = new Row[end - first];
+        for (int i = 0; i < rows.length; i++) {
+            Row r = new Row();
+            r.policy = e.policy;
+            r.date = dates[first + i];
+            rows[i] = r;
+        }
+        for (int i = 0; i < n; i++) {
+            int v = (int) readVarLong(b);
+            if (i >= first && i < end) {
+                rows[i - first].sensor = v;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int v = (int) readVarLong(b);
+            if (i >= first && i < end) {
+                rows[i - first].name = v;
+            }
+        }
+        int flagsPos = b.position();
+        int floatsPos = flagsPos + n;
+        for (int i = first; i < end; i++) {
+            Row r = rows[i - first];
+            r.client = (b.get(flagsPos + i) & FLAG_CLIENT) != 0;
+            r.ambientTemperature = b.getFloat(floatsPos + 4 * i);
+            r.targetTemperature = b.getFloat(floatsPos + 4 * (n + i));
+            r.humidity = b.getFloat(floatsPos + 4 * (2 * n + i));
+        }
+        Collections.addAll(out, rows);
+    }
+
+    /**
+     * Writes the given rows, in any order, to a new segment file.
+     */
+    static void write(File file, List<Row> rows, int minGeneration, int maxGeneration) throws IOException {
+        TreeMap<Integer, ArrayList<Row>> byPolicy = new TreeMap<Integer, ArrayList<Row>>();
+        for (Row r : rows) {
+            ArrayList<Row> list = byPolicy.get(r.policy);
+            if (list == null) {
+                list = new ArrayList<Row>();
+                byPolicy.put(r.policy, list);
+            }
+            list.add(r);
+        }
+
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        ArrayList<Entry> dir = new ArrayList<Entry>(byPolicy.size());
+        int dataStart = HEADER_SIZE + byPolicy.size() * ENTRY_SIZE;
+        for (Map.Entry<Integer, ArrayList<Row>> me : byPolicy.entrySet()) {
+            ArrayList<Row> list = me.getValue();
+            Collections.sort(list, Row.BY_DATE);
+            int offset = dataStart + blocks.size();
+            encodeBlock(list, blocks);
+            dir.add(new Entry(me.getKey(), list.size(), list.get(0).date, list.get(list.size() - 1).date,
+                    offset, dataStart + blocks.size() - offset));
+        }
+
+        FileOutputStream fos = new FileOutputStream(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(minGeneration);
+            out.writeInt(maxGeneration);
+            out.writeInt(rows.size());
+            out.writeInt(dir.size());
+            for (Entry e : dir) {
+                out.writeInt(e.policy);
+                out.writeInt(e.rows);
+                out.writeLong(e.minDate);
+                out.writeLong(e.maxDate);
+                out.writeInt(e.offset);
+                out.writeInt(e.length);
+            }
+            blocks.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void encodeBlock(List<Row> rows, ByteArrayOutputStream out) throws IOException {
+        long prev = 0;
+        for (Row r : rows) {
+            writeVarLong(out, r.date - prev);
+            prev = r.date;
+        }
+        for (Row r : rows) {
+            writeVarLong(out, r.sensor);
+        }
+        for (Row r : rows) {
+            writeVarLong(out, r.name);
+        }
+        for (Row r : rows) {
+            out.write(r.client ? FLAG_CLIENT : 0);
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        for (Row r : rows) {
+            data.writeFloat(r.ambientTemperature);
+        }
+        for (Row r : rows) {
+            data.writeFloat(r.targetTemperature);
+        }
+        for (Row r : rows) {
+            data.writeFloat(r.humidity);
+        }
+        data.flush();
+    }
+
+    // Unsigned LEB128. Dates are sorted, so deltas are never negative.
+    private static void writeVarLong(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(ByteBuffer b) {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            int c = b.get() & 0xFF;
+            v |= (long) (c & 0x7F) << shift;
+            if ((c & 0x80) == 0) {
+                return v;
+            }
+            shift += 7;
+        }
+    }
+}
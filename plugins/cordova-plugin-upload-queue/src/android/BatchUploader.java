@@ -0,0 +1,96 @@
+package com.pointsource.uploadqueue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.cordova.CordovaResourceApi;
+
+import android.net.Uri;
+
+/**
+ * Posts readings either one at a time as plain JSON, which is what
+ * /readings/add accepts, or in batches as gzip'd newline-delimited JSON for
+ * an endpoint that supports it.
+ */
+final class BatchUploader {
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT = 30000;
+
+    private final CordovaResourceApi resourceApi;
+
+    BatchUploader(CordovaResourceApi resourceApi) {
+        this.resourceApi = resourceApi;
+    }
+
+    /**
+     * Posts a single reading as application/json. Returns the HTTP status
+     * code. Must be called on a background thread.
+     */
+    int post(Uri uri, String line) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(line.getBytes("UTF-8"));
+        return post(uri, body, "application/json; charset=utf-8", null);
+    }
+
+    /**
+     * Posts a batch of readings as gzip'd NDJSON. Returns the HTTP status
+     * code. Must be called on a background thread.
+     */
+    int postBatch(Uri uri, List<String> lines) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(body);
+        for (String line : lines) {
+            gzip.write(line.getBytes("UTF-8"));
+            gzip.write('\n');
+        }
+        gzip.close();
+        return post(uri, body, "application/x-ndjson; charset=utf-8", "gzip");
+    }
+
+    private int post(Uri uri, ByteArrayOutputStream body, String contentType, String contentEncoding)
+            throws IOException {
+        HttpURLConnection conn = resourceApi.createHttpConnection(uri);
+        try {
+            conn.setConnectTimeout(CONNECT_TIMEOUT);
+            conn.setReadTimeout(READ_TIMEOUT);
+            conn.setDoOutput(true);
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", contentType);
+            if (contentEncoding != null) {
+                conn.setRequestProperty("Content-Encoding", contentEncoding);
+            }
+            conn.setFixedLengthStreamingMode(body.size());
+            OutputStream out = conn.getOutputStream();
+            try {
+                body.writeTo(out);
+            } finally {
+                out.close();
+            }
+            int status = conn.getResponseCode();
+            drain(status < 400 ? conn.getInputStream() : conn.getErrorStream());
+            return status;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    // Reading the response to the end lets the connection be reused.
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) != -1) {
+                // Discard.
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
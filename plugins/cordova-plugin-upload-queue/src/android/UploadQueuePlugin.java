@@ -0,0 +1,249 @@
+package com.pointsource.uploadqueue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaArgs;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.LOG;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.net.Uri;
+
+/**
+ * Queues readings on disk and uploads them, retrying with exponential
+ * backoff while the server cannot be reached.
+ *
+ * Readings are posted one per request as JSON unless the "ndjson" format is
+ * configured, in which case they go in gzip'd batches. Readings the server
+ * refuses with a 4xx status are set aside, not deleted.
+ *
+ * The upload URL comes from the UploadQueueUrl preference, or from the
+ * configure action, which makes it easy to point the queue at a local stub.
+ */
+public class UploadQueuePlugin extends CordovaPlugin {
+    private static final String TAG = "UploadQueue";
+
+    private static final int DEFAULT_BATCH_SIZE = 50;
+    // Delay before uploading a new reading, so that readings taken close
+    // together go in one request.
+    private static final long BATCH_DELAY = 2000;
+    private static final long INITIAL_BACKOFF = 1000;
+    private static final long MAX_BACKOFF = 5 * 60 * 1000;
+
+    private PendingReadings pending;
+    private BatchUploader uploader;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> scheduledFlush;
+    private final Random random = new Random();
+
+    // Accessed only on the executor thread.
+    private int failures;
+    private int lastStatus;
+    private String lastError;
+
+    private volatile Uri uploadUri;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile boolean ndjson;
+
+    @Override
+    public void initialize(CordovaInterface cordova, CordovaWebView webView) {
+        super.initialize(cordova, webView);
+        File dir = cordova.getActivity().getFilesDir();
+        String url = preferences.getString("UploadQueueUrl", null);
+        start(new PendingReadings(new File(dir, "upload-queue.ndjson"), new File(dir, "upload-queue.rejected.ndjson")),
+                new BatchUploader(webView.getResourceApi()), url != null ? Uri.parse(url) : null,
+                Executors.newSingleThreadScheduledExecutor());
+    }
+
+    /**
+     * Split from initialize() so that the queue can be run against a local
+     * HTTP stub without a WebView.
+     */
+    void start(final PendingReadings pending, BatchUploader uploader, Uri uploadUri, ScheduledExecutorService executor) {
+        this.pending = pending;
+        this.uploader = uploader;
+        this.uploadUri = uploadUri;
+        this.executor = executor;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pending.open();
+                } catch (IOException e) {
+                    LOG.e(TAG, "Could not load queued readings", e);
+                }
+            }
+        });
+        scheduleFlush(0);
+    }
+
+    @Override
+    public boolean execute(String action, CordovaArgs args, final CallbackContext callbackContext) throws JSONException {
+        if ("configure".equals(action)) {
+            configure(args.getJSONObject(0));
+            callbackContext.success();
+        } else if ("enqueue".equals(action)) {
+            final JSONObject reading = args.getJSONObject(0);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        boolean added = pending.add(reading);
+                        callbackContext.success(added ? 1 : 0);
+                        if (added) {
+                            scheduleFlush(BATCH_DELAY);
+                        }
+                    } catch (IOException e) {
+                        LOG.e(TAG, "Could not queue reading", e);
+                        callbackContext.error(e.getMessage());
+                    } catch (JSONException e) {
+                        callbackContext.error(e.getMessage());
+                    }
+                }
+            });
+        } else if ("flush".equals(action)) {
+            scheduleFlush(0);
+            callbackContext.success();
+        } else if ("retryRejected".equals(action)) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int requeued = pending.requeueRejected();
+                        callbackContext.success(requeued);
+                        if (requeued > 0) {
+                            scheduleFlush(0);
+                        }
+                    } catch (IOException e) {
+                        LOG.e(TAG, "Could not queue rejected readings", e);
+                        callbackContext.error(e.getMessage());
+                    }
+                }
+            });
+        } else if ("status".equals(action)) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        JSONObject status = new JSONObject();
+                        status.put("pending", pending.size());
+                        status.put("rejected", pending.rejectedSize());
+                        status.put("failures", failures);
+                        status.put("lastStatus", lastStatus);
+                        status.put("lastError", lastError);
+                        callbackContext.success(status);
+                    } catch (JSONException e) {
+                        callbackContext.error(e.getMessage());
+                    }
+                }
+            });
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    void configure(JSONObject options) throws JSONException {
+        if (options.has("url")) {
+            uploadUri = Uri.parse(options.getString("url"));
+        }
+        batchSize = Math.max(1, options.optInt("batchSize", batchSize));
+        if (options.has("format")) {
+            ndjson = "ndjson".equals(options.getString("format"));
+        }
+        scheduleFlush(0);
+    }
+
+    @Override
+    public void onResume(boolean multitasking) {
+        scheduleFlush(0);
+    }
+
+    @Override
+    public void onDestroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Schedules an upload after the given delay, unless one is already due
+     * sooner.
+     */
+    private synchronized void scheduleFlush(long delay) {
+        if (scheduledFlush != null && !scheduledFlush.isDone()) {
+            if (scheduledFlush.getDelay(TimeUnit.MILLISECONDS) <= delay) {
+                return;
+            }
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Uploads until the queue is empty or a request fails. Runs on the
+     * executor thread.
+     */
+    private void flush() {
+        Uri uri = uploadUri;
+        if (uri == null) {
+            return;
+        }
+        while (pending.size() > 0) {
+            boolean batched = ndjson;
+            List<String> batch = pending.peek(batched ? batchSize : 1);
+            try {
+                lastStatus = batched ? uploader.postBatch(uri, batch) : uploader.post(uri, batch.get(0));
+                lastError = null;
+            } catch (IOException e) {
+                lastStatus = 0;
+                lastError = e.toString();
+            }
+            try {
+                if (lastStatus >= 200 && lastStatus < 300) {
+                    failures = 0;
+                    pending.remove(batch.size());
+                } else if (isRejected(lastStatus)) {
+                    // Retrying would block every reading queued after this
+                    // batch, so keep it aside until retryRejected.
+                    LOG.e(TAG, "Upload rejected with status " + lastStatus + ", setting aside " + batch.size() + " readings");
+                    failures = 0;
+                    pending.reject(batch.size());
+                } else {
+                    failures++;
+                    long backoff = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << Math.min(failures - 1, 16));
+                    backoff += random.nextInt((int) (backoff / 2) + 1);
+                    LOG.d(TAG, "Upload failed (" + (lastError != null ? lastError : "status " + lastStatus)
+                            + "), retrying in " + backoff + "ms");
+                    scheduleFlush(backoff);
+                    return;
+                }
+            } catch (IOException e) {
+                LOG.e(TAG, "Could not update queued readings", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Client errors other than timeouts and rate limiting mean the server
+     * will not accept the request as it is.
+     */
+    static boolean isRejected(int status) {
+        return status >= 400 && status < 500 && status != 408 && status != 429;
+    }
+}
@@ -0,0 +1,64 @@
+var exec = require('cordova/exec');
+
+/**
+ * Persistent queue that uploads readings, retrying with backoff while
+ * offline. Readings are posted one at a time as JSON, or in batches as
+ * gzip'd newline-delimited JSON with the "ndjson" format.
+ * @namespace
+ */
+var uploadQueue = {};
+
+/**
+ * Sets upload options.
+ * @param {Object} options - url: endpoint to POST readings to;
+ * format: "json" (default, one reading per request) or "ndjson";
+ * batchSize: maximum readings per ndjson request (default 50).
+ * @param {function} success
+ * @param {function(string)} fail
+ */
+uploadQueue.configure = function(options, success, fail) {
+    exec(success, fail, 'UploadQueue', 'configure', [options]);
+};
+
+/**
+ * Queues a reading for upload. Sensor values already queued or recently
+ * uploaded, identified by (policyNumber, date, systemId), are dropped.
+ * @param {Object} reading
+ * @param {function(number)} success - Called with 1 if the reading was
+ * queued, 0 if it was a duplicate.
+ * @param {function(string)} fail
+ */
+uploadQueue.enqueue = function(reading, success, fail) {
+    exec(success, fail, 'UploadQueue', 'enqueue', [reading]);
+};
+
+/**
+ * Uploads queued readings now rather than waiting for the next retry.
+ * @param {function} success
+ * @param {function(string)} fail
+ */
+uploadQueue.flush = function(success, fail) {
+    exec(success, fail, 'UploadQueue', 'flush', []);
+};
+
+/**
+ * Queues the readings the server rejected again, e.g. after the server was
+ * fixed.
+ * @param {function(number)} success - Called with the number queued.
+ * @param {function(string)} fail
+ */
+uploadQueue.retryRejected = function(success, fail) {
+    exec(success, fail, 'UploadQueue', 'retryRejected', []);
+};
+
+/**
+ * Returns the queue state: pending, rejected, failures, lastStatus,
+ * lastError.
+ * @param {function(Object)} success
+ * @param {function(string)} fail
+ */
+uploadQueue.status = function(success, fail) {
+    exec(success, fail, 'UploadQueue', 'status', []);
+};
+
+module.exports = uploadQueue;
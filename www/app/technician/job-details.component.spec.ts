@@ -167,6 +167,51 @@ describe('Job Details Component', () => {
 
 	});
 
+	describe('when loading readings', () => {
+
+		it('asks for the stored summary of this policy', () => {
+			spyOn(_jobDetails._readingService, "getSummaryForPolicy");
+			_jobDetails.ngOnInit();
+			expect(_jobDetails._readingService.getSummaryForPolicy.calls.mostRecent().args[0]).toBe("01929");
+		});
+
+		it('keeps the fetched reading count and takes the ranges from the summary', () => {
+			spyOn(_jobDetails._readingService, "getSummaryForPolicy").and.callFake((policyNumber, callback) => {
+				callback({
+					policyNumber: "01929",
+					readings: 42,
+					firstDate: 1000,
+					lastDate: 2000,
+					sensors: [{
+						systemId: "1234",
+						name: "Garage",
+						count: 42,
+						ambientTemperature: { count: 42, min: 60, max: 70, mean: 65 },
+						targetTemperature: { count: 42, min: 61, max: 71, mean: 66 },
+						relativeHumidity: { count: 0 }
+					}]
+				});
+			});
+			_jobDetails.ngOnInit();
+			expect(_jobDetails.readingCount()).toBe(_jobDetails.readings.length);
+			expect(_jobDetails.storedReadingCount()).toBe(42);
+			expect(_jobDetails.sensorStat("1234", "ambientTemperature").max).toBe(70);
+			expect(_jobDetails.sensorStat("1234", "relativeHumidity")).toBeNull();
+			expect(_jobDetails.sensorStat("5678", "ambientTemperature")).toBeNull();
+		});
+
+		it('has no stored readings or ranges without a summary', () => {
+			spyOn(_jobDetails._readingService, "getSummaryForPolicy").and.callFake((policyNumber, callback) => {
+				callback(null);
+			});
+			_jobDetails.ngOnInit();
+			expect(_jobDetails.readingCount()).toBe(_jobDetails.readings.length);
+			expect(_jobDetails.storedReadingCount()).toBe(0);
+			expect(_jobDetails.sensorStat("1234", "ambientTemperature")).toBeNull();
+		});
+
+	});
+
 	describe('when scanning for sensors', () => {
 
 		it('if the sensors were disconnected, scans for the sensors', () => {
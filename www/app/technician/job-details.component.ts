@@ -23,6 +23,8 @@ export class JobDetailsComponent implements OnInit {
     private job: Job;
     private sensors: Sensor[];
     private readings: Reading[] = [];
+    // Stored aggregates for this policy, or null without the reading store.
+    private summary: any = null;
     private allSensorsConnected: boolean;
 
     constructor(
@@ -73,6 +75,42 @@ export class JobDetailsComponent implements OnInit {
         this._readingService.fetch().add(() => {
             this.readings = this._readingService.getReadingsForPolicy(this.job.policyNumber);
         });
+        this._readingService.getSummaryForPolicy(this.job.policyNumber, (summary) => {
+            this.summary = summary;
+        });
+    }
+
+    readingCount(): number {
+        return this.readings.length;
+    }
+
+    lastReadingDate(): number {
+        return this.readings.length > 0 ? this.readings[this.readings.length - 1].date : null;
+    }
+
+    /**
+     * Returns how many readings of this job are stored on this device. The
+     * store only holds readings taken here, so this can be lower than
+     * readingCount(), which includes readings fetched from the server.
+     */
+    storedReadingCount(): number {
+        return this.summary ? this.summary.readings : 0;
+    }
+
+    /**
+     * Returns the min/max/mean of one value of a sensor over the readings
+     * stored on this device, or null when there is no summary for it.
+     */
+    sensorStat(systemId: string, value: string) {
+        if (!this.summary) {
+            return null;
+        }
+        for (let sensor of this.summary.sensors) {
+            if (sensor.systemId === systemId && sensor[value].count > 0) {
+                return sensor[value];
+            }
+        }
+        return null;
     }
 
     goToConfigureJob(policyNumber: string) {
@@ -0,0 +1,109 @@
+import {ReadingService} from "./reading.service"
+
+import {
+	afterEach,
+	beforeEach,
+	beforeEachProviders,
+	describe,
+	expect,
+	it,
+	inject,
+	injectAsync } from 'angular2/testing';
+import {provide} from "angular2/core"
+import {Http} from 'angular2/http';
+
+let _http;
+
+beforeEachProviders(() => {
+	_http = jasmine.createSpyObj("http", ['get', 'post']);
+	_http.post.and.returnValue({
+		subscribe: () => {}
+	});
+
+	return [
+		ReadingService,
+		provide(Http, { useValue: _http })
+	]
+})
+
+function reading(policyNumber: string, date: number): any {
+	return {
+		policyNumber: policyNumber,
+		date: date,
+		sensorData: [{
+			name: "Garage",
+			systemId: "1234",
+			data: {}
+		}],
+		isClient: false
+	};
+}
+
+describe('Reading Service', () => {
+
+	afterEach(() => {
+		delete (<any>window).cordova;
+	});
+
+	describe('on addReading', () => {
+
+		it('posts the reading to /readings/add when there is no upload queue', inject(
+			[ReadingService],
+			(_readingService: ReadingService) => {
+
+			_readingService.addReading(reading("Job1", 1));
+
+			expect(_http.post).toHaveBeenCalled();
+			expect(_http.post.calls.mostRecent().args[0]).toBe('http://tisensortag-node.mybluemix.net/readings/add');
+			expect(JSON.parse(_http.post.calls.mostRecent().args[1])).toEqual(reading("Job1", 1));
+		}));
+
+		it('queues the reading for /readings/add, one reading per request', inject(
+			[ReadingService],
+			(_readingService: ReadingService) => {
+
+			let uploadQueue = jasmine.createSpyObj("uploadQueue", ['configure', 'enqueue']);
+			(<any>window).cordova = { plugins: { uploadQueue: uploadQueue } };
+
+			_readingService.addReading(reading("Job1", 1));
+			_readingService.addReading(reading("Job1", 2));
+
+			expect(uploadQueue.configure.calls.count()).toBe(1);
+			let options = uploadQueue.configure.calls.mostRecent().args[0];
+			expect(options.url).toBe('http://tisensortag-node.mybluemix.net/readings/add');
+			expect(options.format).toBeUndefined();
+
+			expect(uploadQueue.enqueue.calls.count()).toBe(2);
+			expect(uploadQueue.enqueue.calls.argsFor(1)[0]).toEqual(reading("Job1", 2));
+			expect(_http.post).not.toHaveBeenCalled();
+		}));
+
+		it('stores the reading on the device', inject(
+			[ReadingService],
+			(_readingService: ReadingService) => {
+
+			let readingStore = jasmine.createSpyObj("readingStore", ['append']);
+			(<any>window).cordova = { plugins: { readingStore: readingStore } };
+
+			_readingService.addReading(reading("Job1", 1));
+
+			expect(readingStore.append).toHaveBeenCalled();
+			expect(readingStore.append.calls.mostRecent().args[0]).toEqual(reading("Job1", 1));
+		}));
+
+	});
+
+	describe('on getReadingsForPolicy', () => {
+
+		it('returns the readings for a specific policy', inject(
+			[ReadingService],
+			(_readingService: ReadingService) => {
+
+			_readingService.addReading(reading("Job1", 1));
+			_readingService.addReading(reading("Job2", 2));
+
+			expect(_readingService.getReadingsForPolicy("Job1")).toEqual([reading("Job1", 1)]);
+		}));
+
+	});
+});
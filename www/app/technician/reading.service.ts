@@ -4,9 +4,12 @@ import {Sensor} from '../sensor';
 import {Http, Headers, Response} from 'angular2/http';
 import 'rxjs/Rx';
 
+declare var cordova: any;
+
 @Injectable()
 export class ReadingService {
 	public readings: Reading[] = [];
+	private uploadQueueConfigured = false;
 
 	constructor(
         private _http: Http
@@ -17,9 +20,32 @@ export class ReadingService {
 			.map(res => res.json())
 			.subscribe((res) => {
 				this.readings = res;
+			}, (err) => {
+				// Offline: fall back to the readings stored on the device.
+				let store = this.getStore();
+				if (store) {
+					store.query(null, null, null, (readings) => {
+						this.readings = readings;
+					}, (error) => console.log(error));
+				}
 			});
 	}
 
+	private getStore() {
+		return typeof cordova !== 'undefined' && cordova.plugins && cordova.plugins.readingStore;
+	}
+
+	private getUploadQueue() {
+		let uploadQueue = typeof cordova !== 'undefined' && cordova.plugins && cordova.plugins.uploadQueue;
+		if (uploadQueue && !this.uploadQueueConfigured) {
+			// One reading per request, like the direct POST in addReading.
+			// The server has no batch endpoint for the 'ndjson' format yet.
+			uploadQueue.configure({ url: 'http://tisensortag-node.mybluemix.net/readings/add' });
+			this.uploadQueueConfigured = true;
+		}
+		return uploadQueue;
+	}
+
 	getReadings(): Reading[] {
 		return this.readings;
 	}
@@ -27,6 +53,18 @@ export class ReadingService {
 	addReading(reading: Reading) {
 		this.readings.push(reading);
 
+		let store = this.getStore();
+		if (store) {
+			store.append(reading, null, (error) => console.log(error));
+		}
+
+		let uploadQueue = this.getUploadQueue();
+		if (uploadQueue) {
+			// Survives going offline; uploaded when the server can be reached.
+			uploadQueue.enqueue(reading, null, (error) => console.log(error));
+			return;
+		}
+
 		var headers = new Headers();
         headers.append('Content-Type', 'application/json');
 		this._http.post('http://tisensortag-node.mybluemix.net/readings/add', JSON.stringify(reading), {
@@ -45,6 +83,22 @@ export class ReadingService {
 		return readingsForPolicy;
 	}
 
+	/**
+	 * Calls back with the stored aggregates for a policy (reading count and
+	 * per-sensor min/max/mean), or null when they are not available.
+	 */
+	getSummaryForPolicy(policyNumber: string, callback: (summary: any) => void) {
+		let store = this.getStore();
+		if (!store) {
+			callback(null);
+			return;
+		}
+		store.summary(policyNumber, callback, (error) => {
+			console.log(error);
+			callback(null);
+		});
+	}
+
 	takeReading(sensors: Sensor[], policyNumber: string, isClient: boolean) {
 		if (sensors.length > 0) {
             let reading: Reading = {
@@ -636,8 +636,18 @@
 			//sensortag.logServices(instance.device)
 			//console.log('---------------------- END -----------------------')
 
-			// Call implementation method in sub module.
-			instance.activateSensorsImpl()
+			// Call implementation method in sub module. This makes a burst
+			// of BLE calls, which are sent to native in one bridge crossing
+			// where the platform supports it.
+			var exec = window.cordova && window.cordova.exec
+			if (exec && exec.batch)
+			{
+				exec.batch(instance.activateSensorsImpl)
+			}
+			else
+			{
+				instance.activateSensorsImpl()
+			}
 
 			instance.callStatusCallback(sensortag.status.SENSORTAG_ONLINE)
 		}